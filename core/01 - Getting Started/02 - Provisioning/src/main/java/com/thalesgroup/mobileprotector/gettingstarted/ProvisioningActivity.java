@@ -104,6 +104,27 @@ public class ProvisioningActivity extends SetupActivity implements ProvisioningF
         }
     }
 
+    /**
+     * Finishes provisioning flow on the main UI thread, whichever way the token was provisioned.
+     *
+     * @param registrationCode Registration code, wiped by this method.
+     * @param result           Result message to be displayed.
+     */
+    protected void onProvisionFinished(final SecureString registrationCode, final String result) {
+        // Wipe registration code. Since it's not needed anymore.
+        registrationCode.wipe();
+
+        // Hide loading overlay.
+        loadingBarHide();
+
+        // Display result.
+        displayMessageDialog(result);
+
+        // Hide keyboard and reload visual.
+        hideKeyboard();
+        updateGui();
+    }
+
     //endregion
 
     //region ProvisioningFragmentDelegate
@@ -112,20 +133,8 @@ public class ProvisioningActivity extends SetupActivity implements ProvisioningF
     public void onProvision(final String userId, final SecureString registrationCode) {
         loadingBarShow(R.string.loading_provisioning);
 
-        ProvisioningLogic.provisionWithUserId(userId, registrationCode, (success, result) -> {
-            // Wipe registration code. Since it's not needed anymore.
-            registrationCode.wipe();
-
-            // Hide loading overlay.
-            loadingBarHide();
-
-            // Display result.
-            displayMessageDialog(result);
-
-            // Hide keyboard and reload visual.
-            hideKeyboard();
-            updateGui();
-        });
+        ProvisioningLogic.provisionWithUserId(userId, registrationCode,
+                (success, result) -> onProvisionFinished(registrationCode, result));
     }
 
     @Override
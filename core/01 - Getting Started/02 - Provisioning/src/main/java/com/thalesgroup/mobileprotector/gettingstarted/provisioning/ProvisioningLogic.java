@@ -44,7 +44,10 @@ import com.gemalto.idp.mobile.otp.provisioning.EpsConfigurationBuilder;
 import com.gemalto.idp.mobile.otp.provisioning.MobileProvisioningProtocol;
 import com.gemalto.idp.mobile.otp.provisioning.ProvisioningConfiguration;
 import com.thalesgroup.mobileprotector.commonutils.callbacks.GenericHandler;
+import com.thalesgroup.mobileprotector.commonutils.crypto.ChallengeCache;
 import com.thalesgroup.mobileprotector.commonutils.helpers.AbstractBaseLogic;
+import com.thalesgroup.mobileprotector.commonutils.helpers.OathDeviceCache;
+import com.thalesgroup.mobileprotector.commonutils.thread.TaskFuture;
 
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -66,6 +69,26 @@ public class ProvisioningLogic extends AbstractBaseLogic {
     public static void provisionWithUserId(@NonNull final String userId,
                                            @NonNull final SecureString registrationCode,
                                            @NonNull final GenericHandler callback) {
+        provisionWithUserId(userId, registrationCode).whenComplete((result, error) -> {
+            if (error == null) {
+                callback.onFinished(true, result);
+            } else {
+                callback.onFinished(false, error.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Provisions asynchronously a new token.
+     *
+     * @param userId           User id.
+     * @param registrationCode Registration code. Wiped once the provisioning is finished.
+     * @return Future completed with the success message, or failed with {@code IdpException}.
+     */
+    @NonNull
+    public static TaskFuture<String> provisionWithUserId(@NonNull final String userId,
+                                                         @NonNull final SecureString registrationCode) {
+        final TaskFuture<String> retValue = TaskFuture.create();
         final OathTokenManager oathTokenManager = OathService.create(OtpModule.create()).getTokenManager();
         try {
             final ProvisioningConfiguration provisioningConfiguration = new EpsConfigurationBuilder(registrationCode,
@@ -89,20 +112,22 @@ public class ProvisioningLogic extends AbstractBaseLogic {
                         @Override
                         public void onSuccess(final Token token,
                                               final Map<String, String> map) {
-                            callback.onFinished(true, getString(R.string.token_provision_success));
                             registrationCode.wipe();
+                            retValue.complete(getString(R.string.token_provision_success));
                         }
 
                         @Override
                         public void onError(final IdpException exception) {
-                            callback.onFinished(false, exception.getMessage());
                             registrationCode.wipe();
+                            retValue.fail(exception);
                         }
                     });
         } catch (final MalformedURLException exception) {
             // This should not happen.
             throw new IllegalStateException(exception.getMessage());
         }
+
+        return retValue;
     }
 
     /**
@@ -139,7 +164,16 @@ public class ProvisioningLogic extends AbstractBaseLogic {
     public static boolean removeToken() {
         try {
             final OathTokenManager oathTokenManager = OathService.create(OtpModule.create()).getTokenManager();
-            return oathTokenManager.removeToken(ProvisioningLogic.getToken());
+            final SoftOathToken token = ProvisioningLogic.getToken();
+            final boolean retValue = oathTokenManager.removeToken(token);
+
+            // Devices and challenges created for removed token must not be used anymore.
+            if (token != null) {
+                OathDeviceCache.getOathDeviceCache().invalidate(token.getName());
+            }
+            ChallengeCache.getChallengeCache().clear();
+
+            return retValue;
         } catch (final IdpException exception) {
             // Application might want to handle invalid token in specific way.
             // Error here usually mean wrong password or SDK configuration.
@@ -27,6 +27,7 @@
 
 package com.thalesgroup.mobileprotector.gettingstarted;
 
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.widget.ImageButton;
 
@@ -42,8 +43,10 @@ import com.gemalto.idp.mobile.ui.secureinput.SecureKeypadListener;
 import com.thalesgroup.mobileprotector.commonutils.callbacks.AuthPinHandler;
 import com.thalesgroup.mobileprotector.commonutils.helpers.Lifespan;
 import com.thalesgroup.mobileprotector.commonutils.helpers.OtpValue;
+import com.thalesgroup.mobileprotector.gettingstarted.otp.OtpConfig;
 import com.thalesgroup.mobileprotector.gettingstarted.otp.OtpLogic;
 import com.thalesgroup.mobileprotector.gettingstarted.otp.R;
+import com.thalesgroup.mobileprotector.gettingstarted.otp.TotpSession;
 import com.thalesgroup.mobileprotector.gettingstarted.provisioning.ProvisioningLogic;
 import com.thalesgroup.mobileprotector.gettingstarted.setup.SetupLogic;
 import com.thalesgroup.mobileprotector.uicomponents.ResultFragment;
@@ -60,6 +63,7 @@ public class OtpActivity extends ProvisioningActivity {
     private ResultFragment mResultFragment;
     private ImageButton mBtnGenerateOtp;
     private SecureInputBuilder mSecureInputBuilder;
+    private TotpSession mTotpSession;
 
     //endregion
 
@@ -74,6 +78,14 @@ public class OtpActivity extends ProvisioningActivity {
         SetupLogic.setup();
     }
 
+    @Override
+    protected void onPause() {
+        // Values generated in background could not be displayed anyway.
+        closeTotpSession();
+
+        super.onPause();
+    }
+
     @Override
     protected int caption() {
         return R.string.gettingstarted_otp_caption;
@@ -108,6 +120,9 @@ public class OtpActivity extends ProvisioningActivity {
         if (mResultFragment != null && token == null) {
             mResultFragment.hide();
         }
+        if (token == null) {
+            closeTotpSession();
+        }
 
         return token;
     }
@@ -173,13 +188,31 @@ public class OtpActivity extends ProvisioningActivity {
 
         // Display dialog using common method.
         dialogFragmentShow(secureInputUi.getDialogFragment(), DIALOG_TAG_PIN_ENTRY, false);
+
+        onPinKeypadShown();
+    }
+
+    /**
+     * Called once the secure keypad is displayed, before user enters the PIN. Sub classes can start work which
+     * does not need the PIN, so it overlaps with PIN entry.
+     */
+    protected void onPinKeypadShown() {
+        // Nothing to prepare for plain OTP generation.
     }
 
     protected void generateAndDisplayOtp(final SoftOathToken token, final AuthInput authInput) {
+        closeTotpSession();
+
         try {
             final OtpValue otpValue = OtpLogic.generateOtp(token, authInput);
             displayMessageResult(otpValue.getOtp().toString(), otpValue.getLifespan());
             otpValue.wipe();
+
+            // Keep generating values of following time steps, session takes ownership of auth input.
+            if (OtpConfig.isTotpPregenerationEnabled()) {
+                startTotpSession(token, authInput);
+                return;
+            }
         } catch (final IdpException exception) {
             displayMessageDialog(exception);
         }
@@ -187,6 +220,29 @@ public class OtpActivity extends ProvisioningActivity {
         authInput.wipe();
     }
 
+    private void startTotpSession(final SoftOathToken token, final AuthInput authInput) {
+        mTotpSession = new TotpSession(token, authInput, new TotpSession.Listener() {
+            @Override
+            public void onOtpGenerated(@NonNull final OtpValue otpValue) {
+                displayMessageResult(otpValue.getOtp().toString(), otpValue.getLifespan());
+                otpValue.wipe();
+            }
+
+            @Override
+            public void onError(@NonNull final Exception exception) {
+                displayMessageDialog(exception);
+            }
+        });
+        mTotpSession.start();
+    }
+
+    private void closeTotpSession() {
+        if (mTotpSession != null) {
+            mTotpSession.close();
+            mTotpSession = null;
+        }
+    }
+
     protected void generateAndDisplayOtpPinInput() {
         // Display pin input dialog.
         userPin(pin -> generateAndDisplayOtp(ProvisioningLogic.getToken(), pin));
@@ -51,4 +51,23 @@ public class OtpConfig {
     public static int getOTPLifetime() {
         return 30;
     }
+
+    /**
+     * Enables generation of the next TOTP in the background once the current one expires, so user does not have to
+     * enter PIN again for every time step. PIN is kept in memory for {@link #getTotpSessionDuration()}.
+     *
+     * @return {@code True} if enabled.
+     */
+    public static boolean isTotpPregenerationEnabled() {
+        return false;
+    }
+
+    /**
+     * Duration of the session in which TOTPs are generated without PIN entry.
+     *
+     * @return Duration in seconds.
+     */
+    public static int getTotpSessionDuration() {
+        return 120;
+    }
 }
@@ -33,14 +33,13 @@ import com.gemalto.idp.mobile.authentication.AuthInput;
 import com.gemalto.idp.mobile.core.IdpCore;
 import com.gemalto.idp.mobile.core.IdpException;
 import com.gemalto.idp.mobile.core.root.RootDetector;
-import com.gemalto.idp.mobile.otp.OtpModule;
-import com.gemalto.idp.mobile.otp.oath.OathDevice;
-import com.gemalto.idp.mobile.otp.oath.OathFactory;
-import com.gemalto.idp.mobile.otp.oath.OathService;
-import com.gemalto.idp.mobile.otp.oath.soft.SoftOathSettings;
 import com.gemalto.idp.mobile.otp.oath.soft.SoftOathToken;
 import com.thalesgroup.mobileprotector.commonutils.helpers.AbstractBaseLogic;
+import com.thalesgroup.mobileprotector.commonutils.helpers.OathDeviceCache;
 import com.thalesgroup.mobileprotector.commonutils.helpers.OtpValue;
+import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.commonutils.thread.Lane;
+import com.thalesgroup.mobileprotector.commonutils.thread.TaskFuture;
 
 /**
  * Mobile Protector SDK logic for OTP generation.
@@ -62,11 +61,21 @@ public class OtpLogic extends AbstractBaseLogic {
             // Handle root status according to app policy.
         }
 
-        final OathFactory oathFactory = OathService.create(OtpModule.create()).getFactory();
-        final SoftOathSettings softOathSettings = oathFactory.createSoftOathSettings();
-        softOathSettings.setOcraSuite(OtpConfig.getOcraSuite());
+        // Lifespan belongs to the last OTP of shared device, so both are read under the device lock.
+        return OathDeviceCache.getOathDeviceCache().withDevice(token, OtpConfig.getOcraSuite(), oathDevice ->
+                new OtpValue(oathDevice.getTotp(pin), oathDevice.getLastOtpLifespan(), OtpConfig.getOTPLifetime()));
+    }
 
-        final OathDevice oathDevice = oathFactory.createSoftOathDevice(token, softOathSettings);
-        return new OtpValue(oathDevice.getTotp(pin), oathDevice.getLastOtpLifespan(), OtpConfig.getOTPLifetime());
+    /**
+     * Generates an OTP asynchronously on the crypto lane.
+     *
+     * @param token Token to be used for OTP generation.
+     * @param pin   PIN.
+     * @return Future completed with generated OTP, or failed with {@code IdpException}.
+     */
+    @NonNull
+    public static TaskFuture<OtpValue> generateOtpAsync(@NonNull final SoftOathToken token,
+                                                        @NonNull final AuthInput pin) {
+        return ExecutionService.getExecutionService().submit(Lane.CRYPTO, "otp.generate", () -> generateOtp(token, pin));
     }
 }
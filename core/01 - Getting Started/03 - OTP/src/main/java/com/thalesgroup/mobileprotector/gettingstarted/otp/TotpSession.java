@@ -0,0 +1,242 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.gettingstarted.otp;
+
+import android.support.annotation.NonNull;
+
+import com.gemalto.idp.mobile.authentication.AuthInput;
+import com.gemalto.idp.mobile.core.IdpException;
+import com.gemalto.idp.mobile.otp.oath.soft.SoftOathToken;
+import com.thalesgroup.mobileprotector.commonutils.helpers.OtpValue;
+import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.commonutils.thread.Lane;
+import com.thalesgroup.mobileprotector.commonutils.thread.TaskFuture;
+
+/**
+ * Unlocked session which generates TOTP of every following time step on the crypto lane, so the displayed value is
+ * replaced as soon as the previous one expires, without another PIN entry.
+ * <p>
+ * Session owns the PIN and wipes it once it's closed, either explicitly or after
+ * {@link OtpConfig#getTotpSessionDuration()}. Value generated after the session was closed is wiped without being
+ * delivered.
+ */
+public final class TotpSession {
+
+    //region Declaration
+
+    /**
+     * Delay after time step boundary, so the clock used by SDK is surely in the new time step.
+     */
+    private static final long BOUNDARY_GUARD_MILLIS = 50;
+
+    /**
+     * Receives generated values on the main UI thread.
+     */
+    public interface Listener {
+        /**
+         * Called with TOTP of a new time step.
+         *
+         * @param otpValue Generated OTP, to be wiped by the listener.
+         */
+        void onOtpGenerated(@NonNull OtpValue otpValue);
+
+        /**
+         * Called if generation failed, usually with {@code IdpException}. Session is closed.
+         *
+         * @param exception Error.
+         */
+        void onError(@NonNull Exception exception);
+    }
+
+    private final SoftOathToken mToken;
+    private final AuthInput mPin;
+    private final Listener mListener;
+    private final long mExpiresAt;
+    private TaskFuture<Void> mScheduled;
+    private OtpValue mPending;
+    private boolean mGenerating;
+    private boolean mClosed;
+
+    //endregion
+
+    //region Public API
+
+    /**
+     * Creates a new {@code TotpSession}.
+     *
+     * @param token    Token to be used for OTP generation.
+     * @param pin      PIN, owned and wiped by the session.
+     * @param listener Listener of generated values.
+     */
+    public TotpSession(@NonNull final SoftOathToken token,
+                       @NonNull final AuthInput pin,
+                       @NonNull final Listener listener) {
+        mToken = token;
+        mPin = pin;
+        mListener = listener;
+        mExpiresAt = System.currentTimeMillis() + OtpConfig.getTotpSessionDuration() * 1000L;
+    }
+
+    /**
+     * Schedules generation of the next time step.
+     */
+    public void start() {
+        scheduleNext();
+    }
+
+    /**
+     * Closes the session. Pending generation is cancelled, value which was not delivered yet and PIN are wiped.
+     */
+    public synchronized void close() {
+        if (mClosed) {
+            return;
+        }
+
+        mClosed = true;
+        if (mScheduled != null) {
+            mScheduled.cancel(false);
+            mScheduled = null;
+        }
+        if (mPending != null) {
+            mPending.wipe();
+            mPending = null;
+        }
+
+        // Running generation still uses the PIN, it will be wiped once it's done.
+        if (!mGenerating) {
+            mPin.wipe();
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return mClosed;
+    }
+
+    //endregion
+
+    //region Private Helpers
+
+    /**
+     * Schedules generation right after the next time step boundary, or closes the session if it expires before.
+     */
+    private synchronized void scheduleNext() {
+        if (mClosed) {
+            return;
+        }
+
+        final long timeStep = OtpConfig.getOTPLifetime() * 1000L;
+        final long now = System.currentTimeMillis();
+        final long boundary = (now / timeStep + 1) * timeStep;
+        if (boundary >= mExpiresAt) {
+            close();
+            return;
+        }
+
+        mScheduled = ExecutionService.getExecutionService()
+                .schedule(Lane.CRYPTO, "otp.pregenerate", boundary - now + BOUNDARY_GUARD_MILLIS, () -> {
+                    generate();
+                    return null;
+                });
+    }
+
+    /**
+     * Generates TOTP of the current time step on the crypto lane and hands it to the main UI thread.
+     */
+    private void generate() {
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mGenerating = true;
+        }
+
+        OtpValue otpValue = null;
+        Exception error = null;
+        boolean finished = false;
+        boolean delivering = false;
+        try {
+            otpValue = OtpLogic.generateOtp(mToken, mPin);
+            finished = true;
+        } catch (final IdpException | RuntimeException exception) {
+            // Unchecked error, e.g. from SDK, is reported as well, so the session does not stop refreshing silently.
+            error = exception;
+            finished = true;
+        } finally {
+            synchronized (this) {
+                mGenerating = false;
+                if (mClosed) {
+                    mPin.wipe();
+                } else if (finished) {
+                    mPending = otpValue;
+                    delivering = true;
+                }
+            }
+
+            if (!delivering) {
+                // Nobody will display the value anymore. Error which is not reported, e.g. out of memory, closes the
+                // session.
+                if (otpValue != null) {
+                    otpValue.wipe();
+                }
+                close();
+            }
+        }
+
+        if (delivering) {
+            final Exception finalError = error;
+            ExecutionService.getExecutionService().runOnMainUiThread(() -> deliver(finalError));
+        }
+    }
+
+    /**
+     * Delivers generated value to the listener on the main UI thread and schedules the next time step.
+     *
+     * @param error Generation error, or {@code null} if value was generated.
+     */
+    private void deliver(final Exception error) {
+        final OtpValue otpValue;
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            otpValue = mPending;
+            mPending = null;
+        }
+
+        if (error != null) {
+            close();
+            mListener.onError(error);
+            return;
+        }
+
+        mListener.onOtpGenerated(otpValue);
+        scheduleNext();
+    }
+
+    //endregion
+}
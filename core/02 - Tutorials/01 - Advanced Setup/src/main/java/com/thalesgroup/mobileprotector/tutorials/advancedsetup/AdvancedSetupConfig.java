@@ -118,6 +118,13 @@ public class AdvancedSetupConfig {
         return "";
     }
 
+    /**
+     * Measuring time in milliseconds per digest provider and input size when the fastest provider is selected. Warm up
+     * takes the same time, so each provider is hashed for four times this value. Selection is cached and measured
+     * again only after system update.
+     */
+    static final long DIGEST_BENCHMARK_MILLIS = 100;
+
     //region SecureLog configuration
 
     /**
@@ -36,7 +36,11 @@ import com.gemalto.idp.mobile.core.passwordmanager.PasswordManagerException;
 import com.gemalto.idp.mobile.msp.MspConfiguration;
 import com.gemalto.idp.mobile.otp.OtpConfiguration;
 import com.thalesgroup.gemalto.securelog.SecureLogConfig;
+import com.thalesgroup.mobileprotector.commonutils.crypto.DigestBenchmark;
 import com.thalesgroup.mobileprotector.commonutils.helpers.AbstractBaseLogic;
+import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.commonutils.thread.Lane;
+import com.thalesgroup.mobileprotector.commonutils.thread.Priority;
 
 /**
  * Logic for Mobile Protector SDK setup. This setup is used for advanced Mobile Protector features (OOB, MSP).
@@ -62,6 +66,13 @@ public class AdvancedSetupLogic extends AbstractBaseLogic {
                 // Password was changes etc..
                 throw new IllegalStateException(exception);
             }
+
+            // Pick the fastest provider for transaction challenges without delaying the start. Runs on storage lane,
+            // since benchmark on the single crypto worker would hold back the first OTP calculation, and selection is
+            // read from preferences anyway.
+            ExecutionService.getExecutionService().runOnBackgroundThread(Lane.STORAGE, Priority.BACKGROUND,
+                    "digest.benchmark", () -> DigestBenchmark.selectCached(ApplicationContextHolder.getContext(),
+                            "SHA-256", AdvancedSetupConfig.DIGEST_BENCHMARK_MILLIS));
         }
     }
 
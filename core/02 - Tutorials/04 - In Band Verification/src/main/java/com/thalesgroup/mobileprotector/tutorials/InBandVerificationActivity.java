@@ -36,6 +36,8 @@ import com.thalesgroup.mobileprotector.tutorials.advancedsetup.AdvancedSetupLogi
 import com.thalesgroup.mobileprotector.tutorials.inbandverification.InBandVerificationLogic;
 import com.thalesgroup.mobileprotector.tutorials.inbandverification.R;
 
+import java.util.concurrent.CancellationException;
+
 /**
  * Main entry point of the application for current flavor.
  */
@@ -56,6 +58,9 @@ public class InBandVerificationActivity extends BiometricIdActivity {
 
         // Initialise Mobile Protector SDK.
         AdvancedSetupLogic.setup();
+
+        // Purge expired verifications from offline outbox and send the remaining ones once network is available.
+        InBandVerificationLogic.init();
     }
 
     @Override
@@ -88,6 +93,33 @@ public class InBandVerificationActivity extends BiometricIdActivity {
         return token;
     }
 
+    @Override
+    protected void onPinKeypadShown() {
+        super.onPinKeypadShown();
+
+        // Connect to authentication server while user types the PIN, so verification does not wait for handshake.
+        InBandVerificationLogic.preconnect();
+    }
+
+    //endregion
+
+    //region Life Cycle
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+
+        // Display results of verifications sent late from offline outbox.
+        InBandVerificationLogic.setOutboxHandler((success, result, lifespan) -> displayMessageResult(result, lifespan));
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+
+        InBandVerificationLogic.setOutboxHandler(null);
+    }
+
     //endregion
 
     //region User Interface
@@ -104,13 +136,24 @@ public class InBandVerificationActivity extends BiometricIdActivity {
             // Show loading progress
             loadingBarShow(R.string.loading_verifying);
 
-            InBandVerificationLogic.verifyWithToken(token, pin, (success, result, lifespan) -> {
+            // Bind verification to this screen, so it's dropped once user leaves it.
+            getTaskScope().bind(InBandVerificationLogic.verifyWithToken(token, pin)).onMainThread((result, error) -> {
                 // Wipe auth input.
                 pin.wipe();
                 // Hide loading progress.
                 loadingBarHide();
+
+                if (error instanceof CancellationException) {
+                    // Screen is no longer visible. Nobody is waiting for the result.
+                    return;
+                }
+
                 // Update result view with last otp lifespan.
-                displayMessageResult(result, lifespan);
+                if (error == null) {
+                    displayMessageResult(result.getMessage(), result.getLifespan());
+                } else {
+                    displayMessageResult(error.getMessage(), null);
+                }
             });
         });
     }
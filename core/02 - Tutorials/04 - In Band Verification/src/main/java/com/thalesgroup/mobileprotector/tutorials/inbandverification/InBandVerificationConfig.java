@@ -27,6 +27,8 @@
 
 package com.thalesgroup.mobileprotector.tutorials.inbandverification;
 
+import com.thalesgroup.mobileprotector.commonutils.net.RetryPolicy;
+
 /**
  * Configuration for user authentication/OTP verification.
  */
@@ -37,6 +39,41 @@ class InBandVerificationConfig {
     static final String API_KEY = "";
     //endregion
 
+    /**
+     * Name of the offline outbox journal in application files directory.
+     */
+    static final String OUTBOX_FILE = "inband_outbox.journal";
+
+    /**
+     * Alias of the Android Keystore key which encrypts verifications stored in the offline outbox.
+     */
+    static final String OUTBOX_KEY_ALIAS = "inband_outbox_key";
+
+    //region Circuit Breaker
+    /**
+     * Number of consecutive failed requests after which verifications fail fast.
+     */
+    static final int CIRCUIT_FAILURE_THRESHOLD = 3;
+
+    /**
+     * How long verifications fail fast before a probe request is sent to the server again.
+     */
+    static final long CIRCUIT_OPEN_MILLIS = 15000;
+    //endregion
+
+    /**
+     * Whether verifications are sent through non-blocking {@code NioHttpTransport} instead of platform
+     * {@code HttpURLConnection}. Off by default, so verifications use the platform HTTP stack unless the application
+     * opts in.
+     */
+    static final boolean USE_NIO_TRANSPORT = false;
+
+    /**
+     * Minimal request body size which is sent gzip compressed. Verification requests carrying the OTP stay below it,
+     * so secrets are never compressed.
+     */
+    static final long COMPRESSION_MIN_SIZE = 1024;
+
     /**
      * Gets authentication URL where the generated OTP is validated.
      *
@@ -46,4 +83,16 @@ class InBandVerificationConfig {
         return "";
     }
 
+    /**
+     * Gets retry policy of verification requests. Retries stop earlier if the OTP expires.
+     * <p>
+     * Hedging is disabled, since server may reject second verification of the same OTP as replay. Enable it only if
+     * the server handles repeated verification idempotently.
+     *
+     * @return Retry policy.
+     */
+    static RetryPolicy getRetryPolicy() {
+        return new RetryPolicy(3, 250, 2000, 15000, false);
+    }
+
 }
@@ -30,45 +30,131 @@ package com.thalesgroup.mobileprotector.tutorials.inbandverification;
 import static com.gemalto.idp.mobile.core.ApplicationContextHolder.getContext;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.gemalto.idp.mobile.authentication.AuthInput;
 import com.gemalto.idp.mobile.core.IdpException;
 import com.gemalto.idp.mobile.otp.oath.soft.SoftOathToken;
-import com.thalesgroup.mobileprotector.commonutils.callbacks.GenericHandler;
 import com.thalesgroup.mobileprotector.commonutils.callbacks.GenericOtpHandler;
+import com.thalesgroup.mobileprotector.commonutils.crypto.KeystoreCipher;
 import com.thalesgroup.mobileprotector.commonutils.helpers.AbstractBaseLogic;
+import com.thalesgroup.mobileprotector.commonutils.helpers.Lifespan;
 import com.thalesgroup.mobileprotector.commonutils.helpers.OtpValue;
+import com.thalesgroup.mobileprotector.commonutils.net.CircuitBreakerTransport;
+import com.thalesgroup.mobileprotector.commonutils.net.CircuitOpenException;
+import com.thalesgroup.mobileprotector.commonutils.net.CompressingTransport;
+import com.thalesgroup.mobileprotector.commonutils.net.HttpRequest;
+import com.thalesgroup.mobileprotector.commonutils.net.HttpResponse;
+import com.thalesgroup.mobileprotector.commonutils.net.HttpStatusException;
+import com.thalesgroup.mobileprotector.commonutils.net.HttpTransport;
+import com.thalesgroup.mobileprotector.commonutils.net.JsonBodyWriter;
+import com.thalesgroup.mobileprotector.commonutils.net.JsonFieldReader;
+import com.thalesgroup.mobileprotector.commonutils.net.MalformedJsonException;
+import com.thalesgroup.mobileprotector.commonutils.net.NioHttpTransport;
+import com.thalesgroup.mobileprotector.commonutils.net.RequestNotSentException;
+import com.thalesgroup.mobileprotector.commonutils.net.RetryPolicy;
+import com.thalesgroup.mobileprotector.commonutils.net.UrlConnectionTransport;
+import com.thalesgroup.mobileprotector.commonutils.outbox.Outbox;
+import com.thalesgroup.mobileprotector.commonutils.outbox.OutboxEntry;
 import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.commonutils.thread.Lane;
+import com.thalesgroup.mobileprotector.commonutils.thread.TaskFuture;
 import com.thalesgroup.mobileprotector.gettingstarted.otp.OtpLogic;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.Reader;
-import java.io.StringWriter;
-import java.io.Writer;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
 
 /**
  * Logic for user authentication/OTP verification.
  */
 public class InBandVerificationLogic extends AbstractBaseLogic {
 
-    private static final String JSON_REQUEST = "{\n" +
-            "    \"name\": \"Auth_OTP\",\n" +
-            "    \"input\": {\n" +
-            "        \"userId\": \"%s\",\n" +
-            "        \"otp\" : \"%s\"\n" +
-            "    }\n" +
-            "}";
+    private static final String FIELD_STATUS = "status";
+    private static final String FIELD_MESSAGE = "message";
+    private static final String STATUS_SUCCESS = "Success";
+    private static final long MAX_RESPONSE_LENGTH = 64 * 1024;
+    private static final String OUTBOX_TYPE = "inband.verify";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final RetryPolicy RETRY_POLICY = InBandVerificationConfig.getRetryPolicy();
+
+    private static volatile CircuitBreakerTransport.Listener sCircuitListener;
+    private static volatile HttpTransport sTransport = createTransport(InBandVerificationConfig.USE_NIO_TRANSPORT
+            ? new NioHttpTransport(10000, 10000)
+            : new UrlConnectionTransport(10000, 10000));
+    private static final VerificationBatcher sBatcher = new VerificationBatcher(20, 16);
+    private static final KeystoreCipher sOutboxCipher = new KeystoreCipher(InBandVerificationConfig.OUTBOX_KEY_ALIAS);
+    private static Outbox sOutbox;
+    private static volatile GenericOtpHandler sOutboxHandler;
+
+    /**
+     * Opens offline outbox, purges verifications which expired meanwhile, e.g. while the application was not running,
+     * and starts sending the remaining ones whenever network is available. Should be called once the SDK is set up.
+     * Repeated calls do nothing.
+     */
+    public static synchronized void init() {
+        if (sOutbox != null) {
+            return;
+        }
+
+        final Context context = getContext();
+        assert context != null;
+
+        sOutbox = new Outbox(new File(context.getFilesDir(), InBandVerificationConfig.OUTBOX_FILE));
+        sOutbox.registerDeliverer(OUTBOX_TYPE, InBandVerificationLogic::deliverOffline);
+        sOutbox.purgeExpired();
+        sOutbox.startDrainer(context);
+    }
+
+    /**
+     * Replaces transport used to reach authentication server, e.g. to verify against local stand-in server.
+     *
+     * @param transport Transport to use for all following verifications.
+     */
+    public static void setTransport(@NonNull final HttpTransport transport) {
+        sTransport = createTransport(transport);
+    }
+
+    /**
+     * Sets listener of circuit breaker state changes, e.g. to show that authentication server is unavailable.
+     *
+     * @param listener Listener triggered on background thread, or {@code null} to remove it.
+     */
+    public static void setCircuitListener(@Nullable final CircuitBreakerTransport.Listener listener) {
+        sCircuitListener = listener;
+    }
+
+    /**
+     * Sets handler of verifications which failed due to network error and were sent later from the offline outbox.
+     *
+     * @param handler Handler triggered in UI thread for each late verification result, or {@code null} to ignore
+     *                such results.
+     */
+    public static void setOutboxHandler(@Nullable final GenericOtpHandler handler) {
+        sOutboxHandler = handler;
+    }
+
+    /**
+     * Starts connecting to authentication server in background, e.g. while user enters PIN, so verification which
+     * follows does not wait for host name resolution and full TLS handshake. No request is sent. Failure is ignored,
+     * verification then connects as usual.
+     */
+    public static void preconnect() {
+        ExecutionService.getExecutionService().submit(Lane.NETWORK, "inband.preconnect", () -> {
+            sTransport.preconnect(InBandVerificationConfig.getAuthenticationUrl());
+            return null;
+        });
+    }
 
     /**
      * Validates token with authentication server.
@@ -80,130 +166,356 @@ public class InBandVerificationLogic extends AbstractBaseLogic {
     public static void verifyWithToken(final SoftOathToken token,
                                        final AuthInput authInput,
                                        final GenericOtpHandler completionHandler) {
+        verifyWithToken(token, authInput).onMainThread((result, error) -> {
+            if (error == null) {
+                completionHandler.onFinished(result.isValid(), result.getMessage(), result.getLifespan());
+            } else {
+                completionHandler.onFinished(false, error.getMessage(), null);
+            }
+        });
+    }
+
+    /**
+     * Validates token with authentication server.
+     *
+     * @param token     Token to be verified.
+     * @param authInput Selected authentication input.
+     * @return Future completed with the verification result, or failed with {@code IdpException} if the OTP could
+     * not be generated.
+     */
+    @NonNull
+    public static TaskFuture<InBandVerificationResult> verifyWithToken(final SoftOathToken token,
+                                                                       final AuthInput authInput) {
         try {
-            verifyWithToken(token.getName(), OtpLogic.generateOtp(token, authInput), completionHandler);
+            return verifyWithToken(token.getName(), OtpLogic.generateOtp(token, authInput));
         } catch (final IdpException exception) {
-            completionHandler.onFinished(false, exception.getMessage(), null);
+            return TaskFuture.failed(exception);
         }
     }
 
     /**
-     * Validates generated OTP with authentication server.
+     * Validates generated OTP with authentication server as part of a batch. Verifications requested within a short
+     * window are sent together by single network task over one reused connection, instead of queueing one task per
+     * OTP. Useful when many tokens are verified in a burst.
+     * <p>
+     * The task sends verifications of the batch one after another with blocking transport, so a burst is throttled to
+     * one request in flight and the last verification waits for all previous ones. Use
+     * {@link #verifyWithToken(SoftOathToken, AuthInput)} for single latency sensitive verification.
+     *
+     * @param tokenName         User Id / Token Name
+     * @param otpValue          Generated OTP. Wiped once sent.
+     * @param completionHandler Completion handler triggered in UI thread once verification of this OTP is done.
+     */
+    public static void verifyBatched(@NonNull final String tokenName,
+                                     @NonNull final OtpValue otpValue,
+                                     @NonNull final GenericOtpHandler completionHandler) {
+        sBatcher.add(tokenName, otpValue, completionHandler);
+    }
+
+    /**
+     * Validates generated OTP with authentication server. Transient network errors are retried until the OTP
+     * expires. If network stays unavailable, verification is stored in offline outbox and sent once network returns.
      *
      * @param tokenName User Id / Token Name
-     * @param otpValue  Generated OTP.
-     * @param callback  Callback to the application
+     * @param otpValue  Generated OTP. Wiped once verification is done.
+     * @return Future completed with the verification result.
      */
-    private static void verifyWithToken(final String tokenName,
-                                        final OtpValue otpValue,
-                                        final GenericOtpHandler callback) {
-        final Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", String.format(Locale.US, "Bearer %s", InBandVerificationConfig.JWT));
-        headers.put("X-API-KEY", InBandVerificationConfig.API_KEY);
+    private static TaskFuture<InBandVerificationResult> verifyWithToken(final String tokenName,
+                                                                        final OtpValue otpValue) {
+        final Lifespan lifespan = otpValue.getLifespan();
+        final long deadline = SystemClock.elapsedRealtime() + lifespan.getRemainingMillis();
 
-        final String jsonRequest = String.format(Locale.US, JSON_REQUEST, tokenName, otpValue.getOtp());
-
-        ExecutionService.getExecutionService().runOnBackgroundThread(
-                () -> doPostRequest(
-                        InBandVerificationConfig.getAuthenticationUrl(),
-                        headers,
-                        jsonRequest,
-                        (success, result) -> {
-                            final Context context = getContext();
-                            assert context != null;
-
-                            final boolean valid = success && result.contains("\"status\":\"Success\",");
-                            if (!valid) {
-                                result = context.getString(R.string.otp_verify_fail);
-                            } else {
-                                result = context.getString(R.string.otp_verify_success);
-                            }
-
-                            callback.onFinished(valid, result, otpValue.getLifespan());
-                        }
-                )
-        );
-    }
-
-    private static HttpURLConnection createConnection(@NonNull final String hostUrl,
-                                                      @NonNull final Map<String, String> headers) throws IOException {
-        final URL url = new URL(hostUrl);
-        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-
-        for (final Map.Entry<String, String> entry : headers.entrySet()) {
-            final String key = entry.getKey();
-            final String value = entry.getValue();
-            connection.setRequestProperty(key, value);
+        // Same key for all attempts and for late delivery from outbox, so server can detect duplicates.
+        final String key = UUID.randomUUID().toString();
+
+        // Run on network lane, so slow server does not block OTP calculation or storage access.
+        return RETRY_POLICY
+                .execute(Lane.NETWORK, "inband.verify", deadline, () -> postOtp(tokenName, otpValue, key))
+                .thenApply(fields -> createResult(fields, lifespan))
+                .recoverWith(error -> {
+                    if (error instanceof CancellationException) {
+                        throw (CancellationException) error;
+                    } else if (error instanceof CircuitOpenException) {
+                        // Server is known to be down, report it right away. Outbox would not be drained until
+                        // connectivity changes anyway.
+                        return TaskFuture.completed(new InBandVerificationResult(false,
+                                getContext().getString(R.string.otp_verify_unavailable), lifespan));
+                    } else if (error instanceof RequestNotSentException) {
+                        // Device is offline. Request which might have reached the server is not stored, since
+                        // sending it again could be rejected as a replay.
+                        return enqueueOffline(key, tokenName, otpValue);
+                    }
+                    // OTP expired meanwhile, or server did not answer properly.
+                    return TaskFuture.completed(createResult(null, lifespan));
+                })
+                .whenComplete((result, error) -> otpValue.wipe());
+    }
+
+    /**
+     * Stores verification in offline outbox. Payload is encrypted with Keystore key, so the OTP is never written to
+     * disk in plain form.
+     *
+     * @param key       Idempotency key of the verification.
+     * @param tokenName User Id / Token Name
+     * @param otpValue  Generated OTP. Copied to the outbox encrypted.
+     * @return Future completed with the verification result once the verification is stored.
+     */
+    @NonNull
+    private static TaskFuture<InBandVerificationResult> enqueueOffline(@NonNull final String key,
+                                                                       @NonNull final String tokenName,
+                                                                       @NonNull final OtpValue otpValue) {
+        final Lifespan lifespan = otpValue.getLifespan();
+        final long expiresAt = System.currentTimeMillis() - lifespan.getAgeMillis() + lifespan.getMax() * 1000L;
+        if (expiresAt <= System.currentTimeMillis()) {
+            return TaskFuture.completed(createResult(null, lifespan));
         }
 
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setDoOutput(true);
-        connection.setUseCaches(false);
-        connection.setReadTimeout(10000);
-        connection.setConnectTimeout(10000);
+        final byte[] otp = otpValue.getOtp().toByteArray();
+        final byte[] name = tokenName.getBytes(UTF_8);
+        final byte[] payload = new byte[2 + name.length + otp.length];
+        payload[0] = (byte) (name.length >>> 8);
+        payload[1] = (byte) name.length;
+        System.arraycopy(name, 0, payload, 2, name.length);
+        System.arraycopy(otp, 0, payload, 2 + name.length, otp.length);
+        Arrays.fill(otp, (byte) 0);
 
-        return connection;
+        final byte[] encrypted;
+        try {
+            // Idempotency key is authenticated along, so payload can not be moved to another entry.
+            encrypted = sOutboxCipher.encrypt(payload, key.getBytes(UTF_8));
+        } catch (final GeneralSecurityException exception) {
+            return TaskFuture.completed(createResult(null, lifespan));
+        } finally {
+            Arrays.fill(payload, (byte) 0);
+        }
+
+        return getOutbox().enqueue(key, OUTBOX_TYPE, expiresAt, encrypted)
+                .thenApply(stored -> new InBandVerificationResult(false,
+                        getContext().getString(R.string.otp_verify_queued), lifespan))
+                .recover(error -> createResult(null, lifespan));
     }
 
-    private static String convertStreamToString(final InputStream inputStream) throws IOException {
-        String response = "";
+    /**
+     * Sends verification stored in offline outbox. Called on network lane once network is available.
+     *
+     * @param entry Outbox entry.
+     * @throws RequestNotSentException If network is still unavailable.
+     */
+    private static void deliverOffline(@NonNull final OutboxEntry entry) throws RequestNotSentException {
+        final byte[] payload;
+        try {
+            payload = sOutboxCipher.decrypt(entry.getPayload(), entry.getKey().getBytes(UTF_8));
+        } catch (final GeneralSecurityException exception) {
+            // Keystore key is gone, e.g. application data were restored from backup. Entry is dropped.
+            return;
+        }
 
-        do {
-            if (inputStream == null) {
-                break;
-            }
+        final int nameLength = (payload[0] & 0xFF) << 8 | payload[1] & 0xFF;
+        final String tokenName = new String(payload, 2, nameLength, UTF_8);
+        final byte[] otp = Arrays.copyOfRange(payload, 2 + nameLength, payload.length);
+        Arrays.fill(payload, (byte) 0);
 
-            final Writer writer = new StringWriter();
+        Map<String, String> fields;
+        try {
+            fields = postOtp(tokenName, otp, entry.getKey());
+        } catch (final RequestNotSentException exception) {
+            // Keep the entry for next drain.
+            throw exception;
+        } catch (final IOException exception) {
+            // Request might have reached the server, it's not repeated.
+            fields = null;
+        } finally {
+            Arrays.fill(otp, (byte) 0);
+        }
 
-            final char[] buffer = new char[1024];
-            try (Reader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), 1024)) {
-                int numberOfCharacters = reader.read(buffer);
-                while (numberOfCharacters != -1) {
-                    writer.write(buffer, 0, numberOfCharacters);
-                    numberOfCharacters = reader.read(buffer);
-                }
+        final InBandVerificationResult result = createResult(fields, null);
+        ExecutionService.getExecutionService().runOnMainUiThread(() -> {
+            final GenericOtpHandler handler = sOutboxHandler;
+            if (handler != null) {
+                handler.onFinished(result.isValid(), result.getMessage(), null);
             }
+        });
+    }
 
-            response = writer.toString();
-        } while (false);
+    /**
+     * Gets offline outbox, opened by {@link #init()} if it was not done yet.
+     *
+     * @return Offline outbox.
+     */
+    @NonNull
+    private static synchronized Outbox getOutbox() {
+        init();
+        return sOutbox;
+    }
 
-        return response;
+    /**
+     * Validates generated OTP with authentication server synchronously, with single attempt. Must not be called on
+     * main UI thread.
+     *
+     * @param tokenName User Id / Token Name
+     * @param otpValue  Generated OTP. Wiped once sent.
+     * @return Verification result.
+     */
+    @NonNull
+    static InBandVerificationResult verifyOtp(@NonNull final String tokenName, @NonNull final OtpValue otpValue) {
+        Map<String, String> fields;
+        try {
+            fields = postOtp(tokenName, otpValue, null);
+        } catch (final IOException exception) {
+            fields = null;
+        } finally {
+            otpValue.wipe();
+        }
+
+        return createResult(fields, otpValue.getLifespan());
     }
 
     /**
-     * Does a POST request.
+     * Sends single Auth_OTP request.
      *
-     * @param hostUrl  URL.
-     * @param headers  Headers.
-     * @param body     Body.
-     * @param callback Callback back to the application.
+     * @param tokenName      User Id / Token Name
+     * @param otpValue       Generated OTP. Kept intact, so the request can be repeated.
+     * @param idempotencyKey Key identifying repeated requests of the same verification, or {@code null}.
+     * @return Status and message fields of the response.
+     * @throws IOException If request failed.
      */
-    private static void doPostRequest(@NonNull final String hostUrl,
-                                      @NonNull final Map<String, String> headers,
-                                      @NonNull final String body,
-                                      @NonNull final GenericHandler callback) {
-        final ExecutionService service = ExecutionService.getExecutionService();
+    @NonNull
+    private static Map<String, String> postOtp(@NonNull final String tokenName,
+                                               @NonNull final OtpValue otpValue,
+                                               @Nullable final String idempotencyKey) throws IOException {
+        // OTP is copied from its secure container directly to the request buffer, so it never becomes a String.
+        final byte[] otp = otpValue.getOtp().toByteArray();
+        try {
+            return postOtp(tokenName, otp, idempotencyKey);
+        } finally {
+            Arrays.fill(otp, (byte) 0);
+        }
+    }
 
+    /**
+     * Sends single Auth_OTP request.
+     *
+     * @param tokenName      User Id / Token Name
+     * @param otp            UTF-8 encoded OTP.
+     * @param idempotencyKey Key identifying repeated requests of the same verification, or {@code null}.
+     * @return Status and message fields of the response.
+     * @throws IOException If request failed.
+     */
+    @NonNull
+    private static Map<String, String> postOtp(@NonNull final String tokenName,
+                                               @NonNull final byte[] otp,
+                                               @Nullable final String idempotencyKey) throws IOException {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", String.format(Locale.US, "Bearer %s", InBandVerificationConfig.JWT));
+        headers.put("X-API-KEY", InBandVerificationConfig.API_KEY);
+        if (idempotencyKey != null) {
+            headers.put("Idempotency-Key", idempotencyKey);
+        }
+
+        final JsonBodyWriter body = JsonBodyWriter.obtain();
         try {
-            final HttpURLConnection connection = createConnection(hostUrl, headers);
+            writeRequest(body, tokenName, otp);
+            return doPostRequest(InBandVerificationConfig.getAuthenticationUrl(), headers, body);
+        } finally {
+            body.wipe();
+        }
+    }
 
-            try (OutputStreamWriter writer = new OutputStreamWriter(connection.getOutputStream())) {
-                writer.write(body);
-                writer.flush();
+    /**
+     * Wraps transport with response decompression and circuit breaker, so verification fails fast while the server is
+     * down, instead of waiting for connect timeout.
+     *
+     * @param transport Transport to wrap.
+     * @return Wrapped transport.
+     */
+    @NonNull
+    private static HttpTransport createTransport(@NonNull final HttpTransport transport) {
+        final HttpTransport compressing = new CompressingTransport(transport,
+                InBandVerificationConfig.COMPRESSION_MIN_SIZE);
+        final CircuitBreakerTransport retValue = new CircuitBreakerTransport(compressing,
+                InBandVerificationConfig.CIRCUIT_FAILURE_THRESHOLD,
+                InBandVerificationConfig.CIRCUIT_OPEN_MILLIS);
+        retValue.setListener((previous, current) -> {
+            final CircuitBreakerTransport.Listener listener = sCircuitListener;
+            if (listener != null) {
+                listener.onStateChanged(previous, current);
             }
+        });
+        return retValue;
+    }
 
-            final int statusCode = connection.getResponseCode();
-            String responseBody;
-            if (statusCode > 226) {
-                responseBody = "";
-            } else {
-                responseBody = convertStreamToString(connection.getInputStream());
+    /**
+     * Creates verification result from response fields.
+     *
+     * @param fields   Status and message fields of the response, or {@code null} if the request failed.
+     * @param lifespan Lifespan of verified OTP, or {@code null} if it's not relevant anymore.
+     * @return Verification result.
+     */
+    @NonNull
+    private static InBandVerificationResult createResult(@Nullable final Map<String, String> fields,
+                                                         @Nullable final Lifespan lifespan) {
+        final Context context = getContext();
+        assert context != null;
+
+        final boolean valid = fields != null && STATUS_SUCCESS.equals(fields.get(FIELD_STATUS));
+        String message = context.getString(valid ? R.string.otp_verify_success : R.string.otp_verify_fail);
+        if (!valid && fields != null && fields.get(FIELD_MESSAGE) != null) {
+            // Attach server side reason of the failure.
+            message += "\n" + fields.get(FIELD_MESSAGE);
+        }
+        return new InBandVerificationResult(valid, message, lifespan);
+    }
+
+    /**
+     * Writes Auth_OTP request.
+     *
+     * @param body      Request body writer.
+     * @param tokenName User Id / Token Name
+     * @param otp       UTF-8 encoded OTP.
+     */
+    private static void writeRequest(@NonNull final JsonBodyWriter body,
+                                     @NonNull final String tokenName,
+                                     @NonNull final byte[] otp) {
+        body.beginObject()
+                .name("name").value("Auth_OTP")
+                .name("input").beginObject()
+                .name("userId").value(tokenName)
+                .name("otp").value(otp)
+                .endObject()
+                .endObject();
+    }
+
+    /**
+     * Does a POST request.
+     *
+     * @param hostUrl URL.
+     * @param headers Headers.
+     * @param body    Body.
+     * @return Status and message fields of the response.
+     * @throws IOException If request failed.
+     */
+    @NonNull
+    private static Map<String, String> doPostRequest(@NonNull final String hostUrl,
+                                                     @NonNull final Map<String, String> headers,
+                                                     @NonNull final HttpRequest.Body body) throws IOException {
+        final HttpRequest request = new HttpRequest("POST", hostUrl, headers, body);
+
+        // Closing the response returns connection to the pool, so next verification does not need new handshake.
+        try (HttpResponse response = sTransport.execute(request)) {
+            final int statusCode = response.getStatusCode();
+            if (HttpStatusException.isGatewayError(statusCode)) {
+                // Server behind the gateway did not process the request, so it can be retried.
+                throw new HttpStatusException(statusCode);
+            }
+            if (HttpStatusException.isError(statusCode) || response.getBody() == null) {
+                return new HashMap<>();
             }
 
-            service.runOnMainUiThread(() -> callback.onFinished(true, responseBody));
-        } catch (final IOException exception) {
-            service.runOnMainUiThread(() -> callback.onFinished(false, exception.getMessage()));
+            // Only status and message are needed. Reader stops once it has them, rest of the body is just drained.
+            return JsonFieldReader.readFields(response.getBody(), MAX_RESPONSE_LENGTH, FIELD_STATUS, FIELD_MESSAGE);
+        } catch (final MalformedJsonException exception) {
+            // Server did answer, invalid answer is a failed verification. Repeating the same OTP would be a replay.
+            return new HashMap<>();
         }
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.tutorials.inbandverification;
+
+import android.support.annotation.NonNull;
+
+import com.thalesgroup.mobileprotector.commonutils.callbacks.GenericOtpHandler;
+import com.thalesgroup.mobileprotector.commonutils.helpers.OtpValue;
+import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.commonutils.thread.Lane;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects OTP verifications requested within a short window and sends them from single network task.
+ * <p>
+ * Verifications of one batch are sent one after another over the same keep-alive connection, so the batch pays for
+ * single queue hand-off and single connection setup. Batch is sent once the window elapses or once it's full. Each
+ * scheduled flush owns the batch which was current when it was scheduled, so its failure never fails items of the
+ * next batch.
+ */
+class VerificationBatcher {
+    private static final String TAG = "inband.verify.batch";
+
+    private static class Item {
+        private final String mTokenName;
+        private final OtpValue mOtpValue;
+        private final GenericOtpHandler mHandler;
+
+        Item(final String tokenName, final OtpValue otpValue, final GenericOtpHandler handler) {
+            mTokenName = tokenName;
+            mOtpValue = otpValue;
+            mHandler = handler;
+        }
+    }
+
+    private final long mWindowMillis;
+    private final int mMaxBatchSize;
+    // Current batch. New list is created whenever the batch is taken, so scheduled flush recognizes its own batch.
+    private List<Item> mPending = new ArrayList<>();
+    private boolean mFlushScheduled;
+    private boolean mImmediateFlushScheduled;
+
+    /**
+     * Creates a new {@code VerificationBatcher}.
+     *
+     * @param windowMillis Time to wait for more verifications after the first one arrived.
+     * @param maxBatchSize Number of verifications which triggers sending without waiting for the window.
+     */
+    VerificationBatcher(final long windowMillis, final int maxBatchSize) {
+        mWindowMillis = windowMillis;
+        mMaxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Adds verification to the current batch.
+     *
+     * @param tokenName User Id / Token Name
+     * @param otpValue  Generated OTP.
+     * @param handler   Completion handler triggered in UI thread once verification of this OTP is done.
+     */
+    void add(@NonNull final String tokenName,
+             @NonNull final OtpValue otpValue,
+             @NonNull final GenericOtpHandler handler) {
+        final long delay;
+        final List<Item> batch;
+        synchronized (this) {
+            mPending.add(new Item(tokenName, otpValue, handler));
+            if (mPending.size() >= mMaxBatchSize && !mImmediateFlushScheduled) {
+                // Batch is full. Do not wait for the rest of the window.
+                delay = 0;
+                mImmediateFlushScheduled = true;
+            } else if (!mFlushScheduled) {
+                delay = mWindowMillis;
+            } else {
+                // Pending flush will take this item as well.
+                return;
+            }
+            mFlushScheduled = true;
+            batch = mPending;
+        }
+
+        ExecutionService.getExecutionService()
+                .schedule(Lane.NETWORK, TAG, delay, () -> {
+                    flush(batch);
+                    return null;
+                })
+                .whenComplete((result, error) -> {
+                    // Lane queue is full. Nobody else will send items of this batch, unless its other flush did.
+                    // Items added after this batch was taken belong to the next batch and its own flush.
+                    if (error != null) {
+                        fail(take(batch), error.getMessage());
+                    }
+                });
+    }
+
+    private void flush(@NonNull final List<Item> batch) {
+        for (final Item item : take(batch)) {
+            InBandVerificationResult result;
+            try {
+                result = InBandVerificationLogic.verifyOtp(item.mTokenName, item.mOtpValue);
+            } catch (final RuntimeException exception) {
+                // One broken item must not prevent others from being verified.
+                result = new InBandVerificationResult(false, exception.getMessage(), null);
+            }
+
+            final InBandVerificationResult finalResult = result;
+            ExecutionService.getExecutionService()
+                    .runOnMainUiThread(() -> item.mHandler.onFinished(finalResult.isValid(),
+                            finalResult.getMessage(),
+                            finalResult.getLifespan()));
+        }
+    }
+
+    /**
+     * Takes items of given batch, unless the batch was already taken by its other flush.
+     *
+     * @param batch Batch for which the flush was scheduled.
+     * @return Items to send, or empty list if the batch was already taken.
+     */
+    @NonNull
+    private synchronized List<Item> take(@NonNull final List<Item> batch) {
+        if (batch != mPending) {
+            return Collections.emptyList();
+        }
+
+        final List<Item> retValue = mPending;
+        mPending = new ArrayList<>();
+        mFlushScheduled = false;
+        mImmediateFlushScheduled = false;
+        return retValue;
+    }
+
+    private static void fail(@NonNull final List<Item> items, final String message) {
+        for (final Item item : items) {
+            item.mOtpValue.wipe();
+            ExecutionService.getExecutionService()
+                    .runOnMainUiThread(() -> item.mHandler.onFinished(false, message, null));
+        }
+    }
+}
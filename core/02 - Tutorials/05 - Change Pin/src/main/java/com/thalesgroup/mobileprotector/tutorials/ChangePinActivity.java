@@ -67,6 +67,9 @@ public class ChangePinActivity extends InBandVerificationActivity {
 
         // Initialise Mobile Protector SDK.
         AdvancedSetupLogic.setup();
+
+        // Purge expired verifications from offline outbox and send the remaining ones once network is available.
+        InBandVerificationLogic.init();
     }
 
     @Override
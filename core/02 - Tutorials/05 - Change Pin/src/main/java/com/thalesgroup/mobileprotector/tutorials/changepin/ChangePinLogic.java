@@ -30,7 +30,9 @@ package com.thalesgroup.mobileprotector.tutorials.changepin;
 import com.gemalto.idp.mobile.authentication.mode.pin.PinAuthInput;
 import com.gemalto.idp.mobile.core.IdpException;
 import com.gemalto.idp.mobile.otp.oath.soft.SoftOathToken;
+import com.thalesgroup.mobileprotector.commonutils.crypto.ChallengeCache;
 import com.thalesgroup.mobileprotector.commonutils.helpers.AbstractBaseLogic;
+import com.thalesgroup.mobileprotector.commonutils.helpers.OathDeviceCache;
 
 /**
  * Logic for change PIN.
@@ -48,6 +50,10 @@ public class ChangePinLogic extends AbstractBaseLogic {
             // Try to change pin.
             try {
                 token.changePin(oldPin, newPin);
+
+                // Devices and challenges created with previous PIN must not be used anymore.
+                OathDeviceCache.getOathDeviceCache().invalidate(token.getName());
+                ChallengeCache.getChallengeCache().clear();
                 retValue = getString(R.string.change_pin_success);
             } catch (final IdpException exception) {
                 retValue = exception.getMessage();
@@ -36,6 +36,7 @@ import com.gemalto.idp.mobile.ui.secureinput.SecureInputService;
 import com.gemalto.idp.mobile.ui.secureinput.SecureInputUi;
 import com.gemalto.idp.mobile.ui.secureinput.SecureKeypadListener;
 import com.thalesgroup.mobileprotector.tutorials.advancedsetup.AdvancedSetupLogic;
+import com.thalesgroup.mobileprotector.tutorials.inbandverification.InBandVerificationLogic;
 import com.thalesgroup.mobileprotector.tutorials.securekeypad.R;
 
 import java.util.Arrays;
@@ -65,6 +66,9 @@ public class SecureKeypadActivity extends InBandVerificationActivity {
 
         // Initialise Mobile Protector SDK.
         AdvancedSetupLogic.setup();
+
+        // Purge expired verifications from offline outbox and send the remaining ones once network is available.
+        InBandVerificationLogic.init();
     }
 
     @Override
@@ -37,6 +37,7 @@ import com.gemalto.idp.mobile.otp.oath.soft.SoftOathToken;
 import com.thalesgroup.mobileprotector.commonutils.helpers.OtpValue;
 import com.thalesgroup.mobileprotector.gettingstarted.provisioning.ProvisioningLogic;
 import com.thalesgroup.mobileprotector.tutorials.advancedsetup.AdvancedSetupLogic;
+import com.thalesgroup.mobileprotector.tutorials.inbandverification.InBandVerificationLogic;
 import com.thalesgroup.mobileprotector.tutorials.transactionsign.R;
 import com.thalesgroup.mobileprotector.tutorials.transactionsign.TransactionSignLogic;
 
@@ -62,6 +63,9 @@ public class TransactionSignActivity extends SecureKeypadActivity {
 
         // Initialise Mobile Protector SDK.
         AdvancedSetupLogic.setup();
+
+        // Purge expired verifications from offline outbox and send the remaining ones once network is available.
+        InBandVerificationLogic.init();
     }
 
     @Override
@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.tutorials.transactionsign;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+
+/**
+ * Transaction to be signed as part of a batch.
+ */
+public class Transaction {
+    private final String mAmount;
+    private final String mBeneficiary;
+    private final File mDocument;
+
+    /**
+     * Creates a transaction.
+     *
+     * @param amount      Amount to be signed.
+     * @param beneficiary Beneficiary to be signed.
+     */
+    public Transaction(@NonNull final String amount, @NonNull final String beneficiary) {
+        this(amount, beneficiary, null);
+    }
+
+    /**
+     * Creates a transaction which includes a document, e.g. a contract.
+     *
+     * @param amount      Amount to be signed.
+     * @param beneficiary Beneficiary to be signed.
+     * @param document    Document to be signed.
+     */
+    public Transaction(@NonNull final String amount,
+                       @NonNull final String beneficiary,
+                       @Nullable final File document) {
+        mAmount = amount;
+        mBeneficiary = beneficiary;
+        mDocument = document;
+    }
+
+    @NonNull
+    public String getAmount() {
+        return mAmount;
+    }
+
+    @NonNull
+    public String getBeneficiary() {
+        return mBeneficiary;
+    }
+
+    @Nullable
+    public File getDocument() {
+        return mDocument;
+    }
+}
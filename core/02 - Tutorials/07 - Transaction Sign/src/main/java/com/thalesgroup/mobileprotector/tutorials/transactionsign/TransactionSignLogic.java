@@ -34,21 +34,27 @@ import com.gemalto.idp.mobile.core.IdpCore;
 import com.gemalto.idp.mobile.core.IdpException;
 import com.gemalto.idp.mobile.core.root.RootDetector;
 import com.gemalto.idp.mobile.core.util.SecureString;
-import com.gemalto.idp.mobile.otp.OtpModule;
-import com.gemalto.idp.mobile.otp.oath.OathDevice;
-import com.gemalto.idp.mobile.otp.oath.OathFactory;
-import com.gemalto.idp.mobile.otp.oath.OathService;
-import com.gemalto.idp.mobile.otp.oath.soft.SoftOathSettings;
 import com.gemalto.idp.mobile.otp.oath.soft.SoftOathToken;
+import com.thalesgroup.mobileprotector.commonutils.crypto.ChallengeCache;
+import com.thalesgroup.mobileprotector.commonutils.crypto.DigestPool;
+import com.thalesgroup.mobileprotector.commonutils.crypto.FileDigest;
+import com.thalesgroup.mobileprotector.commonutils.crypto.Hex;
+import com.thalesgroup.mobileprotector.commonutils.crypto.TlvEncoder;
 import com.thalesgroup.mobileprotector.commonutils.helpers.AbstractBaseLogic;
+import com.thalesgroup.mobileprotector.commonutils.helpers.OathDeviceCache;
 import com.thalesgroup.mobileprotector.commonutils.helpers.OtpValue;
+import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.commonutils.thread.Lane;
+import com.thalesgroup.mobileprotector.commonutils.thread.TaskFuture;
 import com.thalesgroup.mobileprotector.gettingstarted.otp.OtpConfig;
 
-import java.io.ByteArrayOutputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.File;
+import java.io.IOException;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -60,6 +66,20 @@ public class TransactionSignLogic extends AbstractBaseLogic {
 
     private final static char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
 
+    // Challenge hash and its hex form are reused per thread and wiped after each challenge.
+    private static final ThreadLocal<byte[]> sHashBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[32];
+        }
+    };
+    private static final ThreadLocal<byte[]> sHexBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[64];
+        }
+    };
+
     private static class KeyValue {
         private final String mKey, mValue;
 
@@ -75,11 +95,6 @@ public class TransactionSignLogic extends AbstractBaseLogic {
         public String getValue() {
             return mValue;
         }
-
-        byte[] getKeyValueUTF8() {
-            final String keyValue = mKey + ":" + mValue;
-            return keyValue.getBytes(StandardCharsets.UTF_8);
-        }
     }
 
     //endregion
@@ -101,23 +116,140 @@ public class TransactionSignLogic extends AbstractBaseLogic {
                                        @NonNull final AuthInput pin,
                                        @NonNull final String amount,
                                        @NonNull final String beneficiary) throws IdpException {
-        if (IdpCore.getInstance().getRootDetector().getRootStatus() != RootDetector.RootStatus.NOT_ROOTED) { //NOPMD
-            // Handle root status according to app policy.
+        final List<KeyValue> values = new ArrayList<>();
+        values.add(new KeyValue("amount", amount));
+        values.add(new KeyValue("beneficiary", beneficiary));
+
+        return generateOtp(token, pin, values);
+    }
+
+    /**
+     * Generates an OTP for transaction signature which includes a document, e.g. a contract. Document is hashed with
+     * constant memory, so it can be of any size.
+     *
+     * @param token       Token to be used for OTP generation.
+     * @param pin         PIN.
+     * @param amount      Amount to be signed.
+     * @param beneficiary Beneficiary to be signed.
+     * @param document    Document to be signed.
+     * @return Generated OTP.
+     * @throws IdpException If error during OTP generation occurs.
+     * @throws IOException  If document could not be read.
+     */
+    public static OtpValue generateOtp(@NonNull final SoftOathToken token,
+                                       @NonNull final AuthInput pin,
+                                       @NonNull final String amount,
+                                       @NonNull final String beneficiary,
+                                       @NonNull final File document) throws IdpException, IOException {
+        final List<KeyValue> values = new ArrayList<>();
+        values.add(new KeyValue("amount", amount));
+        values.add(new KeyValue("beneficiary", beneficiary));
+        values.add(new KeyValue("document", getDocumentHash(document)));
+
+        return generateOtp(token, pin, values);
+    }
+
+    /**
+     * Generates an OTP for transaction signature asynchronously on the crypto lane.
+     *
+     * @param token       Token to be used for OTP generation.
+     * @param pin         PIN.
+     * @param amount      Amount to be signed.
+     * @param beneficiary Beneficiary to be signed.
+     * @return Future completed with generated OTP, or failed with {@code IdpException}.
+     */
+    @NonNull
+    public static TaskFuture<OtpValue> generateOtpAsync(@NonNull final SoftOathToken token,
+                                                        @NonNull final AuthInput pin,
+                                                        @NonNull final String amount,
+                                                        @NonNull final String beneficiary) {
+        return ExecutionService.getExecutionService()
+                .submit(Lane.CRYPTO, "transaction.sign", () -> generateOtp(token, pin, amount, beneficiary));
+    }
+
+    /**
+     * Generates an OTP for transaction signature which includes a document asynchronously on the crypto lane.
+     *
+     * @param token       Token to be used for OTP generation.
+     * @param pin         PIN.
+     * @param amount      Amount to be signed.
+     * @param beneficiary Beneficiary to be signed.
+     * @param document    Document to be signed.
+     * @return Future completed with generated OTP, or failed with {@code IdpException} or {@code IOException}.
+     */
+    @NonNull
+    public static TaskFuture<OtpValue> generateOtpAsync(@NonNull final SoftOathToken token,
+                                                        @NonNull final AuthInput pin,
+                                                        @NonNull final String amount,
+                                                        @NonNull final String beneficiary,
+                                                        @NonNull final File document) {
+        return ExecutionService.getExecutionService().submit(Lane.CRYPTO, "transaction.sign.document",
+                () -> generateOtp(token, pin, amount, beneficiary, document));
+    }
+
+    /**
+     * Generates OTPs for a batch of transactions with a single PIN entry. The cached OATH device is reused for all
+     * transactions, it's locked only while single OTP is calculated. Signing stops at the first SDK error, e.g. wrong
+     * PIN, so the PIN retry counter is not exhausted by the rest of the batch; remaining transactions are reported with
+     * the same error. PIN is wiped once the batch is done.
+     *
+     * @param token        Token to be used for OTP generation.
+     * @param pin          PIN, wiped by this method.
+     * @param transactions Transactions to be signed.
+     * @return Results in order of transactions.
+     */
+    @NonNull
+    public static List<TransactionSignResult> generateOtps(@NonNull final SoftOathToken token,
+                                                           @NonNull final AuthInput pin,
+                                                           @NonNull final List<Transaction> transactions) {
+        final List<TransactionSignResult> retValue = new ArrayList<>(transactions.size());
+        try {
+            // Device which could not be created fails the first transaction as any other SDK error.
+            IdpException fatal = null;
+            for (final Transaction transaction : transactions) {
+                if (fatal != null) {
+                    retValue.add(new TransactionSignResult(transaction, null, fatal));
+                    continue;
+                }
+
+                try {
+                    final OtpValue otpValue = generateOtp(token, pin, getValues(transaction));
+                    retValue.add(new TransactionSignResult(transaction, otpValue, null));
+                } catch (final IOException exception) {
+                    // Only this transaction is affected.
+                    retValue.add(new TransactionSignResult(transaction, null, exception));
+                } catch (final IdpException exception) {
+                    fatal = exception;
+                    retValue.add(new TransactionSignResult(transaction, null, exception));
+                }
+            }
+        } finally {
+            pin.wipe();
         }
 
-        // Create service with respective settings
-        final OathFactory oathFactory = OathService.create(OtpModule.create()).getFactory();
-        final SoftOathSettings softOathSettings = oathFactory.createSoftOathSettings();
-        softOathSettings.setOcraSuite(OtpConfig.getOcraSuite());
-
-        // Create and use OATH device to calculate OTP
-        final OathDevice oathDevice = oathFactory.createSoftOathDevice(token, softOathSettings);
-        final SecureString otp = oathDevice.getOcraOtp(pin,
-                getServerChallenge(amount, beneficiary),
-                null,
-                null,
-                null);
-        return new OtpValue(otp, oathDevice.getLastOtpLifespan(), OtpConfig.getOTPLifetime());
+        return retValue;
+    }
+
+    /**
+     * Generates OTPs for a batch of transactions with a single PIN entry asynchronously on the crypto lane. The
+     * whole batch runs as one task, since the crypto lane executes one task at a time and one OATH device is
+     * shared by all transactions.
+     *
+     * @param token        Token to be used for OTP generation.
+     * @param pin          PIN, wiped once the batch is done, or once the future fails without running the batch.
+     * @param transactions Transactions to be signed.
+     * @return Future completed with results in order of transactions.
+     */
+    @NonNull
+    public static TaskFuture<List<TransactionSignResult>> generateOtpsAsync(
+            @NonNull final SoftOathToken token,
+            @NonNull final AuthInput pin,
+            @NonNull final List<Transaction> transactions) {
+        final List<Transaction> copy = new ArrayList<>(transactions);
+        return ExecutionService.getExecutionService()
+                .submit(Lane.CRYPTO, "transaction.sign.batch", () -> generateOtps(token, pin, copy))
+                // Task which was rejected, cancelled or timed out in the queue never wipes the PIN itself.
+                .whenComplete((results, error) -> pin.wipe());
     }
 
     //endregion
@@ -126,53 +258,126 @@ public class TransactionSignLogic extends AbstractBaseLogic {
     //region Private Helpers
 
     /**
-     * Creates the challenge to be signed.
+     * Generates an OTP for transaction signature of given values using cached OATH device.
      *
-     * @param amount      Amount to be signed.
-     * @param beneficiary Beneficiary to be signed.
-     * @return Calculated challenge based on IdCloud implementation.
+     * @param token  Token to be used for OTP generation.
+     * @param pin    PIN.
+     * @param values Values to be signed.
+     * @return Generated OTP.
+     * @throws IdpException If error during OTP generation occurs.
      */
-    private static SecureString getServerChallenge(final String amount, final String beneficiary) {
-        final List<KeyValue> values = new ArrayList<>();
-        values.add(new KeyValue("amount", amount));
-        values.add(new KeyValue("beneficiary", beneficiary));
+    private static OtpValue generateOtp(@NonNull final SoftOathToken token,
+                                        @NonNull final AuthInput pin,
+                                        @NonNull final List<KeyValue> values) throws IdpException {
+        checkRootStatus();
+
+        // Challenge is computed before the device is locked, only OTP and its lifespan are read under the lock.
+        // Recently used challenge is lent by the cache, e.g. when the same transaction is signed again after wrong PIN.
+        return ChallengeCache.getChallengeCache().withChallenge(getCacheKey(values),
+                () -> getOcraChallenge(values),
+                serverChallenge -> OathDeviceCache.getOathDeviceCache()
+                        .withDevice(token, OtpConfig.getOcraSuite(), oathDevice -> {
+                            final SecureString otp = oathDevice.getOcraOtp(pin, serverChallenge, null, null, null);
+                            return new OtpValue(otp, oathDevice.getLastOtpLifespan(), OtpConfig.getOTPLifetime());
+                        }));
+    }
 
-        return IdpCore.getInstance().getSecureContainerFactory().fromString(getOcraChallenge(values));
+    /**
+     * Checks root status of the device before OTP generation.
+     */
+    private static void checkRootStatus() {
+        if (IdpCore.getInstance().getRootDetector().getRootStatus() != RootDetector.RootStatus.NOT_ROOTED) { //NOPMD
+            // Handle root status according to app policy.
+        }
+    }
+
+    /**
+     * Gets values to be signed for transaction.
+     *
+     * @param transaction Transaction.
+     * @return Values to be signed.
+     * @throws IOException If document could not be read.
+     */
+    private static List<KeyValue> getValues(@NonNull final Transaction transaction) throws IOException {
+        final List<KeyValue> retValue = new ArrayList<>();
+        retValue.add(new KeyValue("amount", transaction.getAmount()));
+        retValue.add(new KeyValue("beneficiary", transaction.getBeneficiary()));
+        if (transaction.getDocument() != null) {
+            retValue.add(new KeyValue("document", getDocumentHash(transaction.getDocument())));
+        }
+        return retValue;
+    }
+
+    /**
+     * Creates cache key which identifies the challenge. Length prefixes keep different values from producing the
+     * same key, e.g. when a value contains the separator.
+     *
+     * @param values Values to be signed.
+     * @return Canonical key.
+     */
+    private static String getCacheKey(final List<KeyValue> values) {
+        final StringBuilder retValue = new StringBuilder();
+        for (final KeyValue keyValue : values) {
+            retValue.append(keyValue.getKey().length()).append(':').append(keyValue.getKey())
+                    .append(keyValue.getValue().length()).append(':').append(keyValue.getValue());
+        }
+        return retValue.toString();
+    }
+
+    /**
+     * Calculates SHA-256 hash of document.
+     *
+     * @param document Document to hash.
+     * @return Hex string of the hash.
+     * @throws IOException If document could not be read.
+     */
+    private static String getDocumentHash(final File document) throws IOException {
+        try {
+            final MessageDigest digest = DigestPool.obtain("SHA-256");
+            FileDigest.update(digest, document);
+            return bytesToHex(digest.digest());
+        } catch (final NoSuchAlgorithmException exception) {
+            throw new IOException(exception);
+        }
     }
 
     /**
      * Calculate OCRA Challenge from array of key value objects.
+     * Hex digits are written straight into a reusable buffer and handed to the secure container factory, so no
+     * {@code String} copy of the challenge is created.
      *
      * @param values List of key values object we want to use for ocra calculation.
-     * @return SecureString representation of challenge or null in case of error.
+     * @return SecureString representation of challenge or null in case of error, owned by the challenge cache.
      */
-    private static String getOcraChallenge(final List<KeyValue> values) {
-        String retValue = null;
-
-        // Use builder to append TLV
-        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-        // Go through all values, calculate and append TLV for each one of them.
-        for (int index = 0; index < values.size(); index++) {
-            // Convert keyvalue to UTF8 string
-            final byte[] keyValueUTF8 = values.get(index).getKeyValueUTF8();
-
-            // Build TLV.
-            buffer.write(0xDF);
-            buffer.write(0x71 + index);
-            buffer.write((byte) keyValueUTF8.length);
-            buffer.write(keyValueUTF8, 0, keyValueUTF8.length);
-        }
+    private static SecureString getOcraChallenge(final List<KeyValue> values) {
+        SecureString retValue = null;
+
+        final byte[] hash = sHashBuffer.get();
+        final byte[] hex = sHexBuffer.get();
 
-        // Try to calculate digest from final string and build retValue.
+        // Try to calculate digest of TLV encoded values and build retValue.
         try {
-            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            final byte[] hash = digest.digest(buffer.toByteArray());
+            final MessageDigest digest = DigestPool.obtain("SHA-256");
+
+            // Go through all values and stream TLV for each one of them into the digest. Tags DF71, DF72, ...
+            try (TlvEncoder encoder = TlvEncoder.obtain(digest)) {
+                for (int index = 0; index < values.size(); index++) {
+                    final KeyValue keyValue = values.get(index);
+                    encoder.writeKeyValue(TlvEncoder.CLASS_PRIVATE, 0x71 + index,
+                            keyValue.getKey(), keyValue.getValue());
+                }
+            }
+
+            final int length = digest.digest(hash, 0, hash.length);
 
             // Server challenge expect hex string not byte array.
-            retValue = bytesToHex(hash);
-        } catch (final NoSuchAlgorithmException exception) {
+            Hex.encode(hash, 0, length, hex, 0);
+            retValue = IdpCore.getInstance().getSecureContainerFactory().createSecureString(hex, true);
+        } catch (final NoSuchAlgorithmException | DigestException exception) {
             // Ignore. In worst case it will generate invalid ocra.
+        } finally {
+            Arrays.fill(hash, (byte) 0);
+            Arrays.fill(hex, (byte) 0);
         }
 
         return retValue;
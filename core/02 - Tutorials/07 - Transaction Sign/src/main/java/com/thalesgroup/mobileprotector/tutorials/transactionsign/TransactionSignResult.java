@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.tutorials.transactionsign;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.thalesgroup.mobileprotector.commonutils.helpers.OtpValue;
+
+/**
+ * Result of signing one transaction of a batch. Holds either the generated OTP or the error.
+ */
+public class TransactionSignResult {
+    private final Transaction mTransaction;
+    private final OtpValue mOtpValue;
+    private final Exception mError;
+
+    TransactionSignResult(@NonNull final Transaction transaction,
+                          @Nullable final OtpValue otpValue,
+                          @Nullable final Exception error) {
+        mTransaction = transaction;
+        mOtpValue = otpValue;
+        mError = error;
+    }
+
+    @NonNull
+    public Transaction getTransaction() {
+        return mTransaction;
+    }
+
+    /**
+     * Gets generated OTP.
+     *
+     * @return OTP, or {@code null} if signing failed.
+     */
+    @Nullable
+    public OtpValue getOtpValue() {
+        return mOtpValue;
+    }
+
+    /**
+     * Gets error which prevented signing, e.g. {@code IdpException} for wrong PIN or {@code IOException} for
+     * unreadable document.
+     *
+     * @return Error, or {@code null} if signing succeeded.
+     */
+    @Nullable
+    public Exception getError() {
+        return mError;
+    }
+
+    public boolean isSuccess() {
+        return mError == null;
+    }
+
+    /**
+     * Wipes the generated OTP.
+     */
+    public void wipe() {
+        if (mOtpValue != null) {
+            mOtpValue.wipe();
+        }
+    }
+}
@@ -29,6 +29,8 @@ package com.thalesgroup.mobileprotector.oobtutorials;
 
 import com.gemalto.idp.mobile.core.util.SecureString;
 import com.google.firebase.FirebaseApp;
+import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.gettingstarted.provisioning.ProvisioningLogic;
 import com.thalesgroup.mobileprotector.oobtutorials.oobregistration.OobRegistrationLogic;
 import com.thalesgroup.mobileprotector.oobtutorials.oobregistration.R;
 import com.thalesgroup.mobileprotector.oobtutorials.oobsetup.OobSetupLogic;
@@ -66,21 +68,16 @@ public class OobRegistrationActivity extends OobSetupActivity {
         // Show registration process.
         loadingBarShow(R.string.loading_registering);
 
-        // Register to OOB first. Only then continue with token.
-        OobRegistrationLogic.registerToMsm(userId, registrationCode, (success, result) -> {
-            // Hide registration process.
-            loadingBarHide();
-
-            // OOB registration was successful.
-            if (success) {
-                // Registration code is wiped in super class once it's not needed.
-                OobRegistrationActivity.super.onProvision(userId, registrationCode);
-            } else {
-                // Wipe code.
-                registrationCode.wipe();
-                displayMessageDialog(result);
-            }
-        });
+        // Register to OOB first. Only then continue with token. Both steps run as one chain, so UI is updated only
+        // once the whole flow is done.
+        OobRegistrationLogic.registerToMsm(userId, registrationCode)
+                .thenCompose(clientId -> {
+                    ExecutionService.getExecutionService()
+                            .runOnMainUiThread(() -> loadingBarShow(R.string.loading_provisioning));
+                    return ProvisioningLogic.provisionWithUserId(userId, registrationCode);
+                })
+                .onMainThread((result, error) -> onProvisionFinished(registrationCode,
+                        error == null ? result : error.getMessage()));
     }
 
     @Override
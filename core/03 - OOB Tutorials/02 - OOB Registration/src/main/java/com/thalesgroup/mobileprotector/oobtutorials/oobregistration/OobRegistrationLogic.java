@@ -43,6 +43,8 @@ import com.gemalto.idp.mobile.oob.registration.OobRegistrationRequest;
 import com.gemalto.idp.mobile.oob.registration.OobUnregistrationManager;
 import com.thalesgroup.mobileprotector.commonutils.callbacks.GenericHandler;
 import com.thalesgroup.mobileprotector.commonutils.helpers.AbstractBaseLogic;
+import com.thalesgroup.mobileprotector.commonutils.thread.OperationException;
+import com.thalesgroup.mobileprotector.commonutils.thread.TaskFuture;
 
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -88,6 +90,27 @@ public class OobRegistrationLogic extends AbstractBaseLogic {
     public static void registerToMsm(@NonNull final String userId,
                                      @Nullable final SecureString regCode,
                                      @NonNull final GenericHandler completionHandler) {
+        registerToMsm(userId, regCode).whenComplete((result, error) -> {
+            if (error == null) {
+                completionHandler.onFinished(true, null);
+            } else {
+                completionHandler.onFinished(false, error.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Processes registration to OOB - Mobile secure messenger server.
+     *
+     * @param userId  User ID received from Bank portal.
+     * @param regCode Registration code received from Bank portal. Code is not wiped, so it can be used for token
+     *                provisioning afterwards.
+     * @return Future completed with the registered client id, or failed with {@link OperationException}.
+     */
+    @NonNull
+    public static TaskFuture<String> registerToMsm(@NonNull final String userId,
+                                                   @Nullable final SecureString regCode) {
+        final TaskFuture<String> retValue = TaskFuture.create();
 
         // Prepare notification profiles
         List<OobNotificationProfile> profiles = null;
@@ -116,34 +139,57 @@ public class OobRegistrationLogic extends AbstractBaseLogic {
                 // Store FCM token
                 OobRegistrationLogic.storeRegisteredPushToken(fcmPushToken);
 
-                // Notify about failure in UI thread.
-                completionHandler.onFinished(true, null);
+                retValue.complete(clientId);
             } else {
-                // Notify about failure in UI thread.
-                completionHandler.onFinished(false, oobRegistrationResponse.getMessage());
+                retValue.fail(new OperationException(oobRegistrationResponse == null
+                        ? null
+                        : oobRegistrationResponse.getMessage()));
             }
         });
+
+        return retValue;
     }
 
     /**
      * @param completionHandler Handled on which UI part should be notified about result.
      */
     public static void unregisterFromMsm(@NonNull final GenericHandler completionHandler) {
+        unregisterFromMsm().whenComplete((result, error) -> {
+            if (error == null) {
+                completionHandler.onFinished(true, result);
+            } else {
+                completionHandler.onFinished(false, error.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Unregisters from OOB - Mobile secure messenger server.
+     *
+     * @return Future completed with the server message, or failed with {@link OperationException}.
+     */
+    @NonNull
+    public static TaskFuture<String> unregisterFromMsm() {
         final String clientId = OobRegistrationLogic.readClientId();
         if (clientId == null) {
             // OOB Was not registered.
-            completionHandler.onFinished(true, null);
-        } else {
-            final OobUnregistrationManager regManager = initializeOOBManager().getOobUnregistrationManager(clientId);
-            regManager.unregister(oobResponse -> {
-                final boolean success = oobResponse != null && oobResponse.isSucceeded();
-                if (success) {
-                    OobRegistrationLogic.storeClientId(null);
-                }
-                // Notify about result in UI thread.
-                completionHandler.onFinished(success, oobResponse == null ? null : oobResponse.getMessage());
-            });
+            return TaskFuture.completed(null);
         }
+
+        final TaskFuture<String> retValue = TaskFuture.create();
+        final OobUnregistrationManager regManager = initializeOOBManager().getOobUnregistrationManager(clientId);
+        regManager.unregister(oobResponse -> {
+            final boolean success = oobResponse != null && oobResponse.isSucceeded();
+            final String message = oobResponse == null ? null : oobResponse.getMessage();
+            if (success) {
+                OobRegistrationLogic.storeClientId(null);
+                retValue.complete(message);
+            } else {
+                retValue.fail(new OperationException(message));
+            }
+        });
+
+        return retValue;
     }
 
     /**
@@ -50,6 +50,9 @@ public class OobMessagingActivity extends OobRegistrationActivity implements Oob
 
     //region Declaration
 
+    // OOB processing produces bursts of UI updates. Batch them per display frame and keep only the last loading state.
+    private static final String KEY_LOADING = "oob.loading";
+
     private Button mBtnFetchMessage;
 
     //endregion
@@ -119,17 +122,17 @@ public class OobMessagingActivity extends OobRegistrationActivity implements Oob
 
     @Override
     public void onOobLoadingShow(final int resId) {
-        loadingBarShow(resId);
+        ExecutionService.getExecutionService().runOnNextFrame(KEY_LOADING, () -> loadingBarShow(resId));
     }
 
     @Override
     public void onOobLoadingHide() {
-        loadingBarHide();
+        ExecutionService.getExecutionService().runOnNextFrame(KEY_LOADING, this::loadingBarHide);
     }
 
     @Override
     public void onOobDisplayMessage(final String message) {
-        displayMessageDialog(message);
+        ExecutionService.getExecutionService().runOnNextFrame(() -> displayMessageDialog(message));
     }
 
     @Override
@@ -56,14 +56,13 @@ import com.gemalto.idp.mobile.oob.message.OobMessageManager;
 import com.gemalto.idp.mobile.oob.message.OobTransactionSigningRequest;
 import com.gemalto.idp.mobile.oob.message.OobTransactionSigningResponse;
 import com.gemalto.idp.mobile.oob.message.OobTransactionVerifyRequest;
-import com.gemalto.idp.mobile.otp.OtpModule;
-import com.gemalto.idp.mobile.otp.oath.OathDevice;
-import com.gemalto.idp.mobile.otp.oath.OathFactory;
-import com.gemalto.idp.mobile.otp.oath.OathService;
-import com.gemalto.idp.mobile.otp.oath.soft.SoftOathSettings;
 import com.gemalto.idp.mobile.otp.oath.soft.SoftOathToken;
 import com.thalesgroup.mobileprotector.commonutils.helpers.AbstractBaseLogic;
+import com.thalesgroup.mobileprotector.commonutils.helpers.OathDeviceCache;
 import com.thalesgroup.mobileprotector.commonutils.helpers.OtpValue;
+import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.commonutils.thread.Lane;
+import com.thalesgroup.mobileprotector.commonutils.thread.TaskFuture;
 import com.thalesgroup.mobileprotector.gettingstarted.otp.OtpConfig;
 import com.thalesgroup.mobileprotector.oobtutorials.oobregistration.OobRegistrationConfig;
 import com.thalesgroup.mobileprotector.oobtutorials.oobregistration.OobRegistrationLogic;
@@ -107,16 +106,27 @@ public class OobMessagingLogic extends AbstractBaseLogic {
             // Handle root status according to app policy.
         }
 
-        // Get oath factory and prepare oath settings.
-        final OathFactory oathFactory = OathService.create(OtpModule.create()).getFactory();
-        final SoftOathSettings softOathSettings = oathFactory.createSoftOathSettings();
-        softOathSettings.setOcraSuite(OtpConfig.getOcraSuite());
-
-        // Create device based on specific ocra suite.
-        final OathDevice oathDevice = oathFactory.createSoftOathDevice(token, softOathSettings);
-        final SecureString otp = oathDevice.getOcraOtp(pin, serverChallenge, null, null, null);
+        // Use cached device based on specific ocra suite. OTP and its lifespan are read under the device lock.
+        return OathDeviceCache.getOathDeviceCache().withDevice(token, OtpConfig.getOcraSuite(), oathDevice -> {
+            final SecureString otp = oathDevice.getOcraOtp(pin, serverChallenge, null, null, null);
+            return new OtpValue(otp, oathDevice.getLastOtpLifespan(), OtpConfig.getOTPLifetime());
+        });
+    }
 
-        return new OtpValue(otp, oathDevice.getLastOtpLifespan(), OtpConfig.getOTPLifetime());
+    /**
+     * Generates an OCRA OTP asynchronously on the crypto lane.
+     *
+     * @param token           Token to be used for OTP generation.
+     * @param serverChallenge Server challenge.
+     * @param pin             PIN.
+     * @return Future completed with generated OTP, or failed with {@code IdpException}.
+     */
+    @NonNull
+    public static TaskFuture<OtpValue> generateOtpAsync(@NonNull final SoftOathToken token,
+                                                        @NonNull final SecureString serverChallenge,
+                                                        @NonNull final AuthInput pin) {
+        return ExecutionService.getExecutionService()
+                .submit(Lane.CRYPTO, "oob.otp", () -> generateOtp(token, serverChallenge, pin));
     }
 
     private static String getStringByKeyName(final String aString) {
@@ -45,6 +45,7 @@ public class ResultFragment extends Fragment {
 
     TextView mLabelResult;
     ProgressBar mProgressLifespan;
+    private CountDownTimer mCountDownTimer;
 
     //endregion
 
@@ -73,18 +74,23 @@ public class ResultFragment extends Fragment {
      * Hide all elements and disable all animations
      */
     public void hide() {
+        cancelCountDown();
+
         mLabelResult.setVisibility(View.INVISIBLE);
         mProgressLifespan.setVisibility(View.INVISIBLE);
     }
 
     /**
-     * Show value with animated countdown.
+     * Show value with animated countdown. Replaces value which is already displayed, e.g. with the next TOTP.
      *
      * @param message  Value to display.
      * @param lifespan Lifespan in seconds.
      */
     public void show(@NonNull final String message,
                      @NonNull final Lifespan lifespan) {
+        // Countdown of previous value must not dim the new one.
+        cancelCountDown();
+
         mLabelResult.setVisibility(View.VISIBLE);
         mProgressLifespan.setVisibility(View.VISIBLE);
 
@@ -95,7 +101,7 @@ public class ResultFragment extends Fragment {
         mProgressLifespan.setMax(lifespan.getMax() * 10);
         mProgressLifespan.setProgress(lifespan.getCurrent() * 10);
 
-        new CountDownTimer(lifespan.getCurrent() * 1000, 100) {
+        mCountDownTimer = new CountDownTimer(lifespan.getCurrent() * 1000, 100) {
             @Override
             public void onTick(final long millisRemaining) {
                 mProgressLifespan.setProgress((int) millisRemaining / 100);
@@ -111,4 +117,15 @@ public class ResultFragment extends Fragment {
     }
 
     //endregion
+
+    //region Private Helpers
+
+    private void cancelCountDown() {
+        if (mCountDownTimer != null) {
+            mCountDownTimer.cancel();
+            mCountDownTimer = null;
+        }
+    }
+
+    //endregion
 }
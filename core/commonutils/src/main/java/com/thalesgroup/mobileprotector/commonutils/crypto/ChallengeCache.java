@@ -0,0 +1,296 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.crypto;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.gemalto.idp.mobile.core.IdpException;
+import com.gemalto.idp.mobile.core.util.SecureString;
+import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Application wide cache of recently computed challenges, e.g. so the same transaction signed again after wrong PIN
+ * does not compute its challenge again.
+ * <p>
+ * Cached challenges are lent to {@link #withChallenge(String, Computer, Operation)} instead of being copied, and are
+ * wiped once they are evicted and no operation uses them anymore. Challenge is evicted when it is older than
+ * {@link #MAX_AGE_MILLIS}, when the cache is full or on {@link #clear()}, which must be called whenever the token
+ * changes, i.e. on token removal or PIN change. Expired challenges are also wiped without further use of the cache.
+ * <p>
+ * Keys must encode all inputs of the challenge unambiguously, e.g. with length prefixes.
+ */
+public final class ChallengeCache {
+
+    /**
+     * Computes challenge on cache miss.
+     */
+    public interface Computer {
+        /**
+         * Computes the challenge. Called on the calling thread of
+         * {@link #withChallenge(String, Computer, Operation)}, without the cache lock.
+         *
+         * @return Challenge owned by the cache from now on, or {@code null} if it could not be computed.
+         */
+        @Nullable
+        SecureString compute();
+    }
+
+    /**
+     * Operation using the challenge.
+     *
+     * @param <T> Type of the result.
+     */
+    public interface Operation<T> {
+        /**
+         * Runs the operation. Called on the calling thread of {@link #withChallenge(String, Computer, Operation)}.
+         *
+         * @param challenge Challenge, or {@code null} if it could not be computed. Must not be wiped nor used once
+         *                  this method returns.
+         * @return Result of the operation.
+         * @throws IdpException If the operation failed.
+         */
+        T run(@Nullable SecureString challenge) throws IdpException;
+    }
+
+    /**
+     * Maximal number of cached challenges.
+     */
+    static final int MAX_SIZE = 8;
+
+    /**
+     * Time in milliseconds after which cached challenge is wiped.
+     */
+    static final long MAX_AGE_MILLIS = 30000;
+
+    private static final ChallengeCache sInstance = new ChallengeCache();
+
+    private static class CachedChallenge {
+        private final SecureString mValue;
+        private final long mCreated;
+        private int mLeases;
+        private boolean mEvicted;
+
+        CachedChallenge(@NonNull final SecureString value, final long created) {
+            mValue = value;
+            mCreated = created;
+        }
+    }
+
+    private final LinkedHashMap<String, CachedChallenge> mEntries =
+            new LinkedHashMap<String, CachedChallenge>(16, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, CachedChallenge> eldest) {
+                    if (size() > MAX_SIZE) {
+                        evict(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    private final Runnable mPurge = this::purge;
+    private boolean mPurgeScheduled;
+    private long mHitCount;
+    private long mMissCount;
+
+    private ChallengeCache() {
+        // Singleton.
+    }
+
+    /**
+     * Gets application wide challenge cache.
+     *
+     * @return Challenge cache.
+     */
+    @NonNull
+    public static ChallengeCache getChallengeCache() {
+        return sInstance;
+    }
+
+    /**
+     * Runs operation with the challenge for given key, computing the challenge if it's not cached yet or expired.
+     *
+     * @param key       Canonical key of the challenge inputs.
+     * @param computer  Computes the challenge on cache miss.
+     * @param operation Operation, e.g. OTP calculation.
+     * @param <T>       Type of the result.
+     * @return Result of the operation.
+     * @throws IdpException If the operation failed.
+     */
+    public <T> T withChallenge(@NonNull final String key,
+                               @NonNull final Computer computer,
+                               @NonNull final Operation<T> operation) throws IdpException {
+        CachedChallenge entry = lease(key);
+        if (entry == null) {
+            final SecureString challenge = computer.compute();
+            if (challenge == null) {
+                return operation.run(null);
+            }
+            entry = store(key, challenge);
+        }
+
+        try {
+            return operation.run(entry.mValue);
+        } finally {
+            release(entry);
+        }
+    }
+
+    /**
+     * Wipes and removes all challenges, e.g. after the token was removed or its PIN was changed. Challenges still
+     * used by an operation are wiped once the operation returns. Counters are kept.
+     */
+    public synchronized void clear() {
+        final Iterator<CachedChallenge> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            evict(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return Number of cached challenges.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return Number of lookups which found cached challenge.
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return Number of lookups which did not find cached challenge.
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    //region Private Helpers
+
+    /**
+     * Leases cached challenge which is not expired yet.
+     *
+     * @param key Canonical key of the challenge inputs.
+     * @return Leased entry, or {@code null} on cache miss.
+     */
+    @Nullable
+    private synchronized CachedChallenge lease(@NonNull final String key) {
+        final CachedChallenge retValue = mEntries.get(key);
+        if (retValue == null || isExpired(retValue, SystemClock.elapsedRealtime())) {
+            if (retValue != null) {
+                evict(mEntries.remove(key));
+            }
+            mMissCount++;
+            return null;
+        }
+
+        mHitCount++;
+        retValue.mLeases++;
+        return retValue;
+    }
+
+    /**
+     * Stores computed challenge, leased to the caller.
+     *
+     * @param key       Canonical key of the challenge inputs.
+     * @param challenge Challenge.
+     * @return Leased entry.
+     */
+    @NonNull
+    private synchronized CachedChallenge store(@NonNull final String key, @NonNull final SecureString challenge) {
+        final CachedChallenge retValue = new CachedChallenge(challenge, SystemClock.elapsedRealtime());
+        retValue.mLeases++;
+        final CachedChallenge previous = mEntries.put(key, retValue);
+        if (previous != null) {
+            evict(previous);
+        }
+
+        if (!mPurgeScheduled) {
+            mPurgeScheduled = true;
+            ExecutionService.getExecutionService().runOnMainUiThread(mPurge, MAX_AGE_MILLIS);
+        }
+        return retValue;
+    }
+
+    private synchronized void release(@NonNull final CachedChallenge entry) {
+        entry.mLeases--;
+        if (entry.mEvicted && entry.mLeases == 0) {
+            entry.mValue.wipe();
+        }
+    }
+
+    /**
+     * Marks entry removed from the cache as evicted and wipes it, unless an operation still uses it.
+     *
+     * @param entry Cached challenge.
+     */
+    private void evict(@NonNull final CachedChallenge entry) {
+        entry.mEvicted = true;
+        if (entry.mLeases == 0) {
+            entry.mValue.wipe();
+        }
+    }
+
+    /**
+     * Evicts expired challenges and schedules next purge while any challenge is cached.
+     */
+    private synchronized void purge() {
+        final long now = SystemClock.elapsedRealtime();
+        long oldest = now;
+        final Iterator<CachedChallenge> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            final CachedChallenge entry = iterator.next();
+            if (isExpired(entry, now)) {
+                evict(entry);
+                iterator.remove();
+            } else {
+                oldest = Math.min(oldest, entry.mCreated);
+            }
+        }
+
+        mPurgeScheduled = !mEntries.isEmpty();
+        if (mPurgeScheduled) {
+            ExecutionService.getExecutionService().runOnMainUiThread(mPurge, oldest + MAX_AGE_MILLIS - now);
+        }
+    }
+
+    private static boolean isExpired(@NonNull final CachedChallenge entry, final long now) {
+        return now - entry.mCreated >= MAX_AGE_MILLIS;
+    }
+
+    //endregion
+}
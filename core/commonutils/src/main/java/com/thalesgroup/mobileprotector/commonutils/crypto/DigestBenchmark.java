@@ -0,0 +1,258 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.crypto;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares digest throughput of all installed security providers, e.g. platform Conscrypt and BouncyCastle.
+ * <p>
+ * Each provider hashes challenge sized input (many small updates) and document sized input (few large updates) for a
+ * short time after warm up. Provider with the best combined score, relative to the fastest provider of each size, is
+ * then used by {@link DigestPool}, if it beats the default provider by {@link #SWITCH_MARGIN}. Providers which refuse
+ * the algorithm are skipped. Selection can be cached, so the benchmark runs once per system build.
+ */
+public final class DigestBenchmark {
+    static final int CHALLENGE_SIZE = 64;
+    static final int DOCUMENT_SIZE = 256 * 1024;
+
+    /**
+     * Factor by which provider has to beat the score of the default provider to replace it. Smaller differences are
+     * within measurement noise.
+     */
+    static final double SWITCH_MARGIN = 1.2;
+
+    private static final String PREFERENCES = "digest_benchmark";
+    private static final String KEY_BUILD_SUFFIX = ".build";
+
+    /**
+     * Throughput of one provider.
+     */
+    public static final class Result {
+        private final Provider mProvider;
+        private final double mChallengeThroughput;
+        private final double mDocumentThroughput;
+
+        private Result(@NonNull final Provider provider,
+                       final double challengeThroughput,
+                       final double documentThroughput) {
+            mProvider = provider;
+            mChallengeThroughput = challengeThroughput;
+            mDocumentThroughput = documentThroughput;
+        }
+
+        @NonNull
+        public Provider getProvider() {
+            return mProvider;
+        }
+
+        /**
+         * @return Throughput in MB/s for challenge sized input.
+         */
+        public double getChallengeThroughput() {
+            return mChallengeThroughput;
+        }
+
+        /**
+         * @return Throughput in MB/s for document sized input.
+         */
+        public double getDocumentThroughput() {
+            return mDocumentThroughput;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: challenge %.1f MB/s, document %.1f MB/s",
+                    mProvider.getName(), mChallengeThroughput, mDocumentThroughput);
+        }
+    }
+
+    private DigestBenchmark() {
+        // Static helper.
+    }
+
+    /**
+     * Measures all providers of given algorithm.
+     *
+     * @param algorithm    Digest algorithm, e.g. {@code "SHA-256"}.
+     * @param budgetMillis Measuring time per provider and input size. Warm up takes the same time.
+     * @return Results, one per usable provider.
+     */
+    @NonNull
+    public static List<Result> run(@NonNull final String algorithm, final long budgetMillis) {
+        final List<Result> retValue = new ArrayList<>();
+        final Provider[] providers = Security.getProviders("MessageDigest." + algorithm);
+        if (providers == null) {
+            return retValue;
+        }
+
+        final byte[] challenge = new byte[CHALLENGE_SIZE];
+        final byte[] document = new byte[DOCUMENT_SIZE];
+        for (final Provider provider : providers) {
+            final MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance(algorithm, provider);
+            } catch (final GeneralSecurityException | RuntimeException exception) {
+                // Provider advertises the algorithm, but does not allow its use, e.g. deprecated BouncyCastle.
+                continue;
+            }
+
+            measure(digest, challenge, budgetMillis);
+            measure(digest, document, budgetMillis);
+            retValue.add(new Result(provider,
+                    measure(digest, challenge, budgetMillis),
+                    measure(digest, document, budgetMillis)));
+        }
+        return retValue;
+    }
+
+    /**
+     * Measures all providers of given algorithm and sets the fastest one to {@link DigestPool}. Default provider, i.e.
+     * the first usable one in preference order, is kept unless other provider beats it by {@link #SWITCH_MARGIN}.
+     * Meant to run once at startup, on a background thread.
+     *
+     * @param algorithm    Digest algorithm, e.g. {@code "SHA-256"}.
+     * @param budgetMillis Measuring time per provider and input size.
+     * @return Selected provider, or {@code null} if none is usable.
+     */
+    @Nullable
+    public static Provider selectFastest(@NonNull final String algorithm, final long budgetMillis) {
+        final List<Result> results = run(algorithm, budgetMillis);
+        if (results.isEmpty()) {
+            return null;
+        }
+
+        double bestChallenge = 0;
+        double bestDocument = 0;
+        for (final Result result : results) {
+            bestChallenge = Math.max(bestChallenge, result.mChallengeThroughput);
+            bestDocument = Math.max(bestDocument, result.mDocumentThroughput);
+        }
+
+        Provider retValue = null;
+        double bestScore = -1;
+        double defaultScore = -1;
+        for (final Result result : results) {
+            final double score = result.mChallengeThroughput / bestChallenge
+                    + result.mDocumentThroughput / bestDocument;
+            if (defaultScore < 0) {
+                defaultScore = score;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                retValue = result.mProvider;
+            }
+        }
+
+        if (bestScore < defaultScore * SWITCH_MARGIN) {
+            retValue = results.get(0).mProvider;
+        }
+        DigestPool.setProvider(algorithm, retValue);
+        return retValue;
+    }
+
+    /**
+     * Sets provider selected by earlier {@link #selectFastest(String, long)} to {@link DigestPool}, or measures the
+     * providers if there is no selection made on the current system build yet. Only the first start after
+     * installation or system update therefore pays for the benchmark.
+     *
+     * @param context      Android context.
+     * @param algorithm    Digest algorithm, e.g. {@code "SHA-256"}.
+     * @param budgetMillis Measuring time per provider and input size.
+     * @return Selected provider, or {@code null} if none is usable.
+     */
+    @Nullable
+    public static Provider selectCached(@NonNull final Context context,
+                                        @NonNull final String algorithm,
+                                        final long budgetMillis) {
+        final SharedPreferences preferences = context.getApplicationContext()
+                .getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+
+        // System update may bring different providers, or make them faster.
+        if (Build.FINGERPRINT.equals(preferences.getString(algorithm + KEY_BUILD_SUFFIX, null))) {
+            final Provider provider = Security.getProvider(preferences.getString(algorithm, ""));
+            if (provider != null) {
+                DigestPool.setProvider(algorithm, provider);
+                return provider;
+            }
+        }
+
+        final Provider retValue = selectFastest(algorithm, budgetMillis);
+        if (retValue != null) {
+            preferences.edit()
+                    .putString(algorithm, retValue.getName())
+                    .putString(algorithm + KEY_BUILD_SUFFIX, Build.FINGERPRINT)
+                    .apply();
+        }
+        return retValue;
+    }
+
+    /**
+     * Hashes given input repeatedly for given time.
+     *
+     * @return Throughput in MB/s.
+     */
+    private static double measure(@NonNull final MessageDigest digest,
+                                  @NonNull final byte[] input,
+                                  final long budgetMillis) {
+        final byte[] output = new byte[digest.getDigestLength()];
+        final long budgetNanos = budgetMillis * 1000000L;
+        // Clock is checked once per batch, it costs more than hashing of small input.
+        final int batchSize = Math.max(1, 4096 / input.length);
+        final long start = System.nanoTime();
+        long elapsed;
+        long bytes = 0;
+        do {
+            for (int index = 0; index < batchSize; index++) {
+                digest.update(input);
+                try {
+                    digest.digest(output, 0, output.length);
+                } catch (final GeneralSecurityException exception) {
+                    throw new IllegalStateException(exception);
+                }
+                bytes += input.length;
+            }
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < budgetNanos);
+
+        return bytes / (elapsed / 1e9) / 1e6;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.crypto;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-thread pool of {@code MessageDigest} instances.
+ * <p>
+ * {@code MessageDigest.getInstance} walks the provider list and creates new instance on every call. Pool keeps one
+ * instance per algorithm and thread instead, so repeated hashing only resets existing instance. Instances are created
+ * by provider chosen with {@link #setProvider(String, Provider)}, e.g. by {@link DigestBenchmark}, or by the default
+ * provider.
+ * <p>
+ * Obtained digest belongs to the calling thread until the next {@link #obtain(String)} of the same algorithm on that
+ * thread, which resets it. Digest must therefore not be kept, nor passed to other threads.
+ */
+public final class DigestPool {
+    private static final Map<String, Provider> sProviders = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Map<String, MessageDigest>> sDigests =
+            new ThreadLocal<Map<String, MessageDigest>>() {
+                @Override
+                protected Map<String, MessageDigest> initialValue() {
+                    return new HashMap<>();
+                }
+            };
+
+    private DigestPool() {
+        // Static helper.
+    }
+
+    /**
+     * Gets digest of calling thread.
+     *
+     * @param algorithm Digest algorithm, e.g. {@code "SHA-256"}.
+     * @return Reset digest.
+     * @throws NoSuchAlgorithmException If algorithm is not available.
+     */
+    @NonNull
+    public static MessageDigest obtain(@NonNull final String algorithm) throws NoSuchAlgorithmException {
+        final Map<String, MessageDigest> digests = sDigests.get();
+        final Provider provider = sProviders.get(algorithm);
+
+        MessageDigest retValue = digests.get(algorithm);
+        if (retValue == null || provider != null && retValue.getProvider() != provider) {
+            retValue = provider != null
+                    ? MessageDigest.getInstance(algorithm, provider)
+                    : MessageDigest.getInstance(algorithm);
+            digests.put(algorithm, retValue);
+        } else {
+            retValue.reset();
+        }
+        return retValue;
+    }
+
+    /**
+     * Sets provider of newly created digests. Digests already pooled by other threads are replaced on their next
+     * {@link #obtain(String)}.
+     *
+     * @param algorithm Digest algorithm, e.g. {@code "SHA-256"}.
+     * @param provider  Provider, or {@code null} for the default one.
+     */
+    public static void setProvider(@NonNull final String algorithm, @Nullable final Provider provider) {
+        if (provider == null) {
+            sProviders.remove(algorithm);
+        } else {
+            sProviders.put(algorithm, provider);
+        }
+    }
+
+    /**
+     * Gets provider set for given algorithm.
+     *
+     * @param algorithm Digest algorithm.
+     * @return Provider, or {@code null} if the default one is used.
+     */
+    @Nullable
+    public static Provider getProvider(@NonNull final String algorithm) {
+        return sProviders.get(algorithm);
+    }
+}
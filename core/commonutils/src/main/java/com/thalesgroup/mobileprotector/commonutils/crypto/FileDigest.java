@@ -0,0 +1,74 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.crypto;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+/**
+ * Hashes files of any size with constant memory.
+ * <p>
+ * File is mapped into memory window by window and each window is passed to the digest directly, so the content is
+ * never copied to the Java heap as a whole and is read at the speed of the page cache. File must not be truncated
+ * while it's being hashed, access to truncated mapped region crashes the process.
+ */
+public final class FileDigest {
+    static final long WINDOW_SIZE = 8 * 1024 * 1024;
+
+    private FileDigest() {
+        // Static helper.
+    }
+
+    /**
+     * Updates digest with whole content of given file.
+     *
+     * @param digest Digest to update.
+     * @param file   File to hash.
+     * @throws IOException If file could not be read.
+     */
+    public static void update(@NonNull final MessageDigest digest, @NonNull final File file) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(file);
+             FileChannel channel = inputStream.getChannel()) {
+            final long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                // Windows bound used address space, mappings are released by garbage collector.
+                final long length = Math.min(WINDOW_SIZE, size - position);
+                final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                digest.update(window);
+                position += length;
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.crypto;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Hex encoding into caller provided buffers.
+ * <p>
+ * Digits are written as ASCII bytes, so the result can be passed to secure container factory directly, without
+ * {@code String} or {@code char[]} copies left on the heap.
+ */
+public final class Hex {
+    private static final byte[] DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    private Hex() {
+        // Static helper.
+    }
+
+    /**
+     * Encodes bytes as upper case hex digits.
+     *
+     * @param input        Bytes to encode.
+     * @param offset       Offset of the first byte to encode.
+     * @param length       Number of bytes to encode.
+     * @param output       Buffer receiving {@code 2 * length} ASCII digits.
+     * @param outputOffset Offset of the first digit in output.
+     */
+    public static void encode(@NonNull final byte[] input,
+                              final int offset,
+                              final int length,
+                              @NonNull final byte[] output,
+                              final int outputOffset) {
+        if (output.length - outputOffset < length * 2) {
+            throw new IllegalArgumentException("Output buffer too small");
+        }
+
+        int position = outputOffset;
+        for (int index = offset; index < offset + length; index++) {
+            final int value = input[index] & 0xFF;
+            output[position++] = DIGITS[value >>> 4];
+            output[position++] = DIGITS[value & 0x0F];
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.crypto;
+
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Encrypts data at rest with AES/GCM key kept in Android Keystore.
+ * <p>
+ * Key is generated on first use and never leaves the Keystore, so data stored in application files can not be read
+ * from a copy of the files, e.g. from a backup. Output contains random IV followed by the ciphertext and tag.
+ * Associated data, e.g. record key, binds the ciphertext to its record, so it can not be moved to another one.
+ */
+public final class KeystoreCipher {
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int KEY_SIZE = 256;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+
+    private final String mAlias;
+    private SecretKey mKey;
+
+    /**
+     * Creates a new {@code KeystoreCipher}.
+     *
+     * @param alias Alias of the Keystore key. Key is generated if it does not exist yet.
+     */
+    public KeystoreCipher(@NonNull final String alias) {
+        mAlias = alias;
+    }
+
+    /**
+     * Encrypts given data.
+     *
+     * @param plaintext      Data to encrypt. Kept intact.
+     * @param associatedData Data authenticated along, or {@code null}.
+     * @return IV followed by the ciphertext.
+     * @throws GeneralSecurityException If Keystore is not available or the key could not be generated.
+     */
+    @NonNull
+    public byte[] encrypt(@NonNull final byte[] plaintext,
+                          @Nullable final byte[] associatedData) throws GeneralSecurityException {
+        final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        // Keystore generates random IV itself, caller provided IV is rejected.
+        cipher.init(Cipher.ENCRYPT_MODE, getKey());
+        if (associatedData != null) {
+            cipher.updateAAD(associatedData);
+        }
+
+        final byte[] iv = cipher.getIV();
+        final byte[] retValue = new byte[IV_LENGTH + cipher.getOutputSize(plaintext.length)];
+        System.arraycopy(iv, 0, retValue, 0, IV_LENGTH);
+        final int length = cipher.doFinal(plaintext, 0, plaintext.length, retValue, IV_LENGTH);
+        return IV_LENGTH + length == retValue.length ? retValue : Arrays.copyOf(retValue, IV_LENGTH + length);
+    }
+
+    /**
+     * Decrypts data created by {@link #encrypt(byte[], byte[])}.
+     *
+     * @param ciphertext     IV followed by the ciphertext.
+     * @param associatedData Data authenticated along, or {@code null}. Must be the same as used for encryption.
+     * @return Decrypted data. Caller should wipe it once used.
+     * @throws GeneralSecurityException If data were modified, encrypted with another key, e.g. one removed with
+     *                                  the application data, or Keystore is not available.
+     */
+    @NonNull
+    public byte[] decrypt(@NonNull final byte[] ciphertext,
+                          @Nullable final byte[] associatedData) throws GeneralSecurityException {
+        if (ciphertext.length < IV_LENGTH + TAG_LENGTH / 8) {
+            throw new GeneralSecurityException("Ciphertext too short");
+        }
+
+        final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, getKey(), new GCMParameterSpec(TAG_LENGTH, ciphertext, 0, IV_LENGTH));
+        if (associatedData != null) {
+            cipher.updateAAD(associatedData);
+        }
+        return cipher.doFinal(ciphertext, IV_LENGTH, ciphertext.length - IV_LENGTH);
+    }
+
+    //region Private Helpers
+
+    @NonNull
+    private synchronized SecretKey getKey() throws GeneralSecurityException {
+        if (mKey != null) {
+            return mKey;
+        }
+
+        final KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        try {
+            keyStore.load(null);
+        } catch (final IOException exception) {
+            throw new KeyStoreException(exception);
+        }
+
+        final KeyStore.Entry entry = keyStore.getEntry(mAlias, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            mKey = ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+        } else {
+            final KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+            generator.init(new KeyGenParameterSpec.Builder(mAlias,
+                    KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                    .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                    .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                    .setKeySize(KEY_SIZE)
+                    .build());
+            mKey = generator.generateKey();
+        }
+        return mKey;
+    }
+
+    //endregion
+}
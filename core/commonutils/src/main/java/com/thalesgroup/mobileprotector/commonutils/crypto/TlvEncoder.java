@@ -0,0 +1,255 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.crypto;
+
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * BER-TLV encoder feeding encoded bytes directly into a {@code MessageDigest}.
+ * <p>
+ * Encoded data is never materialised as a whole. Bytes are collected in small pooled buffer which is passed to the
+ * digest whenever it fills up, so encoding any number of fields of any length allocates nothing. Tags use high tag
+ * number form when needed and lengths use multi-byte definite form, so there is no limit on the field count or
+ * value length. Text values are encoded as UTF-8 on the fly.
+ * <p>
+ * Encoder is obtained by {@link #obtain(MessageDigest)} and has to be closed, which passes remaining bytes to the
+ * digest, wipes the buffer and returns the encoder to the pool. Encoder is not thread safe.
+ */
+public final class TlvEncoder implements Closeable {
+    public static final int CLASS_UNIVERSAL = 0x00;
+    public static final int CLASS_APPLICATION = 0x40;
+    public static final int CLASS_CONTEXT = 0x80;
+    public static final int CLASS_PRIVATE = 0xC0;
+
+    private static final int BUFFER_SIZE = 256;
+    private static final int POOL_SIZE = 4;
+    private static final ArrayDeque<TlvEncoder> sPool = new ArrayDeque<>();
+
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private MessageDigest mDigest;
+
+    private TlvEncoder() {
+        // Obtained from the pool.
+    }
+
+    /**
+     * Takes encoder from the pool.
+     *
+     * @param digest Digest receiving encoded bytes.
+     * @return Encoder, to be closed once all fields are written.
+     */
+    @NonNull
+    public static TlvEncoder obtain(@NonNull final MessageDigest digest) {
+        TlvEncoder retValue;
+        synchronized (sPool) {
+            retValue = sPool.pollFirst();
+        }
+        if (retValue == null) {
+            retValue = new TlvEncoder();
+        }
+        retValue.mDigest = digest;
+        return retValue;
+    }
+
+    /**
+     * Writes primitive field with binary value.
+     *
+     * @param tagClass  Tag class, e.g. {@link #CLASS_PRIVATE}.
+     * @param tagNumber Tag number.
+     * @param value     Value.
+     * @return This encoder for chaining.
+     */
+    @NonNull
+    public TlvEncoder write(final int tagClass, final int tagNumber, @NonNull final byte[] value) {
+        writeTag(tagClass, tagNumber);
+        writeLength(value.length);
+
+        int offset = 0;
+        while (offset < value.length) {
+            if (!mBuffer.hasRemaining()) {
+                flush();
+            }
+            final int count = Math.min(mBuffer.remaining(), value.length - offset);
+            mBuffer.put(value, offset, count);
+            offset += count;
+        }
+        return this;
+    }
+
+    /**
+     * Writes primitive field with UTF-8 encoded {@code key:value} text.
+     *
+     * @param tagClass  Tag class, e.g. {@link #CLASS_PRIVATE}.
+     * @param tagNumber Tag number.
+     * @param key       Key.
+     * @param value     Value.
+     * @return This encoder for chaining.
+     */
+    @NonNull
+    public TlvEncoder writeKeyValue(final int tagClass,
+                                    final int tagNumber,
+                                    @NonNull final CharSequence key,
+                                    @NonNull final CharSequence value) {
+        writeTag(tagClass, tagNumber);
+        writeLength(utf8Length(key) + 1 + utf8Length(value));
+        writeUtf8(key);
+        writeByte(':');
+        writeUtf8(value);
+        return this;
+    }
+
+    /**
+     * Passes remaining bytes to the digest, wipes the buffer and returns the encoder to the pool. Encoder must not be
+     * used afterwards.
+     */
+    @Override
+    public void close() {
+        flush();
+        Arrays.fill(mBuffer.array(), (byte) 0);
+        mDigest = null;
+
+        synchronized (sPool) {
+            if (sPool.size() < POOL_SIZE) {
+                sPool.addFirst(this);
+            }
+        }
+    }
+
+    //region Private Helpers
+
+    private void writeTag(final int tagClass, final int tagNumber) {
+        if (tagNumber < 0) {
+            throw new IllegalArgumentException("Negative tag number " + tagNumber);
+        }
+
+        if (tagNumber < 0x1F) {
+            writeByte(tagClass | tagNumber);
+            return;
+        }
+
+        // High tag number form: number in base 128, all bytes but the last one with highest bit set.
+        writeByte(tagClass | 0x1F);
+        int shift = 28;
+        while (shift > 0 && (tagNumber >>> shift) == 0) {
+            shift -= 7;
+        }
+        for (; shift > 0; shift -= 7) {
+            writeByte(0x80 | ((tagNumber >>> shift) & 0x7F));
+        }
+        writeByte(tagNumber & 0x7F);
+    }
+
+    private void writeLength(final long length) {
+        if (length < 0x80) {
+            writeByte((int) length);
+            return;
+        }
+
+        // Long form: number of length bytes followed by the length, big endian.
+        int byteCount = 1;
+        while (byteCount < 8 && (length >>> (byteCount * 8)) != 0) {
+            byteCount++;
+        }
+        writeByte(0x80 | byteCount);
+        for (int index = byteCount - 1; index >= 0; index--) {
+            writeByte((int) (length >>> (index * 8)));
+        }
+    }
+
+    /**
+     * Same encoding as {@code String.getBytes(UTF_8)}, including replacement of unpaired surrogates by {@code '?'}.
+     */
+    private void writeUtf8(@NonNull final CharSequence text) {
+        final int length = text.length();
+        for (int index = 0; index < length; index++) {
+            final char character = text.charAt(index);
+            if (character < 0x80) {
+                writeByte(character);
+            } else if (character < 0x800) {
+                writeByte(0xC0 | (character >> 6));
+                writeByte(0x80 | (character & 0x3F));
+            } else if (!Character.isSurrogate(character)) {
+                writeByte(0xE0 | (character >> 12));
+                writeByte(0x80 | ((character >> 6) & 0x3F));
+                writeByte(0x80 | (character & 0x3F));
+            } else if (Character.isHighSurrogate(character) && index + 1 < length
+                    && Character.isLowSurrogate(text.charAt(index + 1))) {
+                final int codePoint = Character.toCodePoint(character, text.charAt(++index));
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            } else {
+                writeByte('?');
+            }
+        }
+    }
+
+    private static long utf8Length(@NonNull final CharSequence text) {
+        final int length = text.length();
+        long retValue = 0;
+        for (int index = 0; index < length; index++) {
+            final char character = text.charAt(index);
+            if (character < 0x80) {
+                retValue += 1;
+            } else if (character < 0x800) {
+                retValue += 2;
+            } else if (!Character.isSurrogate(character)) {
+                retValue += 3;
+            } else if (Character.isHighSurrogate(character) && index + 1 < length
+                    && Character.isLowSurrogate(text.charAt(index + 1))) {
+                retValue += 4;
+                index++;
+            } else {
+                retValue += 1;
+            }
+        }
+        return retValue;
+    }
+
+    private void writeByte(final int value) {
+        if (!mBuffer.hasRemaining()) {
+            flush();
+        }
+        mBuffer.put((byte) value);
+    }
+
+    private void flush() {
+        mBuffer.flip();
+        mDigest.update(mBuffer);
+        mBuffer.clear();
+    }
+
+    //endregion
+}
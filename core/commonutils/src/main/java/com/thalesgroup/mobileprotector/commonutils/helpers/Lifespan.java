@@ -27,13 +27,17 @@
 
 package com.thalesgroup.mobileprotector.commonutils.helpers;
 
+import android.os.SystemClock;
+
 public class Lifespan {
     private final int mCurrent;
     private final int mMax;
+    private final long mCreated;
 
     Lifespan(final int current, final int max) {
         mCurrent = current;
         mMax = max;
+        mCreated = SystemClock.elapsedRealtime();
     }
 
     public int getCurrent() {
@@ -43,4 +47,22 @@ public class Lifespan {
     public int getMax() {
         return mMax;
     }
+
+    /**
+     * Gets how long the value stays valid from now, e.g. to stop retrying a request which sends it.
+     *
+     * @return Remaining lifespan in milliseconds, 0 once expired.
+     */
+    public long getRemainingMillis() {
+        return Math.max(0, mCurrent * 1000L - getAgeMillis());
+    }
+
+    /**
+     * Gets time elapsed since the value was generated.
+     *
+     * @return Age in milliseconds.
+     */
+    public long getAgeMillis() {
+        return SystemClock.elapsedRealtime() - mCreated;
+    }
 }
@@ -0,0 +1,204 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.helpers;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.gemalto.idp.mobile.core.IdpException;
+import com.gemalto.idp.mobile.core.util.SecureString;
+import com.gemalto.idp.mobile.otp.OtpModule;
+import com.gemalto.idp.mobile.otp.oath.OathDevice;
+import com.gemalto.idp.mobile.otp.oath.OathFactory;
+import com.gemalto.idp.mobile.otp.oath.OathService;
+import com.gemalto.idp.mobile.otp.oath.soft.SoftOathSettings;
+import com.gemalto.idp.mobile.otp.oath.soft.SoftOathToken;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Application wide cache of prepared OATH devices.
+ * <p>
+ * Creating the OATH service, settings and device on every OTP is costly compared to the OTP calculation itself.
+ * Devices are kept per token name and OCRA suite, so repeated OTP generation only pays for the calculation. Cached
+ * device must be invalidated whenever the token it was created for changes, i.e. on token removal or PIN change.
+ * <p>
+ * Device keeps state of its last calculation, e.g. lifespan of the last OTP. Cached device is therefore only
+ * available through {@link #withDevice(SoftOathToken, SecureString, Operation)}, which holds the lock of the device,
+ * so OTP calculation and reading of its state by one thread never interleave with another thread.
+ */
+public final class OathDeviceCache {
+
+    /**
+     * Operation using cached device.
+     *
+     * @param <T> Type of the result.
+     */
+    public interface Operation<T> {
+        /**
+         * Runs the operation. Called on the calling thread of
+         * {@link #withDevice(SoftOathToken, SecureString, Operation)} with the device locked.
+         *
+         * @param device OATH device. Must not be used once this method returns.
+         * @return Result of the operation.
+         * @throws IdpException If the operation failed.
+         */
+        T run(@NonNull OathDevice device) throws IdpException;
+    }
+
+    private static final OathDeviceCache sInstance = new OathDeviceCache();
+
+    private final Map<String, OathDevice> mDevices = new HashMap<>();
+    private long mHitCount;
+    private long mMissCount;
+
+    private OathDeviceCache() {
+        // Singleton.
+    }
+
+    /**
+     * Gets application wide device cache.
+     *
+     * @return Device cache.
+     */
+    @NonNull
+    public static OathDeviceCache getOathDeviceCache() {
+        return sInstance;
+    }
+
+    /**
+     * Runs operation with soft OATH device for token, creating the device if it's not cached yet. Operations on the
+     * same device are serialized, operations on different devices run in parallel.
+     *
+     * @param token     Token to be used for OTP generation.
+     * @param ocraSuite OCRA suite of the device.
+     * @param operation Operation, e.g. OTP calculation followed by reading of the OTP lifespan.
+     * @param <T>       Type of the result.
+     * @return Result of the operation.
+     * @throws IdpException If device could not be created or the operation failed.
+     */
+    public <T> T withDevice(@NonNull final SoftOathToken token,
+                            @Nullable final SecureString ocraSuite,
+                            @NonNull final Operation<T> operation) throws IdpException {
+        final OathDevice device = getDevice(token, ocraSuite);
+        synchronized (device) {
+            return operation.run(device);
+        }
+    }
+
+    /**
+     * Gets soft OATH device for token, creating it if it's not cached yet.
+     *
+     * @param token     Token to be used for OTP generation.
+     * @param ocraSuite OCRA suite of the device.
+     * @return OATH device.
+     * @throws IdpException If device could not be created.
+     */
+    @NonNull
+    private synchronized OathDevice getDevice(@NonNull final SoftOathToken token,
+                                             @Nullable final SecureString ocraSuite) throws IdpException {
+        final String key = getKey(token.getName(), ocraSuite);
+        OathDevice retValue = mDevices.get(key);
+        if (retValue != null) {
+            mHitCount++;
+            return retValue;
+        }
+
+        mMissCount++;
+        final OathFactory oathFactory = OathService.create(OtpModule.create()).getFactory();
+        final SoftOathSettings softOathSettings = oathFactory.createSoftOathSettings();
+        if (ocraSuite != null) {
+            softOathSettings.setOcraSuite(ocraSuite);
+        }
+
+        retValue = oathFactory.createSoftOathDevice(token, softOathSettings);
+        mDevices.put(key, retValue);
+        return retValue;
+    }
+
+    /**
+     * Removes all devices created for token, e.g. after the token was removed or its PIN was changed.
+     *
+     * @param tokenName Name of the token.
+     */
+    public synchronized void invalidate(@NonNull final String tokenName) {
+        final String prefix = getKey(tokenName, null);
+        final Iterator<String> iterator = mDevices.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all cached devices.
+     */
+    public synchronized void clear() {
+        mDevices.clear();
+    }
+
+    /**
+     * Gets number of OTP operations which found the device already cached.
+     *
+     * @return Number of cache hits.
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Gets number of OTP operations which had to create the device, i.e. first use of a token or use after
+     * invalidation.
+     *
+     * @return Number of cache misses.
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Creates cache key. Token name is length prefixed, so invalidation of one token never matches another one.
+     *
+     * @param tokenName Name of the token.
+     * @param ocraSuite OCRA suite of the device.
+     * @return Key.
+     */
+    private static String getKey(@NonNull final String tokenName, @Nullable final SecureString ocraSuite) {
+        final StringBuilder retValue = new StringBuilder();
+        retValue.append(tokenName.length()).append(':').append(tokenName);
+        if (ocraSuite != null) {
+            for (int index = 0; index < ocraSuite.length(); index++) {
+                retValue.append(ocraSuite.charAt(index));
+            }
+        }
+        return retValue.toString();
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+
+/**
+ * {@link HttpTransport} decorator which stops sending requests to an endpoint which keeps failing.
+ * <p>
+ * After given number of consecutive failures the circuit opens and every request fails immediately with
+ * {@link CircuitOpenException}, instead of waiting for connect timeout. Once the open period elapses, single probe
+ * request is let through (half-open state). Its success closes the circuit, its failure opens it again. Network
+ * errors and 5xx responses count as failures.
+ * <p>
+ * Result of a request counts only if the state did not change since the request was sent. E.g. slow request sent
+ * while the circuit was closed neither closes the circuit which opened meanwhile, nor opens it again after the probe
+ * closed it.
+ */
+public class CircuitBreakerTransport implements HttpTransport {
+
+    /**
+     * Circuit state.
+     */
+    public enum State {
+        /**
+         * Requests are sent.
+         */
+        CLOSED,
+
+        /**
+         * Requests fail fast.
+         */
+        OPEN,
+
+        /**
+         * Single probe request is sent, others fail fast.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Listener of circuit state changes.
+     */
+    public interface Listener {
+        /**
+         * Called on the thread which executed the request that caused the change.
+         *
+         * @param previous Previous state.
+         * @param current  Current state.
+         */
+        void onStateChanged(@NonNull State previous, @NonNull State current);
+    }
+
+    private final HttpTransport mDelegate;
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+    private volatile Listener mListener;
+    private State mState = State.CLOSED;
+    private int mFailures;
+    private long mOpenedAt;
+    private boolean mProbeInFlight;
+    // Incremented on every state change, request results from older generation are ignored.
+    private int mGeneration;
+
+    /**
+     * Creates a new {@code CircuitBreakerTransport}.
+     *
+     * @param delegate         Transport which sends the requests.
+     * @param failureThreshold Number of consecutive failures which opens the circuit.
+     * @param openMillis       How long the circuit stays open before probe request is let through.
+     */
+    public CircuitBreakerTransport(@NonNull final HttpTransport delegate,
+                                   final int failureThreshold,
+                                   final long openMillis) {
+        mDelegate = delegate;
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = openMillis;
+    }
+
+    /**
+     * Sets listener of state changes.
+     *
+     * @param listener Listener or {@code null} to remove it.
+     */
+    public void setListener(@Nullable final Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Gets current state.
+     *
+     * @return Circuit state.
+     */
+    @NonNull
+    public synchronized State getState() {
+        return mState;
+    }
+
+    @NonNull
+    @Override
+    public HttpResponse execute(@NonNull final HttpRequest request) throws IOException {
+        final int generation = acquire();
+
+        final HttpResponse response;
+        try {
+            response = mDelegate.execute(request);
+        } catch (final IOException exception) {
+            onFinished(generation, false);
+            throw exception;
+        } catch (final RuntimeException exception) {
+            onFinished(generation, false);
+            throw exception;
+        }
+
+        onFinished(generation, response.getStatusCode() < 500);
+        return response;
+    }
+
+    @Override
+    public void preconnect(@NonNull final String url) throws IOException {
+        // Warm up is only an optimization. It must not use up the half-open probe and its result is not counted.
+        if (getState() == State.CLOSED) {
+            mDelegate.preconnect(url);
+        }
+    }
+
+    //region Private Helpers
+
+    /**
+     * Checks whether request may be sent.
+     *
+     * @return Generation in which the request was admitted. Only the probe is admitted in half-open state.
+     * @throws CircuitOpenException If the request must fail fast.
+     */
+    private int acquire() throws CircuitOpenException {
+        final int retValue;
+        synchronized (this) {
+            switch (mState) {
+                case CLOSED:
+                    return mGeneration;
+                case OPEN:
+                    final long remaining = mOpenedAt + mOpenMillis - SystemClock.elapsedRealtime();
+                    if (remaining > 0) {
+                        throw new CircuitOpenException(remaining);
+                    }
+                    setState(State.HALF_OPEN);
+                    mProbeInFlight = true;
+                    retValue = mGeneration;
+                    break;
+                default:
+                    if (mProbeInFlight) {
+                        throw new CircuitOpenException(0);
+                    }
+                    mProbeInFlight = true;
+                    return mGeneration;
+            }
+        }
+
+        notifyListener(State.OPEN, State.HALF_OPEN);
+        return retValue;
+    }
+
+    private void onFinished(final int generation, final boolean success) {
+        final State previous;
+        final State current;
+        synchronized (this) {
+            if (generation != mGeneration) {
+                // Admitted before the last state change, e.g. sent while closed and finished after the circuit opened.
+                return;
+            }
+
+            previous = mState;
+            if (previous == State.HALF_OPEN) {
+                // Only the probe is admitted in half-open state.
+                mProbeInFlight = false;
+            }
+
+            if (success) {
+                mFailures = 0;
+                setState(State.CLOSED);
+            } else if (++mFailures >= mFailureThreshold || previous == State.HALF_OPEN) {
+                mOpenedAt = SystemClock.elapsedRealtime();
+                setState(State.OPEN);
+            }
+            current = mState;
+        }
+
+        if (previous != current) {
+            notifyListener(previous, current);
+        }
+    }
+
+    /**
+     * Changes state and starts new generation, so results of requests admitted so far are ignored. Must be called
+     * with the lock held.
+     *
+     * @param state New state.
+     */
+    private void setState(@NonNull final State state) {
+        if (mState != state) {
+            mState = state;
+            mGeneration++;
+        }
+    }
+
+    private void notifyListener(@NonNull final State previous, @NonNull final State current) {
+        final Listener listener = mListener;
+        if (listener != null) {
+            listener.onStateChanged(previous, current);
+        }
+    }
+
+    //endregion
+}
@@ -0,0 +1,361 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * {@link HttpTransport} decorator adding transparent compression.
+ * <p>
+ * Every request advertises {@code gzip} and {@code deflate} in {@code Accept-Encoding} and compressed responses are
+ * decompressed while being read, without buffering the whole body. Closing the response drains the remaining
+ * compressed bytes directly, so unread rest of the body is never inflated.
+ * <p>
+ * Request bodies of at least given size are sent gzip compressed. Smaller bodies are sent as they are, since gzip
+ * header alone would outweigh the saving. Server must accept {@code Content-Encoding: gzip} requests. Bodies which
+ * mix secrets with data controlled by third party should not be compressed, compressed length may leak the secret.
+ * <p>
+ * Number of bytes before and after compression is counted in both directions, so savings can be measured.
+ */
+public class CompressingTransport implements HttpTransport {
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_CONTENT_ENCODING = "content-encoding";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_DEFLATE = "deflate";
+
+    private final HttpTransport mDelegate;
+    private final long mMinRequestSize;
+    private final AtomicLong mRequestBytes = new AtomicLong();
+    private final AtomicLong mRequestWireBytes = new AtomicLong();
+    private final AtomicLong mResponseBytes = new AtomicLong();
+    private final AtomicLong mResponseWireBytes = new AtomicLong();
+
+    /**
+     * Creates a new {@code CompressingTransport}.
+     *
+     * @param delegate       Transport which sends the requests.
+     * @param minRequestSize Minimal size of request body in bytes which is compressed. Bodies of unknown length are
+     *                       always compressed. {@code Long.MAX_VALUE} disables request compression.
+     */
+    public CompressingTransport(@NonNull final HttpTransport delegate, final long minRequestSize) {
+        mDelegate = delegate;
+        mMinRequestSize = minRequestSize;
+    }
+
+    @NonNull
+    @Override
+    public HttpResponse execute(@NonNull final HttpRequest request) throws IOException {
+        final Map<String, String> headers = new LinkedHashMap<>(request.getHeaders());
+        if (!containsHeader(headers, HEADER_ACCEPT_ENCODING)) {
+            headers.put(HEADER_ACCEPT_ENCODING, "gzip, deflate");
+        }
+
+        HttpRequest.Body body = request.getBody();
+        if (body != null) {
+            final long length = body.getContentLength();
+            if (length < 0 || length >= mMinRequestSize) {
+                headers.put("Content-Encoding", ENCODING_GZIP);
+                body = new GzipBody(body);
+            } else {
+                mRequestBytes.addAndGet(length);
+                mRequestWireBytes.addAndGet(length);
+            }
+        }
+
+        return decode(request.getMethod(),
+                mDelegate.execute(new HttpRequest(request.getMethod(), request.getUrl(), headers, body)));
+    }
+
+    @Override
+    public void preconnect(@NonNull final String url) throws IOException {
+        mDelegate.preconnect(url);
+    }
+
+    //region Statistics
+
+    /**
+     * @return Number of request body bytes before compression.
+     */
+    public long getRequestBytes() {
+        return mRequestBytes.get();
+    }
+
+    /**
+     * @return Number of request body bytes sent over the network.
+     */
+    public long getRequestWireBytes() {
+        return mRequestWireBytes.get();
+    }
+
+    /**
+     * @return Number of response body bytes read after decompression.
+     */
+    public long getResponseBytes() {
+        return mResponseBytes.get();
+    }
+
+    /**
+     * @return Number of response body bytes received over the network, including drained ones.
+     */
+    public long getResponseWireBytes() {
+        return mResponseWireBytes.get();
+    }
+
+    //endregion
+
+    //region Private Helpers
+
+    /**
+     * Wraps response body with decompressing stream if the response is compressed. Response is closed if the
+     * decompression could not be started, so its connection is not leaked.
+     *
+     * @param method   Method of the request.
+     * @param response Response of the delegate.
+     * @return Response with decompressed body.
+     * @throws IOException If compressed stream header is malformed or could not be read.
+     */
+    @NonNull
+    private HttpResponse decode(@NonNull final String method, @NonNull final HttpResponse response)
+            throws IOException {
+        final InputStream body = response.getBody();
+        if (body == null) {
+            return response;
+        }
+
+        final String encoding = response.getHeader(HEADER_CONTENT_ENCODING);
+        final boolean gzip = ENCODING_GZIP.equalsIgnoreCase(encoding);
+        final boolean deflate = ENCODING_DEFLATE.equalsIgnoreCase(encoding);
+        final InputStream wire = new CountingInputStream(body, mResponseWireBytes);
+        if (!gzip && !deflate || !hasBody(method, response)) {
+            return new HttpResponse(response.getStatusCode(), response.getHeaders(),
+                    new CountingInputStream(wire, mResponseBytes));
+        }
+
+        final InputStream decoded;
+        try {
+            // Empty body is passed as it is. Decoder would fail on missing stream header.
+            final PushbackInputStream input = new PushbackInputStream(wire, 1);
+            final int first = input.read();
+            if (first == -1) {
+                return new HttpResponse(response.getStatusCode(), response.getHeaders(),
+                        new CountingInputStream(input, mResponseBytes));
+            }
+            input.unread(first);
+
+            decoded = gzip ? new GZIPInputStream(input, Segment.SIZE) : inflate(input);
+        } catch (final IOException | RuntimeException exception) {
+            try {
+                response.close();
+            } catch (final IOException closeException) {
+                exception.addSuppressed(closeException);
+            }
+            throw exception;
+        }
+
+        // Decoded body no longer matches these headers.
+        final Map<String, String> headers = new HashMap<>(response.getHeaders());
+        headers.remove(HEADER_CONTENT_ENCODING);
+        headers.remove("content-length");
+        return new DecodedResponse(response.getStatusCode(), headers,
+                new CountingInputStream(decoded, mResponseBytes), wire, decoded);
+    }
+
+    /**
+     * Creates inflating stream. {@code deflate} should be zlib wrapped, but some servers send raw deflate data.
+     */
+    @NonNull
+    private static InputStream inflate(@NonNull final InputStream wire) throws IOException {
+        final PushbackInputStream input = new PushbackInputStream(wire, 2);
+        final int first = input.read();
+        final int second = first == -1 ? -1 : input.read();
+        if (second != -1) {
+            input.unread(second);
+        }
+        if (first != -1) {
+            input.unread(first);
+        }
+
+        final boolean zlib = second != -1 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+        return new InflaterInputStream(input, new Inflater(!zlib), Segment.SIZE);
+    }
+
+    /**
+     * Checks whether response can have body. Response to {@code HEAD}, {@code 1xx}, {@code 204} and {@code 304}
+     * never has one, even if it declares content encoding.
+     */
+    private static boolean hasBody(@NonNull final String method, @NonNull final HttpResponse response) {
+        final int statusCode = response.getStatusCode();
+        return !"HEAD".equalsIgnoreCase(method)
+                && statusCode >= 200 && statusCode != 204 && statusCode != 304
+                && !"0".equals(response.getHeader("content-length"));
+    }
+
+    private static boolean containsHeader(@NonNull final Map<String, String> headers, @NonNull final String name) {
+        for (final String key : headers.keySet()) {
+            if (key.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Response reading decompressed body. Close drains the compressed stream instead of the decompressed one.
+     */
+    private static final class DecodedResponse extends HttpResponse {
+        private final InputStream mWire;
+        private final InputStream mDecoded;
+
+        private DecodedResponse(final int statusCode,
+                                @NonNull final Map<String, String> headers,
+                                @NonNull final InputStream body,
+                                @NonNull final InputStream wire,
+                                @NonNull final InputStream decoded) {
+            super(statusCode, headers, body);
+            mWire = wire;
+            mDecoded = decoded;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                new HttpResponse(getStatusCode(), getHeaders(), mWire).close();
+            } finally {
+                // Releases native inflater memory.
+                mDecoded.close();
+            }
+        }
+    }
+
+    /**
+     * Request body compressed while being written. Compressed length is not known in advance.
+     */
+    private final class GzipBody implements HttpRequest.Body {
+        private final HttpRequest.Body mBody;
+
+        private GzipBody(@NonNull final HttpRequest.Body body) {
+            mBody = body;
+        }
+
+        @NonNull
+        @Override
+        public String getContentType() {
+            return mBody.getContentType();
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public void writeTo(@NonNull final OutputStream outputStream) throws IOException {
+            final CountingOutputStream wire = new CountingOutputStream(outputStream, mRequestWireBytes);
+            final GZIPOutputStream gzip = new GZIPOutputStream(wire, Segment.SIZE);
+            mBody.writeTo(new CountingOutputStream(gzip, mRequestBytes));
+
+            // Finish, but do not close, connection stream is closed by the transport.
+            gzip.finish();
+            gzip.flush();
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong mCounter;
+
+        private CountingInputStream(@NonNull final InputStream input, @NonNull final AtomicLong counter) {
+            super(input);
+            mCounter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int value = super.read();
+            if (value != -1) {
+                mCounter.incrementAndGet();
+            }
+            return value;
+        }
+
+        @Override
+        public int read(@Nullable final byte[] buffer, final int offset, final int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCounter.addAndGet(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long count) throws IOException {
+            final long skipped = super.skip(count);
+            mCounter.addAndGet(skipped);
+            return skipped;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final AtomicLong mCounter;
+
+        private CountingOutputStream(@NonNull final OutputStream output, @NonNull final AtomicLong counter) {
+            super(output);
+            mCounter = counter;
+        }
+
+        @Override
+        public void write(final int value) throws IOException {
+            out.write(value);
+            mCounter.incrementAndGet();
+        }
+
+        @Override
+        public void write(@NonNull final byte[] buffer, final int offset, final int length) throws IOException {
+            // FilterOutputStream would write byte by byte.
+            out.write(buffer, offset, length);
+            mCounter.addAndGet(length);
+        }
+    }
+
+    //endregion
+}
@@ -0,0 +1,139 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable HTTP request executed by {@link HttpTransport}.
+ */
+public final class HttpRequest {
+
+    /**
+     * Body of the request. Body is written directly to the connection, so it does not need to be materialised in
+     * memory.
+     */
+    public interface Body {
+        /**
+         * @return Content type of the body, e.g. {@code "application/json"}.
+         */
+        @NonNull
+        String getContentType();
+
+        /**
+         * @return Length of the body in bytes or {@code -1} if unknown.
+         */
+        long getContentLength();
+
+        /**
+         * Writes the body to given stream.
+         *
+         * @param outputStream Stream of the connection.
+         * @throws IOException If writing failed.
+         */
+        void writeTo(@NonNull OutputStream outputStream) throws IOException;
+    }
+
+    private final String mMethod;
+    private final String mUrl;
+    private final Map<String, String> mHeaders;
+    private final Body mBody;
+
+    /**
+     * Creates a new {@code HttpRequest}.
+     *
+     * @param method  HTTP method, e.g. {@code "POST"}.
+     * @param url     Target URL.
+     * @param headers Request headers.
+     * @param body    Request body or {@code null}.
+     */
+    public HttpRequest(@NonNull final String method,
+                       @NonNull final String url,
+                       @NonNull final Map<String, String> headers,
+                       @Nullable final Body body) {
+        mMethod = method;
+        mUrl = url;
+        mHeaders = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+        mBody = body;
+    }
+
+    /**
+     * Creates body from byte array.
+     *
+     * @param contentType Content type of the body.
+     * @param content     Content of the body. Array is not copied.
+     * @return Request body.
+     */
+    @NonNull
+    public static Body bodyOf(@NonNull final String contentType, @NonNull final byte[] content) {
+        return new Body() {
+            @NonNull
+            @Override
+            public String getContentType() {
+                return contentType;
+            }
+
+            @Override
+            public long getContentLength() {
+                return content.length;
+            }
+
+            @Override
+            public void writeTo(@NonNull final OutputStream outputStream) throws IOException {
+                outputStream.write(content);
+            }
+        };
+    }
+
+    @NonNull
+    public String getMethod() {
+        return mMethod;
+    }
+
+    @NonNull
+    public String getUrl() {
+        return mUrl;
+    }
+
+    @NonNull
+    public Map<String, String> getHeaders() {
+        return mHeaders;
+    }
+
+    @Nullable
+    public Body getBody() {
+        return mBody;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * HTTP response returned by {@link HttpTransport}.
+ * <p>
+ * Response must be closed once it's not needed. Closing drains the rest of the body, which allows the transport to
+ * return the underlying connection to the pool instead of closing it. At most {@link #MAX_DRAIN_SIZE} bytes are
+ * drained, connection with more body left is closed instead, since reading it would cost more than a new connection.
+ * Body is read through pooled {@link Segment}s.
+ */
+public class HttpResponse implements Closeable {
+
+    /**
+     * Maximal number of unread body bytes drained on {@link #close()} to keep the connection reusable.
+     */
+    static final int MAX_DRAIN_SIZE = Segment.SIZE;
+
+    private final int mStatusCode;
+    private final Map<String, String> mHeaders;
+    private final InputStream mBody;
+
+    /**
+     * Creates a new {@code HttpResponse}.
+     *
+     * @param statusCode HTTP status code.
+     * @param headers    Response headers with lower case names.
+     * @param body       Body stream or {@code null} if response has no body.
+     */
+    public HttpResponse(final int statusCode,
+                        @NonNull final Map<String, String> headers,
+                        @Nullable final InputStream body) {
+        mStatusCode = statusCode;
+        mHeaders = headers;
+        mBody = body;
+    }
+
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    /**
+     * @return {@code True} if status code is in the 2xx range.
+     */
+    public boolean isSuccessful() {
+        return mStatusCode >= 200 && mStatusCode < 300;
+    }
+
+    /**
+     * Gets all response headers.
+     *
+     * @return Headers with lower case names.
+     */
+    @NonNull
+    public Map<String, String> getHeaders() {
+        return mHeaders;
+    }
+
+    /**
+     * Gets response header.
+     *
+     * @param name Header name, case insensitive.
+     * @return Header value or {@code null} if not present.
+     */
+    @Nullable
+    public String getHeader(@NonNull final String name) {
+        return mHeaders.get(name.toLowerCase(Locale.US));
+    }
+
+    /**
+     * Gets body stream. Stream can be read only once.
+     *
+     * @return Body stream or {@code null} if response has no body.
+     */
+    @Nullable
+    public InputStream getBody() {
+        return mBody;
+    }
+
+    /**
+     * Reads whole body as UTF-8 string.
+     *
+     * @return Body or empty string if response has no body.
+     * @throws IOException If reading failed.
+     */
+    @NonNull
+    public String getBodyAsString() throws IOException {
+        if (mBody == null) {
+            return "";
+        }
+
+        final Segment head = SegmentPool.take();
+        try {
+            // Read whole body into linked segments.
+            Segment tail = head;
+            int size = 0;
+            while (true) {
+                if (tail.writable() == 0) {
+                    tail.mNext = SegmentPool.take();
+                    tail = tail.mNext;
+                }
+
+                final int read = mBody.read(tail.mData, tail.mLimit, tail.writable());
+                if (read == -1) {
+                    break;
+                }
+                tail.mLimit += read;
+                size += read;
+            }
+
+            // Decode only once. Body which fits single segment is decoded without any copy.
+            if (head.mNext == null) {
+                return new String(head.mData, 0, head.mLimit, StandardCharsets.UTF_8);
+            }
+
+            final byte[] bytes = new byte[size];
+            int offset = 0;
+            for (Segment segment = head; segment != null; segment = segment.mNext) {
+                System.arraycopy(segment.mData, 0, bytes, offset, segment.mLimit);
+                offset += segment.mLimit;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        } finally {
+            SegmentPool.recycle(head);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mBody == null) {
+            return;
+        }
+
+        final Segment segment = SegmentPool.take();
+        try {
+            // Connection can be reused only if whole body was consumed. One byte over the limit tells whether the
+            // body ended exactly at the limit, otherwise the stream is closed with the rest unread.
+            int remaining = MAX_DRAIN_SIZE;
+            while (remaining >= 0) {
+                final int read = mBody.read(segment.mData, 0, Math.min(Segment.SIZE, remaining + 1));
+                if (read == -1) {
+                    break;
+                }
+                remaining -= read;
+            }
+        } finally {
+            SegmentPool.recycle(segment);
+            mBody.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Thrown when response status means the request failed, e.g. gateway error.
+ */
+public class HttpStatusException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int mStatusCode;
+
+    /**
+     * Creates a new {@code HttpStatusException}.
+     *
+     * @param statusCode HTTP status code of the response.
+     */
+    public HttpStatusException(final int statusCode) {
+        super(String.format(Locale.US, "HTTP %d", statusCode));
+        mStatusCode = statusCode;
+    }
+
+    /**
+     * Gets HTTP status code of the response.
+     *
+     * @return Status code.
+     */
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    /**
+     * Checks whether the status is a gateway error, i.e. 502, 503 or 504. Server behind the gateway either did not
+     * get the request or is temporarily unavailable, so such failure is transient.
+     *
+     * @return {@code True} for gateway errors.
+     */
+    public boolean isGatewayError() {
+        return isGatewayError(mStatusCode);
+    }
+
+    /**
+     * Checks whether the status is a gateway error without creating the exception, e.g. for every received response.
+     *
+     * @param statusCode HTTP status code of the response.
+     * @return {@code True} for 502, 503 and 504.
+     */
+    public static boolean isGatewayError(final int statusCode) {
+        return statusCode >= 502 && statusCode <= 504;
+    }
+
+    /**
+     * Checks whether the status means the request was not processed successfully.
+     *
+     * @param statusCode HTTP status code of the response.
+     * @return {@code True} for any status above 226 (IM Used), the last success status.
+     */
+    public static boolean isError(final int statusCode) {
+        return statusCode > 226;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Transport used to execute HTTP requests. Implementations are expected to reuse connections between requests, so only
+ * the first request to given host pays for DNS, TCP and TLS setup.
+ */
+public interface HttpTransport {
+
+    /**
+     * Executes HTTP request synchronously. Must not be called on main UI thread.
+     *
+     * @param request Request to execute.
+     * @return Response. Caller has to close it, so the connection can be reused.
+     * @throws IOException If the request could not be sent or response could not be received.
+     */
+    @NonNull
+    HttpResponse execute(@NonNull HttpRequest request) throws IOException;
+
+    /**
+     * Connects to host of given URL in advance, so following {@link #execute(HttpRequest)} does not wait for DNS, TCP
+     * and TLS setup. Must not be called on main UI thread. Default implementation does nothing.
+     *
+     * @param url URL of following request.
+     * @throws IOException If connection could not be established.
+     */
+    default void preconnect(@NonNull final String url) throws IOException {
+        // Transport without connection reuse has nothing to prepare.
+    }
+}
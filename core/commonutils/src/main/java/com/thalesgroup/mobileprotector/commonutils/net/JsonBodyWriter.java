@@ -0,0 +1,276 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * JSON writer encoding directly into pooled {@link Segment}s, which are then sent as {@link HttpRequest.Body} with
+ * fixed content length.
+ * <p>
+ * Writer does not create any intermediate {@code String}. Secret values, e.g. OTP, can be written from a byte array
+ * copy of their secure container with {@link #value(byte[])}, so they never become {@code java.lang.String}.
+ * Segments are wiped and returned to the pool with {@link #wipe()} once the request is sent.
+ */
+public final class JsonBodyWriter implements HttpRequest.Body {
+    private static final int MAX_DEPTH = 8;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private Segment mHead;
+    private Segment mTail;
+    private int mCount;
+    private int mDepth;
+    private final boolean[] mHasElements = new boolean[MAX_DEPTH];
+    private boolean mAfterName;
+
+    private JsonBodyWriter() {
+        // Obtained through obtain().
+    }
+
+    /**
+     * Creates empty writer. Buffer segments are taken from the pool as the content grows.
+     *
+     * @return Writer.
+     */
+    @NonNull
+    public static JsonBodyWriter obtain() {
+        return new JsonBodyWriter();
+    }
+
+    //region Writing
+
+    @NonNull
+    public JsonBodyWriter beginObject() {
+        beforeValue();
+        if (mDepth == MAX_DEPTH) {
+            throw new IllegalStateException("Nesting too deep");
+        }
+
+        write('{');
+        mHasElements[mDepth++] = false;
+        return this;
+    }
+
+    @NonNull
+    public JsonBodyWriter endObject() {
+        if (mDepth == 0 || mAfterName) {
+            throw new IllegalStateException("No object to close");
+        }
+
+        mDepth--;
+        write('}');
+        return this;
+    }
+
+    @NonNull
+    public JsonBodyWriter name(@NonNull final CharSequence name) {
+        if (mDepth == 0 || mAfterName) {
+            throw new IllegalStateException("Name outside of object");
+        }
+
+        if (mHasElements[mDepth - 1]) {
+            write(',');
+        }
+        mHasElements[mDepth - 1] = true;
+
+        writeQuoted(name);
+        write(':');
+        mAfterName = true;
+        return this;
+    }
+
+    @NonNull
+    public JsonBodyWriter value(@NonNull final CharSequence value) {
+        beforeValue();
+        writeQuoted(value);
+        return this;
+    }
+
+    /**
+     * Writes string value given as UTF-8 bytes. Used for secrets, which should not be converted to {@code String}.
+     * Caller is responsible for wiping the array.
+     *
+     * @param utf8 UTF-8 encoded value.
+     * @return This writer.
+     */
+    @NonNull
+    public JsonBodyWriter value(@NonNull final byte[] utf8) {
+        beforeValue();
+        write('"');
+        for (final byte current : utf8) {
+            writeEscaped(current & 0xFF);
+        }
+        write('"');
+        return this;
+    }
+
+    @NonNull
+    public JsonBodyWriter value(final long value) {
+        beforeValue();
+        if (value == Long.MIN_VALUE) {
+            // Can't be negated.
+            writeAscii("-9223372036854775808");
+            return this;
+        }
+
+        long remaining = value;
+        if (remaining < 0) {
+            write('-');
+            remaining = -remaining;
+        }
+
+        // Write digits from the most significant one, so no temporary buffer is needed.
+        long divisor = 1;
+        while (remaining / divisor >= 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            write((int) ('0' + remaining / divisor % 10));
+            divisor /= 10;
+        }
+        return this;
+    }
+
+    /**
+     * Zeroes the written content, returns segments to the pool and resets the writer, so it can be reused.
+     */
+    public void wipe() {
+        SegmentPool.recycle(mHead);
+        mHead = null;
+        mTail = null;
+        mCount = 0;
+        mDepth = 0;
+        mAfterName = false;
+    }
+
+    //endregion
+
+    //region HttpRequest.Body
+
+    @NonNull
+    @Override
+    public String getContentType() {
+        return "application/json";
+    }
+
+    @Override
+    public long getContentLength() {
+        return mCount;
+    }
+
+    @Override
+    public void writeTo(@NonNull final OutputStream outputStream) throws IOException {
+        if (mDepth != 0) {
+            throw new IllegalStateException("Unclosed object");
+        }
+        for (Segment segment = mHead; segment != null; segment = segment.mNext) {
+            outputStream.write(segment.mData, 0, segment.mLimit);
+        }
+    }
+
+    //endregion
+
+    //region Private Helpers
+
+    private void beforeValue() {
+        if (mDepth > 0 && !mAfterName) {
+            throw new IllegalStateException("Value without name");
+        }
+        if (mDepth == 0 && mCount > 0) {
+            throw new IllegalStateException("Multiple top level values");
+        }
+        mAfterName = false;
+    }
+
+    private void writeQuoted(@NonNull final CharSequence value) {
+        write('"');
+        final int length = value.length();
+        for (int index = 0; index < length; index++) {
+            final char current = value.charAt(index);
+            if (current < 0x80) {
+                writeEscaped(current);
+            } else if (current < 0x800) {
+                write(0xC0 | (current >> 6));
+                write(0x80 | (current & 0x3F));
+            } else if (Character.isHighSurrogate(current) && index + 1 < length
+                    && Character.isLowSurrogate(value.charAt(index + 1))) {
+                final int codePoint = Character.toCodePoint(current, value.charAt(++index));
+                write(0xF0 | (codePoint >> 18));
+                write(0x80 | ((codePoint >> 12) & 0x3F));
+                write(0x80 | ((codePoint >> 6) & 0x3F));
+                write(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(current)) {
+                // Lone surrogate can't be encoded.
+                write('?');
+            } else {
+                write(0xE0 | (current >> 12));
+                write(0x80 | ((current >> 6) & 0x3F));
+                write(0x80 | (current & 0x3F));
+            }
+        }
+        write('"');
+    }
+
+    private void writeEscaped(final int value) {
+        if (value == '"' || value == '\\') {
+            write('\\');
+            write(value);
+        } else if (value < 0x20) {
+            writeAscii("\\u00");
+            write(HEX[value >> 4]);
+            write(HEX[value & 0x0F]);
+        } else {
+            write(value);
+        }
+    }
+
+    private void writeAscii(@NonNull final String value) {
+        for (int index = 0; index < value.length(); index++) {
+            write(value.charAt(index));
+        }
+    }
+
+    private void write(final int value) {
+        if (mTail == null) {
+            mHead = SegmentPool.take();
+            mTail = mHead;
+        } else if (mTail.writable() == 0) {
+            // Link new segment instead of copying the content to a bigger array.
+            mTail.mNext = SegmentPool.take();
+            mTail = mTail.mNext;
+        }
+
+        mTail.mData[mTail.mLimit++] = (byte) value;
+        mCount++;
+    }
+
+    //endregion
+}
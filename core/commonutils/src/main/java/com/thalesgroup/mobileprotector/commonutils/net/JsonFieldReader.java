@@ -0,0 +1,356 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming reader extracting selected top level fields of JSON object.
+ * <p>
+ * Reader does not build the document in memory. Stream is read into a pooled {@link Segment} and only captured values
+ * are decoded from UTF-8. Skipped values are only scanned and reading stops as soon as all requested fields are found,
+ * so only the beginning of large response is ever processed. Body length, nesting depth and length of captured values
+ * are limited to survive adversarial input.
+ */
+public final class JsonFieldReader {
+    private static final int MAX_DEPTH = 32;
+    private static final int MAX_VALUE_LENGTH = 1024;
+
+    private final InputStream mInputStream;
+    private final long mMaxLength;
+    private final Segment mSegment;
+    private long mConsumed;
+
+    private JsonFieldReader(@NonNull final InputStream inputStream,
+                            final long maxLength,
+                            @NonNull final Segment segment) {
+        mInputStream = inputStream;
+        mMaxLength = maxLength;
+        mSegment = segment;
+    }
+
+    /**
+     * Reads selected top level fields of JSON object.
+     *
+     * @param inputStream JSON stream. Stream is not closed.
+     * @param maxLength   Maximum number of bytes to read.
+     * @param names       Names of the fields to extract.
+     * @return Found fields with string, number or boolean values. Null, object and array values are not extracted.
+     * @throws MalformedJsonException If the stream is not a valid JSON object or exceeds the limits.
+     * @throws IOException            If the stream could not be read.
+     */
+    @NonNull
+    public static Map<String, String> readFields(@NonNull final InputStream inputStream,
+                                                 final long maxLength,
+                                                 @NonNull final String... names) throws IOException {
+        final Set<String> wanted = new HashSet<>(Arrays.asList(names));
+        final Segment segment = SegmentPool.take();
+        try {
+            return new JsonFieldReader(inputStream, maxLength, segment).readFields(wanted);
+        } finally {
+            SegmentPool.recycle(segment);
+        }
+    }
+
+    //region Private Helpers
+
+    @NonNull
+    private Map<String, String> readFields(@NonNull final Set<String> wanted) throws IOException {
+        final Map<String, String> retValue = new HashMap<>();
+
+        expect('{');
+        int next = nextNonWhitespace();
+        if (next == '}') {
+            return retValue;
+        }
+
+        while (true) {
+            if (next != '"') {
+                throw syntaxError("Expected field name");
+            }
+
+            final String name = readString(true);
+            expect(':');
+            if (name != null && wanted.contains(name) && !retValue.containsKey(name)) {
+                final String value = readScalar();
+                if (value != null) {
+                    retValue.put(name, value);
+                }
+            } else {
+                skipValue();
+            }
+
+            // Everything needed is known. Rest of the document is irrelevant.
+            if (retValue.size() == wanted.size()) {
+                return retValue;
+            }
+
+            next = nextNonWhitespace();
+            if (next == '}') {
+                return retValue;
+            } else if (next != ',') {
+                throw syntaxError("Expected ',' or '}'");
+            }
+            next = nextNonWhitespace();
+        }
+    }
+
+    @Nullable
+    private String readScalar() throws IOException {
+        final int first = nextNonWhitespace();
+        if (first == '"') {
+            return readString(true);
+        } else if (first == '{' || first == '[') {
+            skipContainer();
+            return null;
+        } else {
+            final String literal = readLiteral(first);
+            return "null".equals(literal) ? null : literal;
+        }
+    }
+
+    private void skipValue() throws IOException {
+        final int first = nextNonWhitespace();
+        if (first == '"') {
+            readString(false);
+        } else if (first == '{' || first == '[') {
+            skipContainer();
+        } else {
+            readLiteral(first);
+        }
+    }
+
+    /**
+     * Skips object or array whose opening bracket was already consumed.
+     */
+    private void skipContainer() throws IOException {
+        // Top level object is the first level.
+        int depth = 2;
+        while (true) {
+            final int current = next();
+            if (current == '"') {
+                readString(false);
+            } else if (current == '{' || current == '[') {
+                if (++depth > MAX_DEPTH) {
+                    throw syntaxError("Nesting too deep");
+                }
+            } else if (current == '}' || current == ']') {
+                if (--depth == 1) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads string whose opening quote was already consumed.
+     *
+     * @param capture {@code True} if the value should be returned.
+     * @return String value, or {@code null} if it's not captured or it's too long.
+     */
+    @Nullable
+    private String readString(final boolean capture) throws IOException {
+        StringBuilder builder = capture ? new StringBuilder() : null;
+        while (true) {
+            final int current = next();
+            final int codePoint;
+            if (current == '"') {
+                return builder == null ? null : builder.toString();
+            } else if (current == '\\') {
+                codePoint = readEscaped();
+            } else if (current < 0x20) {
+                throw syntaxError("Unescaped control character");
+            } else if (current < 0x80) {
+                codePoint = current;
+            } else {
+                codePoint = readUtf8(current);
+            }
+
+            if (builder != null) {
+                if (builder.length() >= MAX_VALUE_LENGTH) {
+                    // Keep scanning, but do not grow the buffer any more.
+                    builder = null;
+                } else {
+                    builder.appendCodePoint(codePoint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes multi byte UTF-8 sequence whose leading byte was already consumed.
+     */
+    private int readUtf8(final int leading) throws IOException {
+        final int continuations;
+        int codePoint;
+        if ((leading & 0xE0) == 0xC0) {
+            continuations = 1;
+            codePoint = leading & 0x1F;
+        } else if ((leading & 0xF0) == 0xE0) {
+            continuations = 2;
+            codePoint = leading & 0x0F;
+        } else if ((leading & 0xF8) == 0xF0) {
+            continuations = 3;
+            codePoint = leading & 0x07;
+        } else {
+            throw syntaxError("Invalid UTF-8");
+        }
+
+        for (int index = 0; index < continuations; index++) {
+            final int current = next();
+            if ((current & 0xC0) != 0x80) {
+                throw syntaxError("Invalid UTF-8");
+            }
+            codePoint = (codePoint << 6) | (current & 0x3F);
+        }
+
+        if (codePoint > Character.MAX_CODE_POINT) {
+            throw syntaxError("Invalid UTF-8");
+        }
+        return codePoint;
+    }
+
+    private int readEscaped() throws IOException {
+        final int escaped = next();
+        switch (escaped) {
+            case '"':
+            case '\\':
+            case '/':
+                return escaped;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int index = 0; index < 4; index++) {
+                    final int digit = Character.digit((char) next(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return value;
+            default:
+                throw syntaxError("Invalid escape");
+        }
+    }
+
+    @NonNull
+    private String readLiteral(final int first) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        builder.append((char) first);
+        while (true) {
+            final int current = peek();
+            if (current == -1 || current == ',' || current == '}' || current == ']' || isWhitespace(current)) {
+                break;
+            }
+
+            if (builder.length() == MAX_VALUE_LENGTH) {
+                throw syntaxError("Literal too long");
+            }
+            builder.append((char) next());
+        }
+
+        final String retValue = builder.toString();
+        if (!"true".equals(retValue) && !"false".equals(retValue) && !"null".equals(retValue)
+                && !retValue.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+            throw syntaxError("Invalid literal");
+        }
+        return retValue;
+    }
+
+    private void expect(final char expected) throws IOException {
+        if (nextNonWhitespace() != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int current = next();
+        while (isWhitespace(current)) {
+            current = next();
+        }
+        return current;
+    }
+
+    private int peek() throws IOException {
+        if (mSegment.readable() == 0 && !fill()) {
+            return -1;
+        }
+        return mSegment.mData[mSegment.mPosition] & 0xFF;
+    }
+
+    private int next() throws IOException {
+        if (mSegment.readable() == 0 && !fill()) {
+            throw new MalformedJsonException("Unexpected end of JSON");
+        }
+
+        if (++mConsumed > mMaxLength) {
+            throw new MalformedJsonException("JSON exceeds " + mMaxLength + " bytes");
+        }
+        return mSegment.mData[mSegment.mPosition++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        final int read = mInputStream.read(mSegment.mData, 0, Segment.SIZE);
+        if (read <= 0) {
+            return false;
+        }
+
+        mSegment.mPosition = 0;
+        mSegment.mLimit = read;
+        return true;
+    }
+
+    private static boolean isWhitespace(final int character) {
+        return character == ' ' || character == '\t' || character == '\n' || character == '\r';
+    }
+
+    @NonNull
+    private MalformedJsonException syntaxError(@NonNull final String message) {
+        return new MalformedJsonException(message + " at byte " + mConsumed);
+    }
+
+    //endregion
+}
@@ -0,0 +1,1015 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.commonutils.thread.Lane;
+import com.thalesgroup.mobileprotector.commonutils.thread.TaskFuture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Non-blocking HTTP/1.1 {@link HttpTransport}.
+ * <p>
+ * All requests share single I/O thread driving a {@code Selector}, so number of in-flight requests is not bound to
+ * number of threads. Use {@link #enqueue(HttpRequest)} to send request without blocking any thread, or
+ * {@link #enqueue(HttpRequest, TaskFuture.Callback)} to get the response on the main UI thread. Blocking
+ * {@link #execute(HttpRequest)} is available as well, so the transport can replace {@link UrlConnectionTransport}.
+ * Transport is opt-in, {@link UrlConnectionTransport} stays the default of existing callers.
+ * <p>
+ * Connections are kept alive and reused per host, at most given number of them is open to the same host at once and
+ * further requests wait for a free one. HTTPS connections use {@link TlsSessionCache}, so they resume sessions of
+ * each other as well as of platform connections.
+ * <p>
+ * Request and response bodies are held in memory, which suits JSON exchanges but not large downloads. Request bytes
+ * are wiped once sent. Futures are completed on the I/O thread, continuations registered by
+ * {@link TaskFuture#whenComplete(TaskFuture.Callback)} must not block. TLS handshake tasks run on the I/O thread as
+ * well. Host name resolution never blocks the I/O thread: blocking calls resolve on the calling thread, which waits
+ * anyway, and host of request sent by {@code enqueue} is resolved on {@link Lane#NETWORK} once a new connection is
+ * needed. Connect timeout includes the resolution.
+ */
+public class NioHttpTransport implements HttpTransport {
+    private static final long KEEP_ALIVE_MILLIS = 5000;
+    private static final int PLAIN_BUFFER_SIZE = 8192;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final int mConnectTimeout;
+    private final int mReadTimeout;
+    private final int mMaxConnectionsPerHost;
+    private final HostnameVerifier mHostnameVerifier;
+    private final Queue<Exchange> mPending = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> mResolved = new ConcurrentLinkedQueue<>();
+    private volatile boolean mShutdown;
+    private Selector mSelector;
+
+    // Owned by the I/O thread.
+    private final Map<String, Host> mHosts = new HashMap<>();
+    private final List<Connection> mConnections = new ArrayList<>();
+
+    /**
+     * Creates a new {@code NioHttpTransport} with up to 16 connections per host and platform host name verifier.
+     *
+     * @param connectTimeout Connect timeout in milliseconds.
+     * @param readTimeout    Read timeout in milliseconds, measured between any two network events.
+     */
+    public NioHttpTransport(final int connectTimeout, final int readTimeout) {
+        this(connectTimeout, readTimeout, 16, HttpsURLConnection.getDefaultHostnameVerifier());
+    }
+
+    /**
+     * Creates a new {@code NioHttpTransport}.
+     *
+     * @param connectTimeout        Connect timeout in milliseconds.
+     * @param readTimeout           Read timeout in milliseconds, measured between any two network events.
+     * @param maxConnectionsPerHost Maximal number of connections open to the same host.
+     * @param hostnameVerifier      Verifier of HTTPS server host names.
+     */
+    public NioHttpTransport(final int connectTimeout,
+                            final int readTimeout,
+                            final int maxConnectionsPerHost,
+                            @NonNull final HostnameVerifier hostnameVerifier) {
+        mConnectTimeout = connectTimeout;
+        mReadTimeout = readTimeout;
+        mMaxConnectionsPerHost = maxConnectionsPerHost;
+        mHostnameVerifier = hostnameVerifier;
+    }
+
+    /**
+     * Sends request without blocking. Cancelling the future aborts the request and closes its connection.
+     *
+     * @param request Request to send.
+     * @return Future completed with response on the I/O thread, or failed with {@code IOException}.
+     */
+    @NonNull
+    public TaskFuture<HttpResponse> enqueue(@NonNull final HttpRequest request) {
+        final Exchange exchange;
+        try {
+            exchange = new Exchange(request);
+        } catch (final IOException exception) {
+            return TaskFuture.failed(exception);
+        }
+
+        submit(exchange);
+        return exchange.mFuture;
+    }
+
+    /**
+     * Sends request without blocking and delivers result on the main UI thread.
+     *
+     * @param request  Request to send.
+     * @param callback Callback receiving response, or {@code IOException}. Response has to be closed.
+     */
+    public void enqueue(@NonNull final HttpRequest request,
+                        @NonNull final TaskFuture.Callback<HttpResponse> callback) {
+        enqueue(request).onMainThread(callback);
+    }
+
+    @NonNull
+    @Override
+    public HttpResponse execute(@NonNull final HttpRequest request) throws IOException {
+        final Exchange exchange = new Exchange(request);
+        try {
+            exchange.resolve();
+        } catch (final IOException exception) {
+            exchange.wipe();
+            throw exception;
+        }
+
+        submit(exchange);
+        return await(exchange.mFuture);
+    }
+
+    @Override
+    public void preconnect(@NonNull final String url) throws IOException {
+        final Exchange exchange = new Exchange(url);
+        exchange.resolve();
+        submit(exchange);
+        await(exchange.mFuture);
+    }
+
+    /**
+     * Stops the I/O thread, closes all connections and fails all pending requests. Transport can't be used after.
+     */
+    public void shutdown() {
+        mShutdown = true;
+        synchronized (this) {
+            if (mSelector != null) {
+                mSelector.wakeup();
+            }
+        }
+    }
+
+    //region Private Helpers
+
+    private void submit(@NonNull final Exchange exchange) {
+        final Selector selector;
+        try {
+            selector = start();
+        } catch (final IOException exception) {
+            fail(exchange, exception);
+            return;
+        }
+
+        // Selector has to notice cancellation even when there is no network activity.
+        exchange.mFuture.whenComplete((result, error) -> {
+            if (exchange.mFuture.isCancelled()) {
+                selector.wakeup();
+            }
+        });
+        mPending.add(exchange);
+        selector.wakeup();
+
+        // Exchange added after the loop finished would never be processed.
+        if (mShutdown) {
+            failPending();
+        }
+    }
+
+    @NonNull
+    private synchronized Selector start() throws IOException {
+        if (mShutdown) {
+            throw new IOException("Transport shut down");
+        }
+
+        if (mSelector == null) {
+            mSelector = Selector.open();
+            final Thread thread = new Thread(this::runLoop, "NioHttpTransport");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return mSelector;
+    }
+
+    private static <T> T await(@NonNull final TaskFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException exception) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (final ExecutionException exception) {
+            if (exception.getCause() instanceof IOException) {
+                throw (IOException) exception.getCause();
+            }
+            throw new IOException(exception.getCause());
+        }
+    }
+
+    private void runLoop() {
+        IOException error = null;
+        try {
+            while (!mShutdown) {
+                mSelector.select(processTimeouts());
+                processSelected();
+                processResolved();
+                processPending();
+                processCancelled();
+            }
+        } catch (final IOException exception) {
+            error = exception;
+        } finally {
+            mShutdown = true;
+            closeAll(error != null ? error : new IOException("Transport shut down"));
+        }
+    }
+
+    private long processTimeouts() {
+        final long now = now();
+        long next = Long.MAX_VALUE;
+        for (final Connection connection : new ArrayList<>(mConnections)) {
+            if (connection.mDeadline <= now) {
+                // Idle connection just expires, active one fails its exchange.
+                close(connection, new SocketTimeoutException(connection.mConnected
+                        ? "Read timed out" : "Connect timed out"));
+            } else {
+                next = Math.min(next, connection.mDeadline);
+            }
+        }
+
+        // Zero blocks until wake up.
+        return next == Long.MAX_VALUE ? 0 : next - now;
+    }
+
+    private void processSelected() {
+        final Iterator<SelectionKey> iterator = mSelector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            final SelectionKey key = iterator.next();
+            iterator.remove();
+
+            final Connection connection = (Connection) key.attachment();
+            if (!key.isValid()) {
+                continue;
+            }
+
+            try {
+                connection.onReady(key.readyOps());
+            } catch (final IOException exception) {
+                close(connection, exception);
+            }
+        }
+    }
+
+    private void processPending() {
+        Exchange exchange;
+        while ((exchange = mPending.poll()) != null) {
+            if (exchange.mFuture.isDone()) {
+                exchange.wipe();
+                continue;
+            }
+
+            final Host host = getHost(exchange);
+            final Connection idle = host.mIdle.pollFirst();
+            if (idle != null) {
+                start(idle, exchange);
+            } else if (host.mOpen < mMaxConnectionsPerHost) {
+                open(host, exchange);
+            } else {
+                host.mWaiting.addLast(exchange);
+            }
+        }
+    }
+
+    private void processResolved() {
+        Connection connection;
+        while ((connection = mResolved.poll()) != null) {
+            // Connection could time out or be cancelled meanwhile.
+            if (!mConnections.contains(connection)) {
+                continue;
+            }
+
+            try {
+                if (connection.mResolveError != null) {
+                    throw connection.mResolveError;
+                }
+                connection.connect(connection.mAddress);
+            } catch (final IOException exception) {
+                close(connection, exception);
+            }
+        }
+    }
+
+    private void processCancelled() {
+        for (final Connection connection : new ArrayList<>(mConnections)) {
+            final Exchange exchange = connection.mExchange;
+            if (exchange != null && exchange.mFuture.isDone()) {
+                // Rest of the response can't be skipped reliably, connection is dropped.
+                close(connection, new IOException("Canceled"));
+            }
+        }
+    }
+
+    @NonNull
+    private Host getHost(@NonNull final Exchange exchange) {
+        final String key = (exchange.mTls ? "https://" : "http://") + exchange.mHostName + ':' + exchange.mPort;
+        Host retValue = mHosts.get(key);
+        if (retValue == null) {
+            retValue = new Host(exchange.mHostName, exchange.mPort, exchange.mTls);
+            mHosts.put(key, retValue);
+        }
+        return retValue;
+    }
+
+    private void open(@NonNull final Host host, @NonNull final Exchange exchange) {
+        final Connection connection = new Connection(host);
+        connection.mExchange = exchange;
+        connection.mDeadline = now() + mConnectTimeout;
+        host.mOpen++;
+        mConnections.add(connection);
+
+        if (exchange.mAddress == null) {
+            resolve(connection);
+            return;
+        }
+
+        try {
+            connection.connect(exchange.mAddress);
+        } catch (final IOException exception) {
+            close(connection, exception);
+        }
+    }
+
+    /**
+     * Resolves host of the connection on network lane and hands the address back to the I/O thread.
+     */
+    private void resolve(@NonNull final Connection connection) {
+        final String name = connection.mHost.mName;
+        final Selector selector = mSelector;
+        ExecutionService.getExecutionService()
+                .submit(Lane.NETWORK, "nio.resolve", () -> InetAddress.getByName(name))
+                .whenComplete((address, error) -> {
+                    if (error != null) {
+                        connection.mResolveError = error instanceof IOException
+                                ? (IOException) error : new IOException(error);
+                    } else {
+                        connection.mAddress = address;
+                    }
+                    mResolved.add(connection);
+                    selector.wakeup();
+                });
+    }
+
+    private void start(@NonNull final Connection connection, @NonNull final Exchange exchange) {
+        connection.mExchange = exchange;
+        connection.touch();
+        try {
+            connection.pump();
+        } catch (final IOException exception) {
+            close(connection, exception);
+        }
+    }
+
+    private void release(@NonNull final Connection connection) {
+        final Exchange next = pollWaiting(connection.mHost);
+        if (next != null) {
+            start(connection, next);
+            return;
+        }
+
+        connection.mDeadline = now() + KEEP_ALIVE_MILLIS;
+        connection.setInterest(SelectionKey.OP_READ);
+        connection.mHost.mIdle.addFirst(connection);
+    }
+
+    private void close(@NonNull final Connection connection, @NonNull final IOException error) {
+        final Host host = connection.mHost;
+        if (!mConnections.remove(connection)) {
+            return;
+        }
+        host.mIdle.remove(connection);
+        host.mOpen--;
+        connection.closeChannel();
+
+        final Exchange exchange = connection.mExchange;
+        connection.mExchange = null;
+        if (exchange != null) {
+            // Caller may repeat request which surely did not reach the server.
+            fail(exchange, exchange.mSending ? error : new RequestNotSentException(error));
+        }
+
+        // Free slot can be taken by waiting request.
+        if (!mShutdown && host.mOpen < mMaxConnectionsPerHost) {
+            final Exchange next = pollWaiting(host);
+            if (next != null) {
+                open(host, next);
+            }
+        }
+    }
+
+    private void closeAll(@NonNull final IOException error) {
+        for (final Connection connection : new ArrayList<>(mConnections)) {
+            close(connection, error);
+        }
+        for (final Host host : mHosts.values()) {
+            Exchange exchange;
+            while ((exchange = host.mWaiting.pollFirst()) != null) {
+                fail(exchange, error);
+            }
+        }
+        failPending();
+
+        try {
+            mSelector.close();
+        } catch (final IOException exception) {
+            // Nothing left to release.
+        }
+    }
+
+    private void failPending() {
+        Exchange exchange;
+        while ((exchange = mPending.poll()) != null) {
+            fail(exchange, new IOException("Transport shut down"));
+        }
+    }
+
+    /**
+     * Gets monotonic time of connection deadlines. Deadlines are only compared within the I/O loop, so the clock does
+     * not have to be shared with the rest of the application.
+     *
+     * @return Time in milliseconds.
+     */
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    @Nullable
+    private static Exchange pollWaiting(@NonNull final Host host) {
+        Exchange retValue;
+        while ((retValue = host.mWaiting.pollFirst()) != null) {
+            if (!retValue.mFuture.isDone()) {
+                return retValue;
+            }
+            retValue.wipe();
+        }
+        return null;
+    }
+
+    private static void complete(@NonNull final Exchange exchange, @Nullable final HttpResponse response) {
+        exchange.wipe();
+        exchange.mFuture.complete(response);
+    }
+
+    private static void fail(@NonNull final Exchange exchange, @NonNull final IOException error) {
+        exchange.wipe();
+        exchange.mFuture.fail(error);
+    }
+
+    /**
+     * Connections to single host.
+     */
+    private static final class Host {
+        private final String mName;
+        private final int mPort;
+        private final boolean mTls;
+        private final ArrayDeque<Connection> mIdle = new ArrayDeque<>();
+        private final ArrayDeque<Exchange> mWaiting = new ArrayDeque<>();
+        private int mOpen;
+
+        private Host(@NonNull final String name, final int port, final boolean tls) {
+            mName = name;
+            mPort = port;
+            mTls = tls;
+        }
+    }
+
+    /**
+     * Single request and its response. Request is serialised on the calling thread.
+     */
+    private static final class Exchange {
+        private final TaskFuture<HttpResponse> mFuture = TaskFuture.create();
+        private final String mHostName;
+        private final int mPort;
+        private final boolean mTls;
+        private final RequestBuffer mBuffer;
+        private final ByteBuffer mRequest;
+        private final ResponseParser mParser;
+        private InetAddress mAddress;
+        private boolean mSending;
+
+        private Exchange(@NonNull final HttpRequest request) throws IOException {
+            final URL url = new URL(request.getUrl());
+            mHostName = url.getHost();
+            mPort = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+            mTls = isTls(url);
+            mParser = new ResponseParser("HEAD".equals(request.getMethod()));
+
+            final HttpRequest.Body body = request.getBody();
+            RequestBuffer content = null;
+            RequestBuffer buffer = null;
+            try {
+                long contentLength = -1;
+                if (body != null) {
+                    contentLength = body.getContentLength();
+                    if (contentLength < 0) {
+                        // Length has to be known before the head is written.
+                        content = new RequestBuffer(PLAIN_BUFFER_SIZE);
+                        body.writeTo(content);
+                        contentLength = content.size();
+                    }
+                } else if (!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod())) {
+                    contentLength = 0;
+                }
+
+                // Sized exactly, so no copy of the body is left behind by growing.
+                final byte[] head = createHead(request, url, contentLength);
+                buffer = new RequestBuffer(head.length + (int) Math.max(contentLength, 0));
+                buffer.write(head);
+                if (content != null) {
+                    content.writeTo(buffer);
+                } else if (body != null) {
+                    body.writeTo(buffer);
+                    if (buffer.size() - head.length != contentLength) {
+                        throw new IOException("Body length does not match declared content length");
+                    }
+                }
+            } catch (final IOException exception) {
+                if (buffer != null) {
+                    buffer.wipe();
+                }
+                throw exception;
+            } finally {
+                if (content != null) {
+                    content.wipe();
+                }
+            }
+
+            mBuffer = buffer;
+            mRequest = buffer.toByteBuffer();
+        }
+
+        /**
+         * Creates exchange which only opens connection.
+         */
+        private Exchange(@NonNull final String url) throws IOException {
+            final URL parsed = new URL(url);
+            mHostName = parsed.getHost();
+            mPort = parsed.getPort() == -1 ? parsed.getDefaultPort() : parsed.getPort();
+            mTls = isTls(parsed);
+            mBuffer = null;
+            mRequest = null;
+            mParser = null;
+        }
+
+        /**
+         * Resolves the host on the calling thread, so a new connection does not wait for network lane.
+         */
+        private void resolve() throws IOException {
+            try {
+                mAddress = InetAddress.getByName(mHostName);
+            } catch (final IOException exception) {
+                throw new RequestNotSentException(exception);
+            }
+        }
+
+        @NonNull
+        private byte[] createHead(@NonNull final HttpRequest request,
+                                  @NonNull final URL url,
+                                  final long contentLength) throws IOException {
+            final String target = url.getFile().isEmpty() ? "/" : url.getFile();
+            final StringBuilder head = new StringBuilder(256)
+                    .append(request.getMethod()).append(' ').append(target).append(" HTTP/1.1\r\n")
+                    .append("Host: ").append(mHostName);
+            if (url.getPort() != -1) {
+                head.append(':').append(mPort);
+            }
+            head.append("\r\n");
+
+            final HttpRequest.Body body = request.getBody();
+            for (final Map.Entry<String, String> entry : request.getHeaders().entrySet()) {
+                final String name = entry.getKey();
+                if ("Host".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name)
+                        || "Transfer-Encoding".equalsIgnoreCase(name)
+                        || body != null && "Content-Type".equalsIgnoreCase(name)) {
+                    continue;
+                }
+                appendHeader(head, name, entry.getValue());
+            }
+            if (body != null) {
+                appendHeader(head, "Content-Type", body.getContentType());
+            }
+            if (contentLength >= 0) {
+                appendHeader(head, "Content-Length", Long.toString(contentLength));
+            }
+            head.append("\r\n");
+
+            return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        private static void appendHeader(@NonNull final StringBuilder head,
+                                         @NonNull final String name,
+                                         @NonNull final String value) throws IOException {
+            // Line breaks would allow injecting headers or whole requests.
+            if (name.indexOf('\r') >= 0 || name.indexOf('\n') >= 0
+                    || value.indexOf('\r') >= 0 || value.indexOf('\n') >= 0) {
+                throw new IOException("Invalid header " + name);
+            }
+            head.append(name).append(": ").append(value).append("\r\n");
+        }
+
+        private static boolean isTls(@NonNull final URL url) throws IOException {
+            if ("https".equals(url.getProtocol())) {
+                return true;
+            } else if ("http".equals(url.getProtocol())) {
+                return false;
+            }
+            throw new MalformedURLException("Unsupported protocol " + url.getProtocol());
+        }
+
+        private void wipe() {
+            if (mBuffer != null) {
+                mBuffer.wipe();
+            }
+        }
+    }
+
+    /**
+     * Byte array stream which can be wiped and sent without copying.
+     */
+    private static final class RequestBuffer extends ByteArrayOutputStream {
+        private RequestBuffer(final int size) {
+            super(size);
+        }
+
+        @NonNull
+        private ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+
+        private synchronized void wipe() {
+            // Buffer position of the request stays, so wiped request is never sent.
+            Arrays.fill(buf, (byte) 0);
+        }
+    }
+
+    /**
+     * Single HTTP/1.1 connection, plain or TLS.
+     */
+    private final class Connection {
+        private final Host mHost;
+        private SocketChannel mChannel;
+        private SelectionKey mKey;
+        private SSLEngine mEngine;
+        private ByteBuffer mNetIn;
+        private ByteBuffer mNetOut;
+        private ByteBuffer mAppIn;
+        private boolean mConnected;
+        private boolean mHandshaking;
+        private long mCreatedAt;
+        private long mDeadline;
+        private Exchange mExchange;
+
+        // Result of resolution on network lane, published through mResolved.
+        private InetAddress mAddress;
+        private IOException mResolveError;
+
+        private Connection(@NonNull final Host host) {
+            mHost = host;
+        }
+
+        private void connect(@NonNull final InetAddress address) throws IOException {
+            mChannel = SocketChannel.open();
+            mChannel.configureBlocking(false);
+            mChannel.socket().setTcpNoDelay(true);
+            mKey = mChannel.register(mSelector, 0, this);
+            if (mChannel.connect(new InetSocketAddress(address, mHost.mPort))) {
+                onConnected();
+                pump();
+            } else {
+                setInterest(SelectionKey.OP_CONNECT);
+            }
+        }
+
+        private void onReady(final int readyOps) throws IOException {
+            if ((readyOps & SelectionKey.OP_CONNECT) != 0) {
+                if (!mChannel.finishConnect()) {
+                    return;
+                }
+                onConnected();
+            }
+
+            if (mExchange != null) {
+                touch();
+            }
+            pump();
+        }
+
+        private void onConnected() throws IOException {
+            mConnected = true;
+            mCreatedAt = System.currentTimeMillis();
+            touch();
+
+            if (mHost.mTls) {
+                mEngine = TlsSessionCache.getTlsSessionCache().createEngine(mHost.mName, mHost.mPort);
+                final SSLSession session = mEngine.getSession();
+                mNetIn = ByteBuffer.allocate(session.getPacketBufferSize());
+                mNetOut = ByteBuffer.allocate(session.getPacketBufferSize());
+                mNetOut.flip();
+                mAppIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+                mEngine.beginHandshake();
+                mHandshaking = true;
+            } else {
+                mAppIn = ByteBuffer.allocate(PLAIN_BUFFER_SIZE);
+            }
+        }
+
+        /**
+         * Moves the connection forward as far as possible without blocking.
+         */
+        private void pump() throws IOException {
+            if (!mConnected) {
+                return;
+            }
+
+            if (mEngine != null) {
+                if (!flush()) {
+                    setInterest(SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (mHandshaking && !handshake()) {
+                    return;
+                }
+            }
+
+            final Exchange exchange = mExchange;
+            if (exchange == null) {
+                checkIdle();
+                return;
+            }
+
+            if (exchange.mRequest == null) {
+                // Connection only, it's ready now.
+                mExchange = null;
+                release(this);
+                complete(exchange, null);
+                return;
+            }
+
+            exchange.mSending = true;
+            if (!write(exchange.mRequest)) {
+                setInterest(SelectionKey.OP_WRITE);
+                return;
+            }
+            exchange.wipe();
+            setInterest(SelectionKey.OP_READ);
+            readResponse(exchange);
+        }
+
+        private void readResponse(@NonNull final Exchange exchange) throws IOException {
+            while (true) {
+                final int read = read();
+                mAppIn.flip();
+                final boolean done = exchange.mParser.feed(mAppIn, read < 0);
+                final boolean unexpected = mAppIn.hasRemaining();
+                mAppIn.clear();
+
+                if (done) {
+                    mExchange = null;
+                    if (exchange.mParser.isReusable() && !unexpected && read >= 0) {
+                        release(this);
+                    } else {
+                        close(this, new IOException("Connection closed"));
+                    }
+                    complete(exchange, exchange.mParser.toResponse());
+                    return;
+                }
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of response");
+                }
+                if (read == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Idle connection must not receive anything. End of stream means the server closed it.
+         */
+        private void checkIdle() throws IOException {
+            final int read = read();
+            if (read != 0 || mAppIn.position() != 0) {
+                throw new EOFException("Idle connection closed");
+            }
+        }
+
+        /**
+         * Reads available data into application buffer.
+         *
+         * @return Number of application bytes read, or {@code -1} at the end of stream.
+         */
+        private int read() throws IOException {
+            if (mEngine == null) {
+                return mChannel.read(mAppIn);
+            }
+
+            int read = mChannel.read(mNetIn);
+            int produced = 0;
+            mNetIn.flip();
+            try {
+                while (mNetIn.hasRemaining()) {
+                    final SSLEngineResult result = mEngine.unwrap(mNetIn, mAppIn);
+                    produced += result.bytesProduced();
+                    if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        read = -1;
+                        break;
+                    }
+                    if (result.getStatus() != SSLEngineResult.Status.OK) {
+                        // Incomplete record, or application buffer full until the parser consumes it.
+                        break;
+                    }
+                    // Post handshake messages, e.g. TLS 1.3 session tickets.
+                    runDelegatedTasks();
+                    if (mEngine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP
+                            && !write(EMPTY)) {
+                        setInterest(SelectionKey.OP_WRITE | SelectionKey.OP_READ);
+                    }
+                }
+            } finally {
+                mNetIn.compact();
+            }
+
+            if (produced > 0) {
+                return produced;
+            }
+            return read < 0 ? -1 : 0;
+        }
+
+        /**
+         * Writes given bytes, wrapped by TLS if needed.
+         *
+         * @return {@code True} if everything was written, {@code false} if the socket buffer is full.
+         */
+        private boolean write(@NonNull final ByteBuffer source) throws IOException {
+            if (mEngine == null) {
+                mChannel.write(source);
+                return !source.hasRemaining();
+            }
+
+            do {
+                if (!flush()) {
+                    return false;
+                }
+                mNetOut.clear();
+                final SSLEngineResult result = mEngine.wrap(source, mNetOut);
+                mNetOut.flip();
+                if (result.getStatus() != SSLEngineResult.Status.OK) {
+                    throw new SSLException("Unexpected TLS state " + result.getStatus());
+                }
+            } while (source.hasRemaining());
+            return flush();
+        }
+
+        private boolean flush() throws IOException {
+            if (mNetOut.hasRemaining()) {
+                mChannel.write(mNetOut);
+            }
+            return !mNetOut.hasRemaining();
+        }
+
+        /**
+         * Continues TLS handshake.
+         *
+         * @return {@code True} if handshake finished, {@code false} if it waits for network.
+         */
+        private boolean handshake() throws IOException {
+            while (true) {
+                switch (mEngine.getHandshakeStatus()) {
+                    case NEED_TASK:
+                        runDelegatedTasks();
+                        break;
+                    case NEED_WRAP:
+                        mNetOut.clear();
+                        final SSLEngineResult wrapResult = mEngine.wrap(EMPTY, mNetOut);
+                        mNetOut.flip();
+                        if (wrapResult.getStatus() != SSLEngineResult.Status.OK) {
+                            throw new SSLException("Handshake failed with " + wrapResult.getStatus());
+                        }
+                        if (!flush()) {
+                            setInterest(SelectionKey.OP_WRITE);
+                            return false;
+                        }
+                        break;
+                    case NEED_UNWRAP:
+                        mNetIn.flip();
+                        final SSLEngineResult unwrapResult = mEngine.unwrap(mNetIn, mAppIn);
+                        mNetIn.compact();
+                        if (unwrapResult.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                            final int read = mChannel.read(mNetIn);
+                            if (read < 0) {
+                                throw new EOFException("Connection closed during handshake");
+                            }
+                            if (read == 0) {
+                                setInterest(SelectionKey.OP_READ);
+                                return false;
+                            }
+                        } else if (unwrapResult.getStatus() != SSLEngineResult.Status.OK) {
+                            throw new SSLException("Handshake failed with " + unwrapResult.getStatus());
+                        }
+                        break;
+                    default:
+                        onHandshakeFinished();
+                        return true;
+                }
+            }
+        }
+
+        private void onHandshakeFinished() throws IOException {
+            mHandshaking = false;
+            final SSLSession session = mEngine.getSession();
+            if (!mHostnameVerifier.verify(mHost.mName, session)) {
+                throw new SSLPeerUnverifiedException("Hostname " + mHost.mName + " not verified");
+            }
+            TlsSessionCache.getTlsSessionCache().onHandshakeCompleted(session, mCreatedAt);
+        }
+
+        private void runDelegatedTasks() {
+            Runnable task;
+            while ((task = mEngine.getDelegatedTask()) != null) {
+                task.run();
+            }
+        }
+
+        private void touch() {
+            mDeadline = now() + mReadTimeout;
+        }
+
+        private void setInterest(final int ops) {
+            mKey.interestOps(ops);
+        }
+
+        private void closeChannel() {
+            if (mKey != null) {
+                mKey.cancel();
+            }
+            if (mEngine != null) {
+                mEngine.closeOutbound();
+            }
+            try {
+                if (mChannel != null) {
+                    mChannel.close();
+                }
+            } catch (final IOException exception) {
+                // Connection is dropped anyway.
+            }
+        }
+    }
+
+    //endregion
+}
@@ -0,0 +1,279 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Incremental HTTP/1.1 response parser used by {@link NioHttpTransport}. Bytes are fed as they arrive, in chunks of
+ * any size. Body is collected in memory, so it's meant for small responses like JSON.
+ */
+final class ResponseParser {
+    static final int MAX_BODY_SIZE = 1024 * 1024;
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    private enum State {
+        STATUS_LINE, HEADER, BODY, CHUNK_SIZE, CHUNK_END, TRAILER, UNTIL_CLOSE, DONE
+    }
+
+    private final boolean mHeadRequest;
+    private final StringBuilder mLine = new StringBuilder();
+    private final ByteArrayOutputStream mBody = new ByteArrayOutputStream();
+    private Map<String, String> mHeaders = new HashMap<>();
+    private State mState = State.STATUS_LINE;
+    private int mStatusCode;
+    private boolean mHttp11;
+    private boolean mChunked;
+    private long mRemaining;
+
+    /**
+     * Creates a new {@code ResponseParser}.
+     *
+     * @param headRequest {@code True} if response belongs to {@code HEAD} request, which never has body.
+     */
+    ResponseParser(final boolean headRequest) {
+        mHeadRequest = headRequest;
+    }
+
+    /**
+     * Consumes available bytes. Bytes following complete response are left in the buffer.
+     *
+     * @param input       Received bytes.
+     * @param endOfStream {@code True} if peer closed the connection.
+     * @return {@code True} if response is complete.
+     * @throws IOException If response is malformed or too large.
+     */
+    boolean feed(@NonNull final ByteBuffer input, final boolean endOfStream) throws IOException {
+        while (mState != State.DONE) {
+            if (mState == State.UNTIL_CLOSE) {
+                // Without length the body ends with the connection.
+                copyBody(input, input.remaining());
+                if (!endOfStream) {
+                    return false;
+                }
+                mState = State.DONE;
+            } else if (mState == State.BODY) {
+                if (!input.hasRemaining()) {
+                    return false;
+                }
+                final int count = (int) Math.min(input.remaining(), mRemaining);
+                copyBody(input, count);
+                mRemaining -= count;
+                if (mRemaining == 0) {
+                    mState = mChunked ? State.CHUNK_END : State.DONE;
+                }
+            } else {
+                final String line = readLine(input);
+                if (line == null) {
+                    return false;
+                }
+                onLine(line);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code True} if connection can carry another request after this response.
+     */
+    boolean isReusable() {
+        final String connection = mHeaders.get("connection");
+        if (mState != State.DONE || "close".equalsIgnoreCase(connection)) {
+            return false;
+        }
+        return mHttp11 || "keep-alive".equalsIgnoreCase(connection);
+    }
+
+    /**
+     * @return Parsed response. Must be called only once the response is complete.
+     */
+    @NonNull
+    HttpResponse toResponse() {
+        return new HttpResponse(mStatusCode, mHeaders,
+                mHeadRequest ? null : new ByteArrayInputStream(mBody.toByteArray()));
+    }
+
+    //region Private Helpers
+
+    private void onLine(@NonNull final String line) throws IOException {
+        switch (mState) {
+            case STATUS_LINE:
+                parseStatusLine(line);
+                break;
+            case HEADER:
+                if (line.isEmpty()) {
+                    onHeadersEnd();
+                } else {
+                    parseHeader(line);
+                }
+                break;
+            case CHUNK_SIZE:
+                mRemaining = parseChunkSize(line);
+                mState = mRemaining == 0 ? State.TRAILER : State.BODY;
+                break;
+            case CHUNK_END:
+                if (!line.isEmpty()) {
+                    throw new ProtocolException("Malformed chunk end");
+                }
+                mState = State.CHUNK_SIZE;
+                break;
+            case TRAILER:
+                // Trailers are not exposed.
+                if (line.isEmpty()) {
+                    mState = State.DONE;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unexpected state " + mState);
+        }
+    }
+
+    private void parseStatusLine(@NonNull final String line) throws IOException {
+        // HTTP/1.1 200 OK
+        if (!line.startsWith("HTTP/1.") || line.length() < 12 || line.charAt(8) != ' ') {
+            throw new ProtocolException("Unexpected status line: " + line);
+        }
+
+        try {
+            mStatusCode = Integer.parseInt(line.substring(9, 12));
+        } catch (final NumberFormatException exception) {
+            throw new ProtocolException("Unexpected status line: " + line);
+        }
+        mHttp11 = line.charAt(7) != '0';
+        mHeaders = new HashMap<>();
+        mState = State.HEADER;
+    }
+
+    private void parseHeader(@NonNull final String line) throws IOException {
+        final int separator = line.indexOf(':');
+        if (separator <= 0) {
+            throw new ProtocolException("Malformed header: " + line);
+        }
+
+        // Same as platform connection, only the first value of repeated header is kept.
+        final String name = line.substring(0, separator).trim().toLowerCase(Locale.US);
+        if (!mHeaders.containsKey(name)) {
+            mHeaders.put(name, line.substring(separator + 1).trim());
+        }
+    }
+
+    private void onHeadersEnd() throws IOException {
+        if (mStatusCode >= 100 && mStatusCode < 200) {
+            // Interim response, final one follows.
+            mState = State.STATUS_LINE;
+            return;
+        }
+
+        if (mHeadRequest || mStatusCode == 204 || mStatusCode == 304) {
+            mState = State.DONE;
+            return;
+        }
+
+        if ("chunked".equalsIgnoreCase(mHeaders.get("transfer-encoding"))) {
+            mChunked = true;
+            mState = State.CHUNK_SIZE;
+            return;
+        }
+
+        final String contentLength = mHeaders.get("content-length");
+        if (contentLength == null) {
+            mState = State.UNTIL_CLOSE;
+            return;
+        }
+
+        try {
+            mRemaining = Long.parseLong(contentLength);
+        } catch (final NumberFormatException exception) {
+            throw new ProtocolException("Malformed content length: " + contentLength);
+        }
+        if (mRemaining < 0) {
+            throw new ProtocolException("Malformed content length: " + contentLength);
+        }
+        if (mRemaining > MAX_BODY_SIZE) {
+            throw new IOException("Response body too large");
+        }
+        mState = mRemaining == 0 ? State.DONE : State.BODY;
+    }
+
+    private static long parseChunkSize(@NonNull final String line) throws IOException {
+        final int extension = line.indexOf(';');
+        final String size = (extension < 0 ? line : line.substring(0, extension)).trim();
+        try {
+            final long retValue = Long.parseLong(size, 16);
+            if (retValue < 0) {
+                throw new ProtocolException("Malformed chunk size: " + line);
+            }
+            return retValue;
+        } catch (final NumberFormatException exception) {
+            throw new ProtocolException("Malformed chunk size: " + line);
+        }
+    }
+
+    @Nullable
+    private String readLine(@NonNull final ByteBuffer input) throws IOException {
+        while (input.hasRemaining()) {
+            // Header bytes are ISO-8859-1.
+            final char character = (char) (input.get() & 0xFF);
+            if (character == '\n') {
+                final int length = mLine.length();
+                if (length > 0 && mLine.charAt(length - 1) == '\r') {
+                    mLine.setLength(length - 1);
+                }
+                final String retValue = mLine.toString();
+                mLine.setLength(0);
+                return retValue;
+            }
+
+            if (mLine.length() >= MAX_LINE_LENGTH) {
+                throw new ProtocolException("Response line too long");
+            }
+            mLine.append(character);
+        }
+        return null;
+    }
+
+    private void copyBody(@NonNull final ByteBuffer input, final int count) throws IOException {
+        if (mBody.size() + count > MAX_BODY_SIZE) {
+            throw new IOException("Response body too large");
+        }
+        mBody.write(input.array(), input.arrayOffset() + input.position(), count);
+        input.position(input.position() + count);
+    }
+
+    //endregion
+}
@@ -0,0 +1,222 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.commonutils.thread.Lane;
+import com.thalesgroup.mobileprotector.commonutils.thread.TaskFuture;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Retries network calls which failed transiently, using exponential backoff with full jitter, within overall latency
+ * budget. Only failures which guarantee the server did not process the request are transient, i.e.
+ * {@link RequestNotSentException} and gateway {@link HttpStatusException}. Request which might have reached the
+ * server, e.g. read timeout or malformed response, is never repeated, since server may reject the repeated value as a
+ * replay.
+ * <p>
+ * Waiting between attempts does not occupy any worker thread, next attempt is handed to the lane once the backoff
+ * elapses. Optionally a hedged second request is sent if the first one runs longer than the 95th percentile of
+ * previous calls with the same tag. First successful response wins and the other request is cancelled. Hedging must
+ * only be enabled for calls which the server handles idempotently.
+ */
+public final class RetryPolicy {
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final Random sRandom = new Random();
+
+    private final int mMaxAttempts;
+    private final long mInitialBackoffMillis;
+    private final long mMaxBackoffMillis;
+    private final long mBudgetMillis;
+    private final boolean mHedging;
+
+    /**
+     * Creates a new {@code RetryPolicy}.
+     *
+     * @param maxAttempts          Maximum number of attempts, including the first one.
+     * @param initialBackoffMillis Upper bound of the backoff before second attempt. Doubled for each next attempt.
+     * @param maxBackoffMillis     Upper bound of any backoff.
+     * @param budgetMillis         Overall time for all attempts and backoffs.
+     * @param hedging              {@code True} if hedged requests should be sent for slow attempts.
+     */
+    public RetryPolicy(final int maxAttempts,
+                       final long initialBackoffMillis,
+                       final long maxBackoffMillis,
+                       final long budgetMillis,
+                       final boolean hedging) {
+        mMaxAttempts = maxAttempts;
+        mInitialBackoffMillis = initialBackoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+        mBudgetMillis = budgetMillis;
+        mHedging = hedging;
+    }
+
+    /**
+     * Gets randomized backoff before next attempt. Full jitter spreads retries of many clients failing at the same
+     * time, so they do not hit recovering server at once.
+     *
+     * @param attempt Number of failed attempts, starting at 1.
+     * @return Backoff in milliseconds, uniformly distributed between 0 and exponentially growing upper bound.
+     */
+    public long getBackoffMillis(final int attempt) {
+        final long bound = Math.min(mMaxBackoffMillis, mInitialBackoffMillis << Math.min(attempt - 1, 30));
+        return (long) (sRandom.nextDouble() * bound);
+    }
+
+    /**
+     * Runs given call with retries.
+     *
+     * @param lane           Lane to run attempts on.
+     * @param tag            Tag of the attempts for {@link ExecutionService#getMetrics()}. Also used as source of the
+     *                       hedging threshold.
+     * @param deadlineMillis Time based on {@link SystemClock#elapsedRealtime()} after which no attempt is started,
+     *                       e.g. once the value being sent expires. Budget of this policy applies as well.
+     * @param callable       Single attempt. Only failures accepted by {@link #isTransient(Throwable)} are retried.
+     * @param <T>            Type of the result.
+     * @return Future completed with result of the first successful attempt, or failed with the last error. Failed with
+     * {@link TimeoutException} if the deadline passed while attempt was running. Cancelling the future cancels the
+     * running attempt and stops retries.
+     */
+    @NonNull
+    public <T> TaskFuture<T> execute(@NonNull final Lane lane,
+                                     @NonNull final String tag,
+                                     final long deadlineMillis,
+                                     @NonNull final Callable<T> callable) {
+        final long deadline = Math.min(deadlineMillis, SystemClock.elapsedRealtime() + mBudgetMillis);
+        final Call<T> call = new Call<>(lane, tag, deadline, callable);
+        call.attempt(0, null);
+        return call.mResult;
+    }
+
+    /**
+     * Checks whether failed call can be repeated.
+     *
+     * @param error Failure of the call.
+     * @return {@code True} if the request did not reach the server, or the server behind a gateway is temporarily
+     * unavailable.
+     */
+    public static boolean isTransient(@NonNull final Throwable error) {
+        return error instanceof RequestNotSentException
+                || error instanceof HttpStatusException && ((HttpStatusException) error).isGatewayError();
+    }
+
+    /**
+     * Gets delay after which hedged request is sent.
+     *
+     * @param tag Tag of the attempts.
+     * @return Delay in milliseconds or 0 if hedging is disabled or there is not enough samples yet.
+     */
+    private long getHedgeDelayMillis(@NonNull final String tag) {
+        if (!mHedging || ExecutionService.getExecutionService().getMetrics().getRunCount(tag) < MIN_HEDGE_SAMPLES) {
+            return 0;
+        }
+
+        // Metrics are recorded in microseconds.
+        return Math.max(1, ExecutionService.getExecutionService().getMetrics().getRunPercentile(tag, 95) / 1000);
+    }
+
+    private final class Call<T> {
+        private final TaskFuture<T> mResult = TaskFuture.create();
+        private final Lane mLane;
+        private final String mTag;
+        private final long mDeadline;
+        private final Callable<T> mCallable;
+        private volatile TaskFuture<T> mCurrent;
+        private int mFailedAttempts;
+
+        private Call(@NonNull final Lane lane,
+                     @NonNull final String tag,
+                     final long deadline,
+                     @NonNull final Callable<T> callable) {
+            mLane = lane;
+            mTag = tag;
+            mDeadline = deadline;
+            mCallable = callable;
+
+            mResult.whenComplete((result, error) -> {
+                // Caller gave up, drop attempt which is still queued.
+                final TaskFuture<T> current = mCurrent;
+                if (error != null && current != null) {
+                    current.cancel(false);
+                }
+            });
+        }
+
+        private void attempt(final long delayMillis, final Throwable lastError) {
+            final long remaining = mDeadline - SystemClock.elapsedRealtime() - delayMillis;
+            if (remaining <= 0 || mResult.isDone()) {
+                mResult.fail(lastError != null ? lastError : new TimeoutException());
+                return;
+            }
+
+            final ExecutionService service = ExecutionService.getExecutionService();
+            final TaskFuture<T> primary = delayMillis == 0
+                    ? service.submit(mLane, mTag, mCallable)
+                    : service.schedule(mLane, mTag, delayMillis, mCallable);
+
+            final TaskFuture<T> current;
+            final long hedgeDelay = getHedgeDelayMillis(mTag);
+            if (hedgeDelay > 0 && hedgeDelay < remaining) {
+                final TaskFuture<T> hedge = service.schedule(mLane, mTag, delayMillis + hedgeDelay, mCallable);
+                current = TaskFuture.anyOf(primary, hedge);
+                current.whenComplete((result, error) -> {
+                    // Loser is either still waiting for its delay, queued or its response is not needed anymore.
+                    primary.cancel(false);
+                    hedge.cancel(false);
+                });
+            } else {
+                current = primary;
+            }
+
+            mCurrent = current;
+            if (mResult.isDone()) {
+                current.cancel(false);
+            }
+            current.withTimeout(delayMillis + remaining, TimeUnit.MILLISECONDS).whenComplete((result, error) -> {
+                if (error == null) {
+                    mResult.complete(result);
+                    return;
+                }
+
+                primary.cancel(false);
+                mFailedAttempts++;
+                if (!isTransient(error) || mFailedAttempts >= mMaxAttempts) {
+                    mResult.fail(error);
+                } else {
+                    attempt(getBackoffMillis(mFailedAttempts), error);
+                }
+            });
+        }
+    }
+}
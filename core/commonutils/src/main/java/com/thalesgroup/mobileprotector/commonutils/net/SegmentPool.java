@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Process wide pool of {@link Segment}s shared by all network reads and writes.
+ * <p>
+ * Pool keeps at most {@link #MAX_SIZE} bytes of idle segments. When it's empty, new segment is allocated. When it's
+ * full, recycled segment is left to garbage collector. Memory held by the pool is therefore bounded no matter how many
+ * requests run concurrently. Segments are zeroed when recycled, since they might have carried secrets.
+ */
+final class SegmentPool {
+    static final int MAX_SIZE = 64 * 1024;
+
+    private static Segment sHead;
+    private static int sSize;
+
+    private SegmentPool() {
+        // Static helper.
+    }
+
+    /**
+     * Takes an empty segment.
+     *
+     * @return Segment with no data.
+     */
+    @NonNull
+    static Segment take() {
+        synchronized (SegmentPool.class) {
+            if (sHead != null) {
+                final Segment retValue = sHead;
+                sHead = retValue.mNext;
+                retValue.mNext = null;
+                sSize -= Segment.SIZE;
+                return retValue;
+            }
+        }
+
+        return new Segment();
+    }
+
+    /**
+     * Returns segment and all segments linked after it to the pool.
+     *
+     * @param segment First segment of the chain or {@code null}.
+     */
+    static void recycle(@Nullable final Segment segment) {
+        Segment current = segment;
+        while (current != null) {
+            final Segment next = current.mNext;
+
+            // Whole segment is zeroed, limit does not cover everything written, e.g. body drained straight into the
+            // data or limit lowered by reader after data was read.
+            Arrays.fill(current.mData, (byte) 0);
+            current.mPosition = 0;
+            current.mLimit = 0;
+            current.mNext = null;
+
+            // Segments over the limit are still zeroed, but left to garbage collector.
+            synchronized (SegmentPool.class) {
+                if (sSize + Segment.SIZE <= MAX_SIZE) {
+                    current.mNext = sHead;
+                    sHead = current;
+                    sSize += Segment.SIZE;
+                }
+            }
+
+            current = next;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import android.net.ssl.SSLSockets;
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Application wide TLS client session cache.
+ * <p>
+ * All HTTPS connections created through {@link #getSocketFactory()} or {@link #createEngine(String, int)} share single
+ * {@code SSLContext}, so repeated
+ * connections to the same host resume previous session (session id or session ticket) instead of doing full
+ * handshake. Session tickets are enabled on every socket, so resumption works also with servers which do not keep
+ * server side session cache. Counts of resumed and full handshakes are available for instrumentation.
+ * <p>
+ * Single factory instance must be used for all connections, since platform connection pool does not share
+ * connections created by different factories.
+ */
+public final class TlsSessionCache {
+    private static final int SESSION_CACHE_SIZE = 32;
+    private static final TlsSessionCache sInstance = new TlsSessionCache();
+
+    private final AtomicLong mResumed = new AtomicLong();
+    private final AtomicLong mFull = new AtomicLong();
+    private SSLContext mContext;
+    private SSLSocketFactory mSocketFactory;
+
+    private TlsSessionCache() {
+        // Singleton.
+    }
+
+    /**
+     * Gets application wide session cache.
+     *
+     * @return Session cache.
+     */
+    @NonNull
+    public static TlsSessionCache getTlsSessionCache() {
+        return sInstance;
+    }
+
+    /**
+     * Gets socket factory sharing this session cache.
+     *
+     * @return Socket factory to be set on {@code HttpsURLConnection}.
+     * @throws IOException If TLS is not available.
+     */
+    @NonNull
+    public synchronized SSLSocketFactory getSocketFactory() throws IOException {
+        if (mSocketFactory == null) {
+            mSocketFactory = new SessionSocketFactory(getContext().getSocketFactory());
+        }
+        return mSocketFactory;
+    }
+
+    /**
+     * Creates client mode engine sharing this session cache, for connections driven by non-blocking channels.
+     * Engine owner has to report finished handshake through {@link #onHandshakeCompleted(SSLSession, long)}.
+     *
+     * @param host Peer host, used for session lookup and SNI.
+     * @param port Peer port.
+     * @return Client mode engine.
+     * @throws IOException If TLS is not available.
+     */
+    @NonNull
+    public SSLEngine createEngine(@NonNull final String host, final int port) throws IOException {
+        final SSLEngine retValue = getContext().createSSLEngine(host, port);
+        retValue.setUseClientMode(true);
+        enableSessionTickets(retValue);
+        return retValue;
+    }
+
+    /**
+     * Counts finished handshake.
+     *
+     * @param session   Session negotiated by the handshake.
+     * @param createdAt Time in milliseconds when the connection was created.
+     */
+    public void onHandshakeCompleted(@NonNull final SSLSession session, final long createdAt) {
+        // Session created by this handshake can't be older than the connection. Resumed one keeps its creation time.
+        if (session.getCreationTime() < createdAt) {
+            mResumed.incrementAndGet();
+        } else {
+            mFull.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets number of handshakes which resumed previous session.
+     *
+     * @return Number of resumed handshakes.
+     */
+    public long getResumedCount() {
+        return mResumed.get();
+    }
+
+    /**
+     * Gets number of full handshakes.
+     *
+     * @return Number of full handshakes.
+     */
+    public long getFullCount() {
+        return mFull.get();
+    }
+
+    /**
+     * Resets handshake counters.
+     */
+    public void resetCounters() {
+        mResumed.set(0);
+        mFull.set(0);
+    }
+
+    //region Private Helpers
+
+    @NonNull
+    private synchronized SSLContext getContext() throws IOException {
+        if (mContext == null) {
+            try {
+                final SSLContext context = SSLContext.getInstance("TLS");
+                context.init(null, null, null);
+                context.getClientSessionContext().setSessionCacheSize(SESSION_CACHE_SIZE);
+                mContext = context;
+            } catch (final GeneralSecurityException exception) {
+                throw new IOException(exception);
+            }
+        }
+        return mContext;
+    }
+
+    private Socket configure(@NonNull final Socket socket) {
+        if (!(socket instanceof SSLSocket)) {
+            return socket;
+        }
+
+        final SSLSocket sslSocket = (SSLSocket) socket;
+        enableSessionTickets(sslSocket);
+
+        final long createdAt = System.currentTimeMillis();
+        sslSocket.addHandshakeCompletedListener(event -> onHandshakeCompleted(event.getSession(), createdAt));
+        return sslSocket;
+    }
+
+    private static void enableSessionTickets(@NonNull final SSLSocket socket) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            if (SSLSockets.isSupportedSocket(socket)) {
+                SSLSockets.setUseSessionTickets(socket, true);
+            }
+            return;
+        }
+
+        // Older platform Conscrypt sockets expose the same switch without public API.
+        setUseSessionTickets(socket);
+    }
+
+    private static void enableSessionTickets(@NonNull final SSLEngine engine) {
+        // Conscrypt engines have no public API for session tickets on any platform version.
+        setUseSessionTickets(engine);
+    }
+
+    private static void setUseSessionTickets(@NonNull final Object target) {
+        try {
+            final Method method = target.getClass().getMethod("setUseSessionTickets", boolean.class);
+            method.invoke(target, true);
+        } catch (final ReflectiveOperationException exception) {
+            // Not a Conscrypt socket or engine. Session id based resumption still works.
+        }
+    }
+
+    /**
+     * Delegates socket creation and configures every created socket.
+     */
+    private final class SessionSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory mDelegate;
+
+        private SessionSocketFactory(@NonNull final SSLSocketFactory delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return mDelegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return mDelegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return configure(mDelegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(final Socket socket,
+                                   final String host,
+                                   final int port,
+                                   final boolean autoClose) throws IOException {
+            return configure(mDelegate.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port) throws IOException {
+            return configure(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final String host,
+                                   final int port,
+                                   final InetAddress localHost,
+                                   final int localPort) throws IOException {
+            return configure(mDelegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress host, final int port) throws IOException {
+            return configure(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress address,
+                                   final int port,
+                                   final InetAddress localAddress,
+                                   final int localPort) throws IOException {
+            return configure(mDelegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+
+    //endregion
+}
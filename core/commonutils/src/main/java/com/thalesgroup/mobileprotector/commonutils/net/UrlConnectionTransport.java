@@ -0,0 +1,204 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * {@link HttpTransport} based on {@code HttpURLConnection}.
+ * <p>
+ * Platform keeps idle keep-alive connections in a process wide pool. Connection is returned to the pool once the
+ * response body is fully read and closed, which is done by {@link HttpResponse#close()}. Connection is never
+ * explicitly disconnected, since that would close the socket.
+ * <p>
+ * Android platform {@code HttpURLConnection} speaks HTTP/1.1 only. HTTP/2 multiplexing would require a dedicated
+ * client library.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+    private final int mConnectTimeout;
+    private final int mReadTimeout;
+
+    /**
+     * Creates a new {@code UrlConnectionTransport}.
+     *
+     * @param connectTimeout Connect timeout in milliseconds.
+     * @param readTimeout    Read timeout in milliseconds.
+     */
+    public UrlConnectionTransport(final int connectTimeout, final int readTimeout) {
+        mConnectTimeout = connectTimeout;
+        mReadTimeout = readTimeout;
+    }
+
+    @NonNull
+    @Override
+    public HttpResponse execute(@NonNull final HttpRequest request) throws IOException {
+        final HttpURLConnection connection = openConnection(new URL(request.getUrl()));
+        connection.setRequestMethod(request.getMethod());
+        connection.setConnectTimeout(mConnectTimeout);
+        connection.setReadTimeout(mReadTimeout);
+        connection.setUseCaches(false);
+
+        for (final Map.Entry<String, String> entry : request.getHeaders().entrySet()) {
+            connection.setRequestProperty(entry.getKey(), entry.getValue());
+        }
+
+        final HttpRequest.Body body = request.getBody();
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", body.getContentType());
+
+            // Stream body directly to the socket instead of buffering it inside of the connection.
+            final long contentLength = body.getContentLength();
+            if (contentLength >= 0) {
+                connection.setFixedLengthStreamingMode(contentLength);
+            } else {
+                connection.setChunkedStreamingMode(0);
+            }
+        }
+
+        // Host name resolution, connect and TLS handshake happen here, before anything of the request is sent.
+        try {
+            connection.connect();
+        } catch (final IOException exception) {
+            throw new RequestNotSentException(exception);
+        }
+
+        if (body != null) {
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                body.writeTo(outputStream);
+            }
+        }
+
+        return readResponse(connection);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Platform pool accepts only connections which carried a request, and no request is sent here. Host name is
+     * resolved, so its address is in the platform DNS cache, and for HTTPS full TLS handshake is done through the
+     * shared {@link TlsSessionCache} on a socket which is closed afterwards. Following request still connects, but
+     * resumes the session with abbreviated handshake. Sub classes which configure TLS in
+     * {@link #openConnection(URL)} should override this method as well.
+     */
+    @Override
+    public void preconnect(@NonNull final String url) throws IOException {
+        final URL target = new URL(url);
+        final InetAddress address = InetAddress.getByName(target.getHost());
+        if (!"https".equalsIgnoreCase(target.getProtocol())) {
+            // Plain TCP connection can't be reused, resolved address is all that stays warm.
+            return;
+        }
+
+        final int port = target.getPort() == -1 ? target.getDefaultPort() : target.getPort();
+        final Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(address, port), mConnectTimeout);
+            socket.setSoTimeout(mReadTimeout);
+
+            // Host name is passed on, so SNI is sent and the session is cached for the host.
+            final SSLSocket sslSocket = (SSLSocket) TlsSessionCache.getTlsSessionCache().getSocketFactory()
+                    .createSocket(socket, target.getHost(), port, true);
+            try {
+                sslSocket.startHandshake();
+                final SSLSession session = sslSocket.getSession();
+                if (!HttpsURLConnection.getDefaultHostnameVerifier().verify(target.getHost(), session)) {
+                    // Do not leave session of wrong host for resumption.
+                    session.invalidate();
+                    throw new SSLPeerUnverifiedException("Hostname " + target.getHost() + " not verified");
+                }
+            } finally {
+                sslSocket.close();
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Opens connection to given URL. Sub classes can override it to configure the connection further, e.g. TLS.
+     *
+     * @param url Target URL.
+     * @return Connection.
+     * @throws IOException If connection could not be opened.
+     */
+    @NonNull
+    protected HttpURLConnection openConnection(@NonNull final URL url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (connection instanceof HttpsURLConnection) {
+            // Shared session cache, so new connection to known host resumes TLS session instead of full handshake.
+            ((HttpsURLConnection) connection)
+                    .setSSLSocketFactory(TlsSessionCache.getTlsSessionCache().getSocketFactory());
+        }
+        return connection;
+    }
+
+    @NonNull
+    private static HttpResponse readResponse(@NonNull final HttpURLConnection connection) throws IOException {
+        final int statusCode = connection.getResponseCode();
+        InputStream inputStream;
+        try {
+            inputStream = connection.getInputStream();
+        } catch (final IOException exception) {
+            // Error responses are available only through error stream. It must be consumed as well to keep the
+            // connection alive.
+            inputStream = connection.getErrorStream();
+        }
+
+        return new HttpResponse(statusCode, getHeaders(connection), inputStream);
+    }
+
+    private static Map<String, String> getHeaders(@NonNull final HttpURLConnection connection) {
+        final Map<String, String> retValue = new HashMap<>();
+        for (final Map.Entry<String, List<String>> entry : connection.getHeaderFields().entrySet()) {
+            // Status line is stored with null key.
+            if (entry.getKey() != null && !entry.getValue().isEmpty()) {
+                retValue.put(entry.getKey().toLowerCase(Locale.US), entry.getValue().get(0));
+            }
+        }
+        return retValue;
+    }
+}
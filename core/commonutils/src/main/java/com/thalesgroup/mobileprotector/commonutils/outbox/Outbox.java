@@ -0,0 +1,334 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.outbox;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.support.annotation.NonNull;
+
+import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.commonutils.thread.Lane;
+import com.thalesgroup.mobileprotector.commonutils.thread.TaskFuture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistent queue of requests which could not be sent because network was unavailable.
+ * <p>
+ * Entries are stored in an append-only journal. Entries added within a short window are written together and
+ * synced to disk once. Drainer started by {@link #startDrainer(Context)} delivers stored entries once connectivity
+ * returns. Each entry carries idempotency key which deliverer should send along, so repeated delivery, e.g. after
+ * crash before the entry was marked as done, is recognized by the server. Entries which expired are purged without
+ * network call.
+ * <p>
+ * Expiry is based on wall clock time, since entries survive process restart.
+ */
+public final class Outbox {
+
+    /**
+     * Delivers entries of one type.
+     */
+    public interface Deliverer {
+        /**
+         * Delivers single entry. Called on network lane.
+         *
+         * @param entry Entry to deliver.
+         * @throws IOException If the entry could not be delivered now and should be kept for next drain. Returning
+         *                     normally removes the entry, also if the server rejected it.
+         */
+        void deliver(@NonNull OutboxEntry entry) throws IOException;
+    }
+
+    private static final long SYNC_WINDOW_MILLIS = 20;
+
+    private final File mFile;
+    private final Map<String, Deliverer> mDeliverers = new ConcurrentHashMap<>();
+    private final Object mJournalLock = new Object();
+    private final AtomicBoolean mDraining = new AtomicBoolean();
+    private final List<OutboxEntry> mPendingEntries = new ArrayList<>();
+    private final List<TaskFuture<String>> mPendingFutures = new ArrayList<>();
+    private boolean mSyncScheduled;
+    private OutboxJournal mJournal;
+    private ConnectivityManager.NetworkCallback mNetworkCallback;
+
+    /**
+     * Creates a new {@code Outbox}. Journal is opened lazily on background thread.
+     *
+     * @param file Journal file, should be in application private storage.
+     */
+    public Outbox(@NonNull final File file) {
+        mFile = file;
+    }
+
+    /**
+     * Registers deliverer of given entry type. Entries without deliverer are kept until they expire.
+     *
+     * @param type      Entry type.
+     * @param deliverer Deliverer.
+     */
+    public void registerDeliverer(@NonNull final String type, @NonNull final Deliverer deliverer) {
+        mDeliverers.put(type, deliverer);
+    }
+
+    /**
+     * Stores new entry.
+     *
+     * @param key       Idempotency key. Adding an entry with key which is already stored replaces it.
+     * @param type      Entry type.
+     * @param expiresAt Wall clock time in milliseconds after which the entry is purged.
+     * @param payload   Payload. Owned by the outbox from now on and wiped once delivered or purged.
+     * @return Future completed with the key once the entry is synced to disk, or failed with {@code IOException}.
+     */
+    @NonNull
+    public TaskFuture<String> enqueue(@NonNull final String key,
+                                      @NonNull final String type,
+                                      final long expiresAt,
+                                      @NonNull final byte[] payload) {
+        final TaskFuture<String> retValue = TaskFuture.create();
+        final boolean schedule;
+        synchronized (mPendingEntries) {
+            mPendingEntries.add(new OutboxEntry(key, type, expiresAt, payload));
+            mPendingFutures.add(retValue);
+            schedule = !mSyncScheduled;
+            mSyncScheduled = true;
+        }
+
+        if (schedule) {
+            ExecutionService.getExecutionService()
+                    .schedule(Lane.STORAGE, "outbox.sync", SYNC_WINDOW_MILLIS, () -> {
+                        sync();
+                        return null;
+                    })
+                    .whenComplete((result, error) -> {
+                        if (error != null) {
+                            // Sync task could not run at all, e.g. storage lane is full.
+                            failPending(error);
+                        }
+                    });
+        }
+        return retValue;
+    }
+
+    /**
+     * Purges expired entries and delivers the remaining ones on network lane. Delivery stops at the first entry which
+     * fails with {@code IOException}, the rest is kept for next drain. Does nothing if drain is already running.
+     *
+     * @return Future completed with the number of delivered entries.
+     */
+    @NonNull
+    public TaskFuture<Integer> drain() {
+        if (!mDraining.compareAndSet(false, true)) {
+            return TaskFuture.completed(0);
+        }
+
+        // Either the task or its future clears the flag. Future alone would allow second drain while the task still
+        // runs, task alone never clears it if the task is rejected or dropped from the queue.
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final TaskFuture<Integer> retValue = ExecutionService.getExecutionService()
+                .submit(Lane.NETWORK, "outbox.drain", () -> {
+                    if (!claimed.compareAndSet(false, true)) {
+                        return 0;
+                    }
+
+                    try {
+                        return drainEntries();
+                    } finally {
+                        mDraining.set(false);
+                    }
+                });
+        retValue.whenComplete((result, error) -> {
+            if (claimed.compareAndSet(false, true)) {
+                mDraining.set(false);
+            }
+        });
+        return retValue;
+    }
+
+    /**
+     * Opens the journal and purges expired entries on storage lane, without delivering the remaining ones. Useful at
+     * application start, so entries which can not be delivered anymore do not stay on disk until network returns.
+     *
+     * @return Future completed with the number of purged entries, or failed with {@code IOException}.
+     */
+    @NonNull
+    public TaskFuture<Integer> purgeExpired() {
+        return ExecutionService.getExecutionService().submit(Lane.STORAGE, "outbox.purge", () -> {
+            synchronized (mJournalLock) {
+                final long now = System.currentTimeMillis();
+                final List<String> expired = new ArrayList<>();
+                for (final OutboxEntry entry : getJournal().getEntries()) {
+                    if (entry.isExpired(now)) {
+                        expired.add(entry.getKey());
+                    }
+                }
+                getJournal().commit(Collections.<OutboxEntry>emptyList(), expired);
+                return expired.size();
+            }
+        });
+    }
+
+    /**
+     * Starts draining the outbox whenever network becomes available. Drain starts immediately if network is
+     * available already.
+     *
+     * @param context Android context.
+     */
+    public synchronized void startDrainer(@NonNull final Context context) {
+        if (mNetworkCallback != null) {
+            return;
+        }
+
+        mNetworkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(@NonNull final Network network) {
+                drain();
+            }
+        };
+        getConnectivityManager(context).registerNetworkCallback(new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build(), mNetworkCallback);
+    }
+
+    /**
+     * Stops draining the outbox on connectivity changes. Stored entries are kept.
+     *
+     * @param context Android context.
+     */
+    public synchronized void stopDrainer(@NonNull final Context context) {
+        if (mNetworkCallback != null) {
+            getConnectivityManager(context).unregisterNetworkCallback(mNetworkCallback);
+            mNetworkCallback = null;
+        }
+    }
+
+    //region Private Helpers
+
+    private void sync() {
+        final List<OutboxEntry> entries;
+        final List<TaskFuture<String>> futures;
+        synchronized (mPendingEntries) {
+            entries = new ArrayList<>(mPendingEntries);
+            futures = new ArrayList<>(mPendingFutures);
+            mPendingEntries.clear();
+            mPendingFutures.clear();
+            mSyncScheduled = false;
+        }
+
+        try {
+            synchronized (mJournalLock) {
+                getJournal().commit(entries, Collections.<String>emptyList());
+            }
+        } catch (final IOException exception) {
+            for (int index = 0; index < entries.size(); index++) {
+                entries.get(index).wipe();
+                futures.get(index).fail(exception);
+            }
+            return;
+        }
+
+        for (int index = 0; index < entries.size(); index++) {
+            futures.get(index).complete(entries.get(index).getKey());
+        }
+    }
+
+    private void failPending(@NonNull final Throwable error) {
+        final List<OutboxEntry> entries;
+        final List<TaskFuture<String>> futures;
+        synchronized (mPendingEntries) {
+            entries = new ArrayList<>(mPendingEntries);
+            futures = new ArrayList<>(mPendingFutures);
+            mPendingEntries.clear();
+            mPendingFutures.clear();
+            mSyncScheduled = false;
+        }
+
+        for (int index = 0; index < entries.size(); index++) {
+            entries.get(index).wipe();
+            futures.get(index).fail(error);
+        }
+    }
+
+    private int drainEntries() throws IOException {
+        final List<OutboxEntry> entries;
+        synchronized (mJournalLock) {
+            entries = new ArrayList<>(getJournal().getEntries());
+        }
+
+        final List<String> done = new ArrayList<>();
+        int delivered = 0;
+        boolean offline = false;
+        try {
+            for (final OutboxEntry entry : entries) {
+                final Deliverer deliverer = mDeliverers.get(entry.getType());
+                if (entry.isExpired(System.currentTimeMillis())) {
+                    // Server would reject it anyway, drop it without network call.
+                    done.add(entry.getKey());
+                } else if (!offline && deliverer != null) {
+                    try {
+                        deliverer.deliver(entry);
+                        done.add(entry.getKey());
+                        delivered++;
+                    } catch (final IOException exception) {
+                        // Still offline. Keep this and following entries for next drain, only purge expired ones.
+                        offline = true;
+                    }
+                }
+            }
+        } finally {
+            synchronized (mJournalLock) {
+                getJournal().commit(Collections.<OutboxEntry>emptyList(), done);
+            }
+        }
+        return delivered;
+    }
+
+    @NonNull
+    private OutboxJournal getJournal() throws IOException {
+        if (mJournal == null) {
+            mJournal = new OutboxJournal(mFile);
+        }
+        return mJournal;
+    }
+
+    @NonNull
+    private static ConnectivityManager getConnectivityManager(@NonNull final Context context) {
+        return (ConnectivityManager) context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    //endregion
+}
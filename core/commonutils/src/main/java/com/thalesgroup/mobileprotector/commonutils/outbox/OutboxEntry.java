@@ -0,0 +1,106 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.outbox;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Single pending item stored in {@link Outbox}.
+ */
+public final class OutboxEntry {
+    private final String mKey;
+    private final String mType;
+    private final long mExpiresAt;
+    private final byte[] mPayload;
+
+    OutboxEntry(@NonNull final String key,
+                @NonNull final String type,
+                final long expiresAt,
+                @NonNull final byte[] payload) {
+        mKey = key;
+        mType = type;
+        mExpiresAt = expiresAt;
+        mPayload = payload;
+    }
+
+    /**
+     * Gets idempotency key of the entry. Stays the same for all delivery attempts, so server can recognize
+     * a request it has already processed.
+     *
+     * @return Unique key.
+     */
+    @NonNull
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * Gets type of the entry used to select its {@link Outbox.Deliverer}.
+     *
+     * @return Entry type.
+     */
+    @NonNull
+    public String getType() {
+        return mType;
+    }
+
+    /**
+     * Gets wall clock time after which the entry is purged without being delivered.
+     *
+     * @return Time in milliseconds since epoch.
+     */
+    public long getExpiresAt() {
+        return mExpiresAt;
+    }
+
+    /**
+     * Checks whether the entry has expired.
+     *
+     * @param now Current wall clock time in milliseconds since epoch.
+     * @return {@code True} if the entry must not be delivered anymore.
+     */
+    public boolean isExpired(final long now) {
+        return now >= mExpiresAt;
+    }
+
+    /**
+     * Gets payload of the entry. Returned array is not copied and is wiped once the entry is delivered or purged.
+     *
+     * @return Payload.
+     */
+    @NonNull
+    public byte[] getPayload() {
+        return mPayload;
+    }
+
+    void wipe() {
+        Arrays.fill(mPayload, (byte) 0);
+    }
+}
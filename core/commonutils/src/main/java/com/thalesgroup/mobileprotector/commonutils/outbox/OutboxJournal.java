@@ -0,0 +1,275 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.outbox;
+
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal backing {@link Outbox}.
+ * <p>
+ * Each record is framed as {@code [length][crc32][body]}. Added entry is stored as {@code ADD} record, delivered or
+ * purged entry as {@code DONE} record with the same key. Journal is replayed on open. Torn record at the end, e.g.
+ * after crash during write, is cut off. Journal is rewritten with live entries only once enough {@code DONE}
+ * records pile up, or truncated once it has no live entry.
+ * <p>
+ * Not thread safe, access is serialized by {@link Outbox}.
+ */
+final class OutboxJournal {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte OP_ADD = 1;
+    private static final byte OP_DONE = 2;
+    private static final int MAX_RECORD_LENGTH = 64 * 1024;
+    private static final int COMPACT_THRESHOLD = 64;
+
+    private final File mFile;
+    private final Map<String, OutboxEntry> mEntries = new LinkedHashMap<>();
+    private FileOutputStream mOutput;
+    private int mDoneRecords;
+
+    /**
+     * Opens the journal and replays its records.
+     *
+     * @param file Journal file. Created if missing.
+     * @throws IOException If the journal could not be read or opened for writing.
+     */
+    OutboxJournal(@NonNull final File file) throws IOException {
+        mFile = file;
+        replay();
+        mOutput = new FileOutputStream(mFile, true);
+    }
+
+    /**
+     * Gets live entries in order in which they were added.
+     *
+     * @return Live entries. Collection is owned by the journal.
+     */
+    @NonNull
+    Collection<OutboxEntry> getEntries() {
+        return mEntries.values();
+    }
+
+    /**
+     * Appends {@code ADD} records of given entries and their {@code DONE} records of given keys, then syncs the file
+     * once for the whole batch.
+     *
+     * @param added Entries to add.
+     * @param done  Keys of entries which were delivered or purged.
+     * @throws IOException If write or sync failed. Memory state is updated only after successful sync.
+     */
+    void commit(@NonNull final List<OutboxEntry> added, @NonNull final List<String> done) throws IOException {
+        if (added.isEmpty() && done.isEmpty()) {
+            return;
+        }
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            for (final OutboxEntry entry : added) {
+                writeRecord(buffer, encodeAdd(entry));
+            }
+            for (final String key : done) {
+                writeRecord(buffer, encodeDone(key));
+            }
+
+            // Single write and single fsync for the whole batch.
+            buffer.writeTo(mOutput);
+            mOutput.getFD().sync();
+        } finally {
+            wipe(buffer);
+        }
+
+        for (final OutboxEntry entry : added) {
+            mEntries.put(entry.getKey(), entry);
+        }
+        for (final String key : done) {
+            final OutboxEntry entry = mEntries.remove(key);
+            if (entry != null) {
+                entry.wipe();
+                mDoneRecords++;
+            }
+        }
+
+        if (mEntries.isEmpty() || mDoneRecords >= COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    void close() throws IOException {
+        mOutput.close();
+    }
+
+    //region Private Helpers
+
+    private void replay() throws IOException {
+        if (!mFile.exists()) {
+            return;
+        }
+
+        long validLength = 0;
+        try (DataInputStream input = new DataInputStream(new FileInputStream(mFile))) {
+            while (true) {
+                final byte[] record = readRecord(input);
+                if (record == null) {
+                    break;
+                }
+                apply(record);
+                validLength += 8 + record.length;
+            }
+        }
+
+        if (validLength < mFile.length()) {
+            try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+                file.setLength(validLength);
+            }
+        }
+    }
+
+    private static byte[] readRecord(@NonNull final DataInputStream input) throws IOException {
+        try {
+            final int length = input.readInt();
+            final long crc = input.readInt() & 0xFFFFFFFFL;
+            if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                return null;
+            }
+
+            final byte[] record = new byte[length];
+            input.readFully(record);
+
+            final CRC32 checksum = new CRC32();
+            checksum.update(record, 0, length);
+            return checksum.getValue() == crc ? record : null;
+        } catch (final EOFException exception) {
+            return null;
+        }
+    }
+
+    private void apply(@NonNull final byte[] record) throws IOException {
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+        final byte op = input.readByte();
+        final String key = input.readUTF();
+        if (op == OP_ADD) {
+            final String type = input.readUTF();
+            final long expiresAt = input.readLong();
+            final byte[] payload = new byte[input.readInt()];
+            input.readFully(payload);
+            mEntries.put(key, new OutboxEntry(key, type, expiresAt, payload));
+        } else if (op == OP_DONE) {
+            final OutboxEntry entry = mEntries.remove(key);
+            if (entry != null) {
+                entry.wipe();
+            }
+            mDoneRecords++;
+        }
+        Arrays.fill(record, (byte) 0);
+    }
+
+    private void compact() throws IOException {
+        final File temp = new File(mFile.getPath() + ".tmp");
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (FileOutputStream output = new FileOutputStream(temp, false)) {
+            for (final OutboxEntry entry : mEntries.values()) {
+                writeRecord(buffer, encodeAdd(entry));
+            }
+            buffer.writeTo(output);
+            output.getFD().sync();
+        } finally {
+            wipe(buffer);
+        }
+
+        mOutput.close();
+        try {
+            if (!temp.renameTo(mFile)) {
+                throw new IOException("Failed to replace outbox journal.");
+            }
+            mDoneRecords = 0;
+        } finally {
+            mOutput = new FileOutputStream(mFile, true);
+        }
+    }
+
+    @NonNull
+    private static byte[] encodeAdd(@NonNull final OutboxEntry entry) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 + entry.getPayload().length);
+        final DataOutputStream output = new DataOutputStream(buffer);
+        output.writeByte(OP_ADD);
+        output.writeUTF(entry.getKey());
+        output.writeUTF(entry.getType());
+        output.writeLong(entry.getExpiresAt());
+        output.writeInt(entry.getPayload().length);
+        output.write(entry.getPayload());
+        return buffer.toByteArray();
+    }
+
+    @NonNull
+    private static byte[] encodeDone(@NonNull final String key) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        final DataOutputStream output = new DataOutputStream(buffer);
+        output.writeByte(OP_DONE);
+        output.writeUTF(key);
+        return buffer.toByteArray();
+    }
+
+    private static void writeRecord(@NonNull final ByteArrayOutputStream buffer,
+                                    @NonNull final byte[] record) throws IOException {
+        final CRC32 checksum = new CRC32();
+        checksum.update(record, 0, record.length);
+
+        final DataOutputStream output = new DataOutputStream(buffer);
+        output.writeInt(record.length);
+        output.writeInt((int) checksum.getValue());
+        output.write(record);
+        Arrays.fill(record, (byte) 0);
+    }
+
+    private static void wipe(@NonNull final ByteArrayOutputStream buffer) {
+        // Payload may hold secrets, do not leave copies in released buffers.
+        final byte[] zeroes = new byte[buffer.size()];
+        buffer.reset();
+        buffer.write(zeroes, 0, zeroes.length);
+        buffer.reset();
+    }
+
+    //endregion
+}
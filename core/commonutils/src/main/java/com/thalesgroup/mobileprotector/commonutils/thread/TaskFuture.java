@@ -0,0 +1,446 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.thread;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of asynchronous operation which can be chained, raced and timed out.
+ * <p>
+ * Light weight replacement of {@code CompletableFuture}, which is not available on all supported API levels.
+ * Continuations registered with {@link #whenComplete(Callback)} run on the thread which completed the future,
+ * continuations registered with {@link #onMainThread(Callback)} always run on the main UI thread.
+ *
+ * @param <T> Type of the result.
+ */
+public final class TaskFuture<T> implements Future<T> {
+
+    /**
+     * Completion callback.
+     *
+     * @param <T> Type of the result.
+     */
+    public interface Callback<T> {
+        /**
+         * Called once the future is completed.
+         *
+         * @param result Result of the operation or {@code null} in case of error.
+         * @param error  Error or {@code null} in case of success.
+         */
+        void onFinished(@Nullable T result, @Nullable Throwable error);
+    }
+
+    /**
+     * Synchronous transformation of the result.
+     *
+     * @param <T> Type of the input.
+     * @param <R> Type of the output.
+     */
+    public interface Function<T, R> {
+        R apply(T value) throws Exception;
+    }
+
+    /**
+     * Asynchronous transformation of the result.
+     *
+     * @param <T> Type of the input.
+     * @param <R> Type of the output.
+     */
+    public interface AsyncFunction<T, R> {
+        TaskFuture<R> apply(T value) throws Exception;
+    }
+
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    private final List<Callback<? super T>> mCallbacks = new ArrayList<>();
+    private boolean mCompleted;
+    private T mResult;
+    private Throwable mError;
+
+    //region Factory
+
+    /**
+     * Creates a new, not yet completed future.
+     *
+     * @param <T> Type of the result.
+     * @return Future to be completed by {@link #complete(Object)} or {@link #fail(Throwable)}.
+     */
+    @NonNull
+    public static <T> TaskFuture<T> create() {
+        return new TaskFuture<>();
+    }
+
+    /**
+     * Creates future already completed with given value.
+     *
+     * @param value Result value.
+     * @param <T>   Type of the result.
+     * @return Completed future.
+     */
+    @NonNull
+    public static <T> TaskFuture<T> completed(@Nullable final T value) {
+        final TaskFuture<T> retValue = new TaskFuture<>();
+        retValue.complete(value);
+        return retValue;
+    }
+
+    /**
+     * Creates future already completed with given error.
+     *
+     * @param error Error.
+     * @param <T>   Type of the result.
+     * @return Failed future.
+     */
+    @NonNull
+    public static <T> TaskFuture<T> failed(@NonNull final Throwable error) {
+        final TaskFuture<T> retValue = new TaskFuture<>();
+        retValue.fail(error);
+        return retValue;
+    }
+
+    /**
+     * Races given futures.
+     *
+     * @param futures Futures to race.
+     * @param <T>     Type of the result.
+     * @return Future completed with the first successful result, or with the last error if all futures fail.
+     */
+    @SafeVarargs
+    @NonNull
+    public static <T> TaskFuture<T> anyOf(@NonNull final TaskFuture<? extends T>... futures) {
+        final TaskFuture<T> retValue = new TaskFuture<>();
+        final int[] remaining = { futures.length };
+
+        for (final TaskFuture<? extends T> future : futures) {
+            future.whenComplete((result, error) -> {
+                if (error == null) {
+                    retValue.complete(result);
+                } else {
+                    final boolean last;
+                    synchronized (remaining) {
+                        last = --remaining[0] == 0;
+                    }
+                    if (last) {
+                        retValue.fail(error);
+                    }
+                }
+            });
+        }
+
+        return retValue;
+    }
+
+    //endregion
+
+    //region Completion
+
+    /**
+     * Completes the future with given value. Does nothing if the future was already completed.
+     *
+     * @param value Result value.
+     * @return {@code True} if this call completed the future.
+     */
+    public boolean complete(@Nullable final T value) {
+        return finish(value, null);
+    }
+
+    /**
+     * Completes the future with given error. Does nothing if the future was already completed.
+     *
+     * @param error Error.
+     * @return {@code True} if this call completed the future.
+     */
+    public boolean fail(@NonNull final Throwable error) {
+        return finish(null, error);
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        return fail(new CancellationException());
+    }
+
+    @Override
+    public boolean isCancelled() {
+        synchronized (this) {
+            return mError instanceof CancellationException;
+        }
+    }
+
+    @Override
+    public boolean isDone() {
+        synchronized (this) {
+            return mCompleted;
+        }
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        mDone.await();
+        return getResult();
+    }
+
+    @Override
+    public T get(final long timeout, @NonNull final TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!mDone.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResult();
+    }
+
+    //endregion
+
+    //region Continuations
+
+    /**
+     * Registers callback executed on the thread which completes the future, or immediately on current thread if the
+     * future is already completed.
+     *
+     * @param callback Completion callback.
+     * @return This future for chaining.
+     */
+    @NonNull
+    public TaskFuture<T> whenComplete(@NonNull final Callback<? super T> callback) {
+        synchronized (this) {
+            if (!mCompleted) {
+                mCallbacks.add(callback);
+                return this;
+            }
+        }
+
+        callback.onFinished(mResult, mError);
+        return this;
+    }
+
+    /**
+     * Registers callback executed on the main UI thread once the future is completed.
+     *
+     * @param callback Completion callback.
+     * @return This future for chaining.
+     */
+    @NonNull
+    public TaskFuture<T> onMainThread(@NonNull final Callback<? super T> callback) {
+        return whenComplete((result, error) -> ExecutionService.getExecutionService()
+                .runOnMainUiThread(() -> callback.onFinished(result, error)));
+    }
+
+    /**
+     * Transforms the result once it's available. Errors are propagated without calling the function.
+     *
+     * @param function Transformation executed on the thread which completes this future.
+     * @param <R>      Type of the transformed result.
+     * @return New future with transformed result.
+     */
+    @NonNull
+    public <R> TaskFuture<R> thenApply(@NonNull final Function<? super T, ? extends R> function) {
+        final TaskFuture<R> retValue = new TaskFuture<>();
+        whenComplete((result, error) -> {
+            if (error != null) {
+                retValue.fail(error);
+                return;
+            }
+
+            try {
+                retValue.complete(function.apply(result));
+            } catch (final Exception exception) {
+                retValue.fail(exception);
+            }
+        });
+        return propagateCancellation(retValue);
+    }
+
+    /**
+     * Replaces error with a value computed from it. Successful result is propagated without calling the function.
+     * The function may rethrow the error, e.g. to keep {@link CancellationException}.
+     *
+     * @param function Recovery executed on the thread which completes this future.
+     * @return New future completed with the result or with the recovered value.
+     */
+    @NonNull
+    public TaskFuture<T> recover(@NonNull final Function<Throwable, ? extends T> function) {
+        final TaskFuture<T> retValue = new TaskFuture<>();
+        whenComplete((result, error) -> {
+            if (error == null) {
+                retValue.complete(result);
+                return;
+            }
+
+            try {
+                retValue.complete(function.apply(error));
+            } catch (final Exception exception) {
+                retValue.fail(exception);
+            }
+        });
+        return propagateCancellation(retValue);
+    }
+
+    /**
+     * Replaces error with result of another asynchronous operation. Successful result is propagated without calling
+     * the function.
+     *
+     * @param function Function starting the fallback operation. May rethrow the error.
+     * @return New future completed with the result or with the result of the fallback operation.
+     */
+    @NonNull
+    public TaskFuture<T> recoverWith(@NonNull final AsyncFunction<Throwable, T> function) {
+        final TaskFuture<T> retValue = new TaskFuture<>();
+        whenComplete((result, error) -> {
+            if (error == null) {
+                retValue.complete(result);
+                return;
+            }
+
+            try {
+                final TaskFuture<T> next = function.apply(error);
+                next.whenComplete((nextResult, nextError) -> {
+                    if (nextError == null) {
+                        retValue.complete(nextResult);
+                    } else {
+                        retValue.fail(nextError);
+                    }
+                });
+                next.propagateCancellation(retValue);
+            } catch (final Exception exception) {
+                retValue.fail(exception);
+            }
+        });
+        return propagateCancellation(retValue);
+    }
+
+    /**
+     * Chains another asynchronous operation once the result is available. Errors are propagated without calling the
+     * function.
+     *
+     * @param function Function starting next operation.
+     * @param <R>      Type of the result of next operation.
+     * @return New future completed with the result of next operation.
+     */
+    @NonNull
+    public <R> TaskFuture<R> thenCompose(@NonNull final AsyncFunction<? super T, R> function) {
+        final TaskFuture<R> retValue = new TaskFuture<>();
+        whenComplete((result, error) -> {
+            if (error != null) {
+                retValue.fail(error);
+                return;
+            }
+
+            try {
+                final TaskFuture<R> next = function.apply(result);
+                next.whenComplete((nextResult, nextError) -> {
+                    if (nextError == null) {
+                        retValue.complete(nextResult);
+                    } else {
+                        retValue.fail(nextError);
+                    }
+                });
+                next.propagateCancellation(retValue);
+            } catch (final Exception exception) {
+                retValue.fail(exception);
+            }
+        });
+        return propagateCancellation(retValue);
+    }
+
+    /**
+     * Fails the future with {@link TimeoutException} if it's not completed in given time. Timeout drops the work
+     * this future waits for the same way as {@link #cancel(boolean)} does. Pending timeout is removed once the future
+     * completes, so the main looper does not keep completed future and its result reachable.
+     *
+     * @param timeout Timeout.
+     * @param unit    Timeout unit.
+     * @return This future for chaining.
+     */
+    @NonNull
+    public TaskFuture<T> withTimeout(final long timeout, @NonNull final TimeUnit unit) {
+        final ExecutionService executionService = ExecutionService.getExecutionService();
+        final Runnable timeoutRunnable = () -> fail(new TimeoutException());
+        executionService.runOnMainUiThread(timeoutRunnable, unit.toMillis(timeout));
+        whenComplete((result, error) -> executionService.removeMainUiCallbacks(timeoutRunnable));
+        return this;
+    }
+
+    //endregion
+
+    //region Private Helpers
+
+    /**
+     * Cancels this future once derived future is cancelled or timed out, so cancelling the end of a chain, e.g. by
+     * {@link TaskScope#cancelAll()}, also drops the work it waits for.
+     */
+    private <R> TaskFuture<R> propagateCancellation(@NonNull final TaskFuture<R> derived) {
+        derived.whenComplete((result, error) -> {
+            if (error instanceof CancellationException || error instanceof TimeoutException) {
+                cancel(false);
+            }
+        });
+        return derived;
+    }
+
+    private boolean finish(@Nullable final T result, @Nullable final Throwable error) {
+        final List<Callback<? super T>> callbacks;
+        synchronized (this) {
+            if (mCompleted) {
+                return false;
+            }
+
+            mCompleted = true;
+            mResult = result;
+            mError = error;
+            callbacks = new ArrayList<>(mCallbacks);
+            mCallbacks.clear();
+        }
+
+        mDone.countDown();
+        for (final Callback<? super T> callback : callbacks) {
+            callback.onFinished(result, error);
+        }
+        return true;
+    }
+
+    private T getResult() throws ExecutionException {
+        synchronized (this) {
+            if (mError instanceof CancellationException) {
+                throw (CancellationException) mError;
+            } else if (mError != null) {
+                throw new ExecutionException(mError);
+            }
+            return mResult;
+        }
+    }
+
+    //endregion
+}
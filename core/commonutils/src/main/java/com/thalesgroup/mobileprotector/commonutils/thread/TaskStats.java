@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.thread;
+
+import android.support.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Immutable snapshot of {@link TaskMetrics} for single tag. All times are in microseconds.
+ */
+public final class TaskStats {
+    private final String mTag;
+    private final long mCount;
+    private final int mQueueDepth;
+    private final int mPeakQueueDepth;
+    private final long mDropped;
+    private final long[] mWait;
+    private final long[] mRun;
+
+    TaskStats(@NonNull final String tag,
+              final long count,
+              final int queueDepth,
+              final int peakQueueDepth,
+              final long dropped,
+              @NonNull final long[] wait,
+              @NonNull final long[] run) {
+        mTag = tag;
+        mCount = count;
+        mQueueDepth = queueDepth;
+        mPeakQueueDepth = peakQueueDepth;
+        mDropped = dropped;
+        mWait = wait;
+        mRun = run;
+    }
+
+    public String getTag() {
+        return mTag;
+    }
+
+    /**
+     * @return Number of finished tasks.
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return Number of tasks waiting in queue at the time of the snapshot.
+     */
+    public int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    /**
+     * @return Highest number of tasks waiting in queue at the same time.
+     */
+    public int getPeakQueueDepth() {
+        return mPeakQueueDepth;
+    }
+
+    /**
+     * @return Number of tasks dropped without running, because they were cancelled or timed out while waiting in queue.
+     */
+    public long getDropped() {
+        return mDropped;
+    }
+
+    public long getWaitP50() {
+        return mWait[0];
+    }
+
+    public long getWaitP95() {
+        return mWait[1];
+    }
+
+    public long getWaitP99() {
+        return mWait[2];
+    }
+
+    public long getRunP50() {
+        return mRun[0];
+    }
+
+    public long getRunP95() {
+        return mRun[1];
+    }
+
+    public long getRunP99() {
+        return mRun[2];
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%s: count=%d depth=%d peak=%d dropped=%d wait[p50=%.1fms p95=%.1fms p99=%.1fms] run[p50=%.1fms p95=%.1fms p99=%.1fms]",
+                mTag, mCount, mQueueDepth, mPeakQueueDepth, mDropped,
+                mWait[0] / 1000.0, mWait[1] / 1000.0, mWait[2] / 1000.0,
+                mRun[0] / 1000.0, mRun[1] / 1000.0, mRun[2] / 1000.0);
+    }
+}
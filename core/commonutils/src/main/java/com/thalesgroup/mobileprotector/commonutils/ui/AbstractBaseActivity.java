@@ -43,6 +43,7 @@ import com.gemalto.commonutils.R;
 import com.gemalto.idp.mobile.core.ApplicationContextHolder;
 import com.gemalto.idp.mobile.otp.oath.soft.SoftOathToken;
 import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.commonutils.thread.TaskScope;
 
 import java.util.Objects;
 
@@ -53,6 +54,7 @@ public abstract class AbstractBaseActivity extends AbstractBaseActivityPermissio
 
     private ProgressDialog mProgressDialog = null;
     private String mLastDialogFragmentTag = null;
+    private final TaskScope mTaskScope = new TaskScope();
 
     //region AbstractBaseActivity
 
@@ -78,6 +80,16 @@ public abstract class AbstractBaseActivity extends AbstractBaseActivityPermissio
         return null;
     }
 
+    /**
+     * Gets scope of asynchronous work bound to this activity. All work in the scope is cancelled once the activity is
+     * paused or destroyed, so results are not delivered to a screen which is no longer visible.
+     *
+     * @return Task scope of this activity.
+     */
+    protected TaskScope getTaskScope() {
+        return mTaskScope;
+    }
+
     protected void hideKeyboard() {
         View view = this.getCurrentFocus();
         if (view != null) {
@@ -189,6 +201,21 @@ public abstract class AbstractBaseActivity extends AbstractBaseActivityPermissio
     }
 
 
+    @Override
+    protected void onPause() {
+        // User can't see results of any pending work anymore.
+        mTaskScope.cancelAll();
+
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        mTaskScope.cancelAll();
+
+        super.onDestroy();
+    }
+
     @Override
     protected void initApplication() {
         super.initApplication();
@@ -0,0 +1,152 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTransportTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final ScriptedTransport mDelegate = new ScriptedTransport();
+
+    @Test
+    public void lateSuccessDoesNotCloseOpenedCircuit() throws Exception {
+        final CircuitBreakerTransport transport = new CircuitBreakerTransport(mDelegate, 1, 60000);
+        final Call slow = mDelegate.script("slow", true);
+        final Thread slowThread = send(transport, "slow");
+        assertTrue("slow request sent", slow.mEntered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        mDelegate.script("failing", false).mRelease.countDown();
+        send(transport, "failing").join();
+        assertEquals(CircuitBreakerTransport.State.OPEN, transport.getState());
+
+        slow.mRelease.countDown();
+        slowThread.join();
+        assertEquals(CircuitBreakerTransport.State.OPEN, transport.getState());
+    }
+
+    @Test
+    public void lateFailureDoesNotReopenHalfOpenCircuit() throws Exception {
+        final CircuitBreakerTransport transport = new CircuitBreakerTransport(mDelegate, 1, 50);
+        final Call slow = mDelegate.script("slow", false);
+        final Thread slowThread = send(transport, "slow");
+        assertTrue("slow request sent", slow.mEntered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        mDelegate.script("failing", false).mRelease.countDown();
+        send(transport, "failing").join();
+        assertEquals(CircuitBreakerTransport.State.OPEN, transport.getState());
+
+        Thread.sleep(100);
+        final Call probe = mDelegate.script("probe", true);
+        final Thread probeThread = send(transport, "probe");
+        assertTrue("probe sent", probe.mEntered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(CircuitBreakerTransport.State.HALF_OPEN, transport.getState());
+
+        slow.mRelease.countDown();
+        slowThread.join();
+        assertEquals(CircuitBreakerTransport.State.HALF_OPEN, transport.getState());
+
+        probe.mRelease.countDown();
+        probeThread.join();
+        assertEquals(CircuitBreakerTransport.State.CLOSED, transport.getState());
+    }
+
+    //region Private Helpers
+
+    @NonNull
+    private static Thread send(@NonNull final HttpTransport transport, @NonNull final String path) {
+        final Thread retValue = new Thread(() -> {
+            try {
+                transport.execute(new HttpRequest("GET", "http://localhost/" + path,
+                        new HashMap<String, String>(), null)).close();
+            } catch (final IOException exception) {
+                // Failure is scripted.
+            }
+        });
+        retValue.start();
+        return retValue;
+    }
+
+    /**
+     * Scripted outcome of a request.
+     */
+    private static final class Call {
+        private final CountDownLatch mEntered = new CountDownLatch(1);
+        private final CountDownLatch mRelease = new CountDownLatch(1);
+        private final boolean mSuccess;
+
+        Call(final boolean success) {
+            mSuccess = success;
+        }
+    }
+
+    /**
+     * Transport which holds each request until released and then completes it as scripted for its path.
+     */
+    private static final class ScriptedTransport implements HttpTransport {
+        private final Map<String, Call> mCalls = Collections.synchronizedMap(new HashMap<String, Call>());
+
+        @NonNull
+        Call script(@NonNull final String path, final boolean success) {
+            final Call retValue = new Call(success);
+            mCalls.put("http://localhost/" + path, retValue);
+            return retValue;
+        }
+
+        @NonNull
+        @Override
+        public HttpResponse execute(@NonNull final HttpRequest request) throws IOException {
+            final Call call = mCalls.get(request.getUrl());
+            call.mEntered.countDown();
+            try {
+                call.mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (!call.mSuccess) {
+                throw new IOException("Scripted failure");
+            }
+            return new HttpResponse(200, Collections.<String, String>emptyMap(), null);
+        }
+    }
+
+    //endregion
+}
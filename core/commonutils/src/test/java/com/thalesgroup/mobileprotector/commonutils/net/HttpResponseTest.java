@@ -0,0 +1,96 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpResponseTest {
+
+    @Test
+    public void closeDrainsSmallBodyToEnd() throws IOException {
+        final CountingStream body = new CountingStream(HttpResponse.MAX_DRAIN_SIZE);
+        new HttpResponse(200, Collections.<String, String>emptyMap(), body).close();
+
+        assertTrue("end of body reached", body.mEndReached);
+        assertEquals(HttpResponse.MAX_DRAIN_SIZE, body.mRead);
+        assertTrue("stream closed", body.mClosed);
+    }
+
+    @Test
+    public void closeStopsDrainingLargeBody() throws IOException {
+        final CountingStream body = new CountingStream(64L * 1024 * 1024);
+        new HttpResponse(200, Collections.<String, String>emptyMap(), body).close();
+
+        assertTrue("drain bounded", body.mRead <= HttpResponse.MAX_DRAIN_SIZE + 1);
+        assertTrue("stream closed", body.mClosed);
+    }
+
+    /**
+     * Body of given size which records how much of it was read.
+     */
+    private static final class CountingStream extends InputStream {
+        private final long mSize;
+        private long mRead;
+        private boolean mEndReached;
+        private boolean mClosed;
+
+        CountingStream(final long size) {
+            mSize = size;
+        }
+
+        @Override
+        public int read() {
+            final byte[] buffer = new byte[1];
+            return read(buffer, 0, 1) == -1 ? -1 : buffer[0];
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) {
+            if (mRead == mSize) {
+                mEndReached = true;
+                return -1;
+            }
+
+            final int retValue = (int) Math.min(length, mSize - mRead);
+            mRead += retValue;
+            return retValue;
+        }
+
+        @Override
+        public void close() {
+            mClosed = true;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonFieldReaderTest {
+    private static final long LIMIT = 64 * 1024;
+
+    //region Valid input
+
+    @Test
+    public void readsSelectedFields() throws IOException {
+        final Map<String, String> fields = read("{\"status\":\"Success\",\"code\":42,\"ok\":true,\"message\":\"Done\"}",
+                "status", "message", "code", "ok");
+
+        assertEquals("Success", fields.get("status"));
+        assertEquals("Done", fields.get("message"));
+        assertEquals("42", fields.get("code"));
+        assertEquals("true", fields.get("ok"));
+    }
+
+    @Test
+    public void skipsNestedValuesAndIgnoresContainerFields() throws IOException {
+        final Map<String, String> fields = read("{\"a\":{\"b\":[1,\"}\",{\"c\":null}]},\"status\":[1,2],\"message\":\"x\"}",
+                "status", "message");
+
+        assertFalse(fields.containsKey("status"));
+        assertEquals("x", fields.get("message"));
+    }
+
+    @Test
+    public void decodesEscapesAndUtf8() throws IOException {
+        final Map<String, String> fields = read("{\"message\":\"a\\\"b\\\\c\\n\\u00e9\u20ac\uD83D\uDE00\"}", "message");
+
+        assertEquals("a\"b\\c\n\u00e9\u20ac\uD83D\uDE00", fields.get("message"));
+    }
+
+    @Test
+    public void keepsFirstOfDuplicateFields() throws IOException {
+        final Map<String, String> fields = read("{\"status\":\"first\",\"status\":\"second\",\"message\":\"m\"}",
+                "status", "message");
+
+        assertEquals("first", fields.get("status"));
+    }
+
+    @Test
+    public void omitsMissingAndNullFields() throws IOException {
+        final Map<String, String> fields = read("{\"status\":null,\"other\":1}", "status", "message");
+
+        assertTrue(fields.isEmpty());
+    }
+
+    @Test
+    public void omitsTooLongValue() throws IOException {
+        final Map<String, String> fields = read("{\"message\":\"" + repeat('a', 5000) + "\",\"status\":\"s\"}",
+                "message", "status");
+
+        assertFalse(fields.containsKey("message"));
+        assertEquals("s", fields.get("status"));
+    }
+
+    @Test
+    public void stopsReadingOnceAllFieldsAreFound() throws IOException {
+        final CountingStream stream = new CountingStream("{\"status\":\"Success\",\"message\":\"m\",\"padding\":\"",
+                10 * 1024 * 1024);
+
+        final Map<String, String> fields = JsonFieldReader.readFields(stream, LIMIT, "status", "message");
+
+        assertEquals("Success", fields.get("status"));
+        assertTrue(stream.mRead < LIMIT);
+    }
+
+    @Test
+    public void acceptsNestingUpToLimit() throws IOException {
+        final Map<String, String> fields = read("{\"a\":" + repeat('[', 31) + repeat(']', 31) + ",\"status\":\"s\"}",
+                "status");
+
+        assertEquals("s", fields.get("status"));
+    }
+
+    //endregion
+
+    //region Limits
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnBodyOverLimit() throws IOException {
+        JsonFieldReader.readFields(new CountingStream("{\"padding\":\"", 10 * 1024 * 1024), LIMIT, "status");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnFieldBehindLimit() throws IOException {
+        read("{\"padding\":\"" + repeat('a', (int) LIMIT) + "\",\"status\":\"s\"}", "status");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnDeepNesting() throws IOException {
+        read("{\"a\":" + repeat('[', 100000) + repeat(']', 100000) + ",\"status\":\"s\"}", "status");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnTooLongLiteral() throws IOException {
+        read("{\"status\":" + repeat('1', 5000) + "}", "status");
+    }
+
+    //endregion
+
+    //region Malformed input
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnEmptyBody() throws IOException {
+        read("", "status");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnTopLevelArray() throws IOException {
+        read("[\"status\"]", "status");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnTruncatedString() throws IOException {
+        read("{\"status\":\"Succ", "status");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnTruncatedFieldName() throws IOException {
+        read("{\"sta", "status");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnTruncatedEscape() throws IOException {
+        read("{\"status\":\"a\\", "status");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnTruncatedUnicodeEscape() throws IOException {
+        read("{\"status\":\"\\u12", "status");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnInvalidUnicodeEscape() throws IOException {
+        read("{\"status\":\"\\u12G4\"}", "status");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnInvalidEscape() throws IOException {
+        read("{\"status\":\"\\x\"}", "status");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnUnescapedControlCharacter() throws IOException {
+        read("{\"status\":\"a\nb\"}", "status");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnInvalidLiteral() throws IOException {
+        read("{\"status\":truthy}", "status");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnMissingSeparator() throws IOException {
+        read("{\"other\":1 \"status\":\"s\"}", "status");
+    }
+
+    //endregion
+
+    //region Non UTF-8 input
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnLatin1Input() throws IOException {
+        readBytes("{\"status\":\"caf\u00e9\"}".getBytes(StandardCharsets.ISO_8859_1), "status");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnInvalidLeadingByte() throws IOException {
+        readBytes(new byte[]{'{', '"', 's', '"', ':', '"', (byte) 0xFF, '"', '}'}, "s");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnTruncatedUtf8Sequence() throws IOException {
+        readBytes(new byte[]{'{', '"', 's', '"', ':', '"', (byte) 0xE2, (byte) 0x82, '"', '}'}, "s");
+    }
+
+    @Test(expected = MalformedJsonException.class)
+    public void failsOnUtf16Input() throws IOException {
+        readBytes("{\"status\":\"s\"}".getBytes(StandardCharsets.UTF_16), "status");
+    }
+
+    //endregion
+
+    //region Private Helpers
+
+    private static Map<String, String> read(final String json, final String... names) throws IOException {
+        return readBytes(json.getBytes(StandardCharsets.UTF_8), names);
+    }
+
+    private static Map<String, String> readBytes(final byte[] json, final String... names) throws IOException {
+        return JsonFieldReader.readFields(new ByteArrayInputStream(json), LIMIT, names);
+    }
+
+    private static String repeat(final char character, final int count) {
+        final StringBuilder builder = new StringBuilder(count);
+        for (int index = 0; index < count; index++) {
+            builder.append(character);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Stream of given prefix followed by filler bytes, counting how much was read.
+     */
+    private static final class CountingStream extends InputStream {
+        private final byte[] mPrefix;
+        private final long mLength;
+        private long mRead;
+
+        CountingStream(final String prefix, final long length) {
+            mPrefix = prefix.getBytes(StandardCharsets.UTF_8);
+            mLength = length;
+        }
+
+        @Override
+        public int read() {
+            if (mRead >= mLength) {
+                return -1;
+            }
+            final long position = mRead++;
+            return position < mPrefix.length ? mPrefix[(int) position] : 'a';
+        }
+    }
+
+    //endregion
+}
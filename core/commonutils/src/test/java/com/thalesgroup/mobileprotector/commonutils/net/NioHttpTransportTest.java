@@ -0,0 +1,291 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.net;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NioHttpTransportTest {
+    private static final String NO_RESPONSE = "";
+
+    private final BlockingQueue<String> mResponses = new LinkedBlockingQueue<>();
+    private final List<String> mRequests = Collections.synchronizedList(new ArrayList<String>());
+    private final List<Socket> mSockets = Collections.synchronizedList(new ArrayList<Socket>());
+    private final AtomicInteger mConnections = new AtomicInteger();
+    private ServerSocket mServer;
+    private NioHttpTransport mTransport;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final Thread thread = new Thread(this::accept, "NioHttpTransportTest");
+        thread.setDaemon(true);
+        thread.start();
+
+        mTransport = new NioHttpTransport(1000, 300);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mTransport.shutdown();
+        mServer.close();
+        synchronized (mSockets) {
+            for (final Socket socket : mSockets) {
+                socket.close();
+            }
+        }
+    }
+
+    //region Responses
+
+    @Test
+    public void readsContentLengthBody() throws IOException {
+        mResponses.add("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello");
+
+        final byte[] body = "{\"otp\":\"123456\"}".getBytes(StandardCharsets.UTF_8);
+        try (HttpResponse response = mTransport.execute(new HttpRequest("POST", getUrl(),
+                new HashMap<String, String>(), HttpRequest.bodyOf("application/json", body)))) {
+            assertEquals(200, response.getStatusCode());
+            assertEquals("5", response.getHeader("Content-Length"));
+            assertEquals("hello", response.getBodyAsString());
+        }
+        assertEquals("POST /verify {\"otp\":\"123456\"}", mRequests.get(0));
+    }
+
+    @Test
+    public void readsChunkedBody() throws IOException {
+        mResponses.add("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5\r\nhello\r\n6;ext=1\r\n world\r\n0\r\nTrailer: x\r\n\r\n");
+
+        try (HttpResponse response = mTransport.execute(get())) {
+            assertEquals("hello world", response.getBodyAsString());
+        }
+    }
+
+    @Test
+    public void reusesKeepAliveConnection() throws IOException {
+        mResponses.add("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nfirst");
+        mResponses.add("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n6\r\nsecond\r\n0\r\n\r\n");
+        mResponses.add("HTTP/1.1 204 No Content\r\n\r\n");
+
+        try (HttpResponse response = mTransport.execute(get())) {
+            assertEquals("first", response.getBodyAsString());
+        }
+        try (HttpResponse response = mTransport.execute(get())) {
+            assertEquals("second", response.getBodyAsString());
+        }
+        try (HttpResponse response = mTransport.execute(get())) {
+            assertEquals(204, response.getStatusCode());
+        }
+
+        assertEquals(3, mRequests.size());
+        assertEquals(1, mConnections.get());
+    }
+
+    @Test
+    public void opensNewConnectionAfterConnectionClose() throws IOException {
+        mResponses.add("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 5\r\n\r\nfirst");
+        mResponses.add("HTTP/1.1 200 OK\r\nContent-Length: 6\r\n\r\nsecond");
+
+        try (HttpResponse response = mTransport.execute(get())) {
+            assertEquals("first", response.getBodyAsString());
+        }
+        try (HttpResponse response = mTransport.execute(get())) {
+            assertEquals("second", response.getBodyAsString());
+        }
+
+        assertEquals(2, mConnections.get());
+    }
+
+    //endregion
+
+    //region Failures
+
+    @Test
+    public void failsOnReadTimeoutAsSentRequest() throws IOException {
+        mResponses.add(NO_RESPONSE);
+
+        final long start = System.nanoTime();
+        try {
+            mTransport.execute(get()).close();
+            fail("Response without data must time out");
+        } catch (final SocketTimeoutException exception) {
+            // Request reached the server, so it's not reported as safe to repeat.
+        }
+
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Timed out after " + elapsed + " ms", elapsed < 5000);
+        assertEquals(1, mRequests.size());
+    }
+
+    @Test(expected = RequestNotSentException.class)
+    public void failsRefusedConnectionAsNotSent() throws IOException {
+        final int port = mServer.getLocalPort();
+        mServer.close();
+
+        mTransport.execute(new HttpRequest("GET", String.format(Locale.US, "http://127.0.0.1:%d/verify", port),
+                new HashMap<String, String>(), null)).close();
+    }
+
+    //endregion
+
+    //region Private Helpers
+
+    private String getUrl() {
+        return String.format(Locale.US, "http://127.0.0.1:%d/verify", mServer.getLocalPort());
+    }
+
+    private HttpRequest get() {
+        return new HttpRequest("GET", getUrl(), new HashMap<String, String>(), null);
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                final Socket socket = mServer.accept();
+                mConnections.incrementAndGet();
+                mSockets.add(socket);
+
+                final Thread thread = new Thread(() -> serve(socket), "NioHttpTransportTest-connection");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (final IOException exception) {
+            // Server closed.
+        }
+    }
+
+    /**
+     * Answers requests of one connection with queued responses, until either side closes it.
+     */
+    private void serve(final Socket socket) {
+        try (Socket closing = socket) {
+            final InputStream input = closing.getInputStream();
+            final OutputStream output = closing.getOutputStream();
+            while (true) {
+                final String request = readRequest(input);
+                if (request == null) {
+                    return;
+                }
+                mRequests.add(request);
+
+                final String response = mResponses.poll(5, TimeUnit.SECONDS);
+                if (response == null || NO_RESPONSE.equals(response)) {
+                    // Keep the connection open without answering, until the client gives up.
+                    while (input.read() != -1) {
+                        // Drain.
+                    }
+                    return;
+                }
+
+                output.write(response.getBytes(StandardCharsets.ISO_8859_1));
+                output.flush();
+                if (response.contains("Connection: close")) {
+                    return;
+                }
+            }
+        } catch (final IOException | InterruptedException exception) {
+            // Connection dropped by the client or by tear down.
+        }
+    }
+
+    /**
+     * Reads request as method, target and body separated by spaces.
+     *
+     * @return Request or {@code null} at the end of stream.
+     */
+    private static String readRequest(final InputStream input) throws IOException {
+        final String requestLine = readLine(input);
+        if (requestLine == null) {
+            return null;
+        }
+
+        int contentLength = 0;
+        String line;
+        while ((line = readLine(input)) != null && !line.isEmpty()) {
+            final int colon = line.indexOf(':');
+            if (line.substring(0, colon).equalsIgnoreCase("Content-Length")) {
+                contentLength = Integer.parseInt(line.substring(colon + 1).trim());
+            }
+        }
+
+        final byte[] body = new byte[contentLength];
+        int offset = 0;
+        while (offset < contentLength) {
+            final int read = input.read(body, offset, contentLength - offset);
+            if (read == -1) {
+                return null;
+            }
+            offset += read;
+        }
+
+        final String[] parts = requestLine.split(" ");
+        final String retValue = parts[0] + ' ' + parts[1];
+        return contentLength == 0 ? retValue : retValue + ' ' + new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static String readLine(final InputStream input) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int value;
+        while ((value = input.read()) != -1) {
+            if (value == '\n') {
+                final byte[] bytes = line.toByteArray();
+                final int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+            line.write(value);
+        }
+        return null;
+    }
+
+    //endregion
+}
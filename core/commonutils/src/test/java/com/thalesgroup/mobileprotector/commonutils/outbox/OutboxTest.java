@@ -0,0 +1,145 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.outbox;
+
+import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.commonutils.thread.Lane;
+import com.thalesgroup.mobileprotector.commonutils.thread.TaskFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OutboxTest {
+    private static final String TYPE = "test";
+
+    private final AtomicInteger mDelivered = new AtomicInteger();
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private final List<TaskFuture<Void>> mBlockers = new ArrayList<>();
+    private File mFile;
+    private Outbox mOutbox;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("outbox", ".journal");
+        assertTrue(mFile.delete());
+
+        // Entry is written through the journal directly, enqueue needs main looper for its sync window.
+        final OutboxJournal journal = new OutboxJournal(mFile);
+        journal.commit(Collections.singletonList(new OutboxEntry("key", TYPE, Long.MAX_VALUE, new byte[]{1})),
+                Collections.<String>emptyList());
+        journal.close();
+
+        mOutbox = new Outbox(mFile);
+        mOutbox.registerDeliverer(TYPE, entry -> mDelivered.incrementAndGet());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        releaseLane();
+        assertTrue(mFile.delete() || !mFile.exists());
+    }
+
+    @Test
+    public void drainsAgainAfterRejectedDrain() throws Exception {
+        blockLane(true);
+
+        try {
+            mOutbox.drain().get(5, TimeUnit.SECONDS);
+            fail("Drain must be rejected by full lane");
+        } catch (final ExecutionException exception) {
+            assertTrue(exception.getCause() instanceof RejectedExecutionException);
+        }
+
+        releaseLane();
+        assertEquals(1, (int) mOutbox.drain().get(5, TimeUnit.SECONDS));
+        assertEquals(1, mDelivered.get());
+    }
+
+    @Test
+    public void drainsAgainAfterCancelledDrain() throws Exception {
+        blockLane(false);
+
+        // Queued drain is dropped without running.
+        assertTrue(mOutbox.drain().cancel(false));
+
+        releaseLane();
+        assertEquals(1, (int) mOutbox.drain().get(5, TimeUnit.SECONDS));
+        assertEquals(1, mDelivered.get());
+    }
+
+    //region Private Helpers
+
+    /**
+     * Occupies all network lane workers and optionally fills its queue as well.
+     */
+    private void blockLane(final boolean fillQueue) throws InterruptedException {
+        final ExecutionService service = ExecutionService.getExecutionService();
+        final CountDownLatch started = new CountDownLatch(Lane.NETWORK.getConcurrency());
+        for (int index = 0; index < Lane.NETWORK.getConcurrency(); index++) {
+            mBlockers.add(service.submit(Lane.NETWORK, "test.block", () -> {
+                started.countDown();
+                mRelease.await();
+                return null;
+            }));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        if (fillQueue) {
+            for (int index = 0; index < Lane.NETWORK.getQueueCapacity(); index++) {
+                mBlockers.add(service.submit(Lane.NETWORK, "test.block", () -> null));
+            }
+        }
+    }
+
+    private void releaseLane() throws InterruptedException, ExecutionException, TimeoutException {
+        mRelease.countDown();
+        for (final TaskFuture<Void> blocker : mBlockers) {
+            blocker.get(5, TimeUnit.SECONDS);
+        }
+        mBlockers.clear();
+    }
+
+    //endregion
+}
@@ -0,0 +1,299 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Drives concurrent virtual users through the same requests {@code InBandVerificationLogic.verifyWithToken} sends
+ * and reports throughput and latency percentiles.
+ * <p>
+ * Each virtual user runs on its own thread and sends next verification as soon as previous one is answered, reusing
+ * keep-alive connection like the application transport does.
+ */
+public class LoadGenerator {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String JSON_REQUEST = "{\"name\":\"Auth_OTP\",\"input\":{\"userId\":\"%s\",\"otp\":\"%06d\"}}";
+
+    /**
+     * Result of single load test run.
+     */
+    public static final class Report {
+        private final int mUsers;
+        private final long mDurationNanos;
+        private final long mSucceeded;
+        private final long mFailed;
+        private final long mErrors;
+        private final long[] mLatencies;
+
+        private Report(final int users,
+                       final long durationNanos,
+                       final long succeeded,
+                       final long failed,
+                       final long errors,
+                       final long[] latencies) {
+            mUsers = users;
+            mDurationNanos = durationNanos;
+            mSucceeded = succeeded;
+            mFailed = failed;
+            mErrors = errors;
+            mLatencies = latencies;
+            Arrays.sort(mLatencies);
+        }
+
+        /**
+         * Gets number of completed verifications per second, including failed ones.
+         *
+         * @return Throughput.
+         */
+        public double getThroughput() {
+            return mLatencies.length / (mDurationNanos / 1e9);
+        }
+
+        /**
+         * Gets latency percentile of all requests, including failed ones.
+         *
+         * @param percentile Percentile in range 0 - 100.
+         * @return Latency in milliseconds.
+         */
+        public double getLatencyPercentile(final double percentile) {
+            if (mLatencies.length == 0) {
+                return 0;
+            }
+            final int index = (int) Math.ceil(percentile / 100 * mLatencies.length) - 1;
+            return mLatencies[Math.max(0, Math.min(index, mLatencies.length - 1))] / 1e6;
+        }
+
+        public long getSucceeded() {
+            return mSucceeded;
+        }
+
+        public long getFailed() {
+            return mFailed;
+        }
+
+        public long getErrors() {
+            return mErrors;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "users=%d duration=%.1fs requests=%d throughput=%.1f req/s%n"
+                            + "succeeded=%d failed=%d errors=%d%n"
+                            + "latency p50=%.1fms p90=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                    mUsers, mDurationNanos / 1e9, mLatencies.length, getThroughput(),
+                    mSucceeded, mFailed, mErrors,
+                    getLatencyPercentile(50), getLatencyPercentile(90), getLatencyPercentile(95),
+                    getLatencyPercentile(99), getLatencyPercentile(100));
+        }
+    }
+
+    private final String mUrl;
+    private final String mJwt;
+    private final String mApiKey;
+    private final int mTimeoutMillis;
+
+    /**
+     * Creates a new {@code LoadGenerator}.
+     *
+     * @param url           Authentication URL.
+     * @param jwt           JWT sent as bearer token.
+     * @param apiKey        API key.
+     * @param timeoutMillis Connect and read timeout.
+     */
+    public LoadGenerator(final String url, final String jwt, final String apiKey, final int timeoutMillis) {
+        mUrl = url;
+        mJwt = jwt;
+        mApiKey = apiKey;
+        mTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param users          Number of concurrent virtual users.
+     * @param durationMillis How long each user keeps sending requests.
+     * @return Report of the run.
+     * @throws InterruptedException If waiting for users was interrupted.
+     */
+    public Report run(final int users, final long durationMillis) throws InterruptedException {
+        final List<VirtualUser> virtualUsers = new ArrayList<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long end = System.nanoTime() + durationMillis * 1000000L;
+        for (int index = 0; index < users; index++) {
+            final VirtualUser user = new VirtualUser(String.format(Locale.US, "loadtest-user-%d", index), start, end);
+            virtualUsers.add(user);
+            user.start();
+        }
+
+        final long startNanos = System.nanoTime();
+        start.countDown();
+
+        long succeeded = 0;
+        long failed = 0;
+        long errors = 0;
+        int count = 0;
+        for (final VirtualUser user : virtualUsers) {
+            user.join();
+            succeeded += user.mSucceeded;
+            failed += user.mFailed;
+            errors += user.mErrors;
+            count += user.mCount;
+        }
+
+        final long[] latencies = new long[count];
+        int offset = 0;
+        for (final VirtualUser user : virtualUsers) {
+            System.arraycopy(user.mLatencies, 0, latencies, offset, user.mCount);
+            offset += user.mCount;
+        }
+        return new Report(users, System.nanoTime() - startNanos, succeeded, failed, errors, latencies);
+    }
+
+    /**
+     * Sends single verification.
+     *
+     * @param userId User Id / Token Name.
+     * @param otp    OTP.
+     * @return {@code True} if server accepted the OTP.
+     * @throws IOException If request failed or server returned error status.
+     */
+    boolean verify(final String userId, final int otp) throws IOException {
+        final byte[] body = String.format(Locale.US, JSON_REQUEST, userId, otp).getBytes(UTF_8);
+
+        final HttpURLConnection connection = (HttpURLConnection) new URL(mUrl).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setConnectTimeout(mTimeoutMillis);
+        connection.setReadTimeout(mTimeoutMillis);
+        connection.setUseCaches(false);
+        // Streaming mode also prevents JDK from silently resending the POST on dropped connection, which would hide
+        // injected errors.
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        connection.setRequestProperty("Authorization", String.format(Locale.US, "Bearer %s", mJwt));
+        connection.setRequestProperty("X-API-KEY", mApiKey);
+        connection.setRequestProperty("Idempotency-Key", UUID.randomUUID().toString());
+
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body);
+        }
+
+        final int status = connection.getResponseCode();
+        final InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        final String response = input == null ? "" : readFully(input);
+        if (status > 226) {
+            throw new IOException(String.format(Locale.US, "HTTP %d", status));
+        }
+        return response.contains("\"status\":\"Success\"");
+    }
+
+    private static String readFully(final InputStream input) throws IOException {
+        // Body must be read to the end, so connection goes back to keep-alive pool.
+        try (InputStream stream = input) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return new String(output.toByteArray(), UTF_8);
+        }
+    }
+
+    private final class VirtualUser extends Thread {
+        private final String mUserId;
+        private final CountDownLatch mStart;
+        private final long mEnd;
+        private final Random mRandom = new Random();
+        private long[] mLatencies = new long[1024];
+        private int mCount;
+        private long mSucceeded;
+        private long mFailed;
+        private long mErrors;
+
+        private VirtualUser(final String userId, final CountDownLatch start, final long end) {
+            super(userId);
+            mUserId = userId;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mStart.await();
+            } catch (final InterruptedException exception) {
+                return;
+            }
+
+            int lastOtp = -1;
+            while (System.nanoTime() < mEnd) {
+                // Fresh OTP for every request, so server does not reject it as replay.
+                int otp;
+                do {
+                    otp = mRandom.nextInt(1000000);
+                } while (otp == lastOtp);
+                lastOtp = otp;
+
+                final long start = System.nanoTime();
+                try {
+                    if (verify(mUserId, otp)) {
+                        mSucceeded++;
+                    } else {
+                        mFailed++;
+                    }
+                } catch (final IOException exception) {
+                    mErrors++;
+                }
+                record(System.nanoTime() - start);
+            }
+        }
+
+        private void record(final long latencyNanos) {
+            if (mCount == mLatencies.length) {
+                mLatencies = Arrays.copyOf(mLatencies, mCount * 2);
+            }
+            mLatencies[mCount++] = latencyNanos;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.loadtest;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Command line entry point of the load test.
+ * <p>
+ * Without {@code --url} the local {@link StandInServer} is started and verified against, otherwise given
+ * authentication server is used. Example:
+ * <pre>
+ * ./gradlew :loadtest:run --args="--users 50 --duration 30 --latency 20-80 --error-rate 0.02 --drop-rate 0.01"
+ * </pre>
+ * The stand-in can also be started alone with {@code --serve PORT} and used as authentication URL of the
+ * In Band Verification tutorial, e.g. from emulator as {@code http://10.0.2.2:PORT/}.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+        // Entry point only.
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> options = parseOptions(args);
+        final int users = Integer.parseInt(getOption(options, "users", "10"));
+        final long duration = Long.parseLong(getOption(options, "duration", "10"));
+        final int timeout = Integer.parseInt(getOption(options, "timeout", "10000"));
+
+        // JDK keeps only 5 idle connections per host by default, others would reconnect on every request.
+        System.setProperty("http.maxConnections", String.valueOf(users));
+
+        StandInServer server = null;
+        String url = options.get("url");
+        if (url == null) {
+            final boolean serveOnly = options.containsKey("serve");
+            server = new StandInServer(Integer.parseInt(getOption(options, "serve", "0")),
+                    Integer.parseInt(getOption(options, "threads", "64")));
+            server.setApiKey(options.get("api-key"));
+
+            final String[] latency = getOption(options, "latency", "0").split("-");
+            server.setLatency(Long.parseLong(latency[0]), Long.parseLong(latency[latency.length - 1]));
+            server.setErrorRate(Double.parseDouble(getOption(options, "error-rate", "0")));
+            server.setDropRate(Double.parseDouble(getOption(options, "drop-rate", "0")));
+            server.start();
+            url = server.getUrl();
+
+            if (serveOnly) {
+                System.out.println(String.format(Locale.US, "Stand-in server listening on %s", url));
+                return;
+            }
+        }
+
+        System.out.println(String.format(Locale.US, "Running %d users for %ds against %s", users, duration, url));
+        final LoadGenerator generator = new LoadGenerator(url,
+                getOption(options, "jwt", ""),
+                getOption(options, "api-key", ""),
+                timeout);
+        System.out.println(generator.run(users, duration * 1000));
+
+        if (server != null) {
+            System.out.println(String.format(Locale.US, "server requests=%d injected errors=%d",
+                    server.getRequestCount(), server.getInjectedErrorCount()));
+            server.stop();
+        }
+    }
+
+    private static Map<String, String> parseOptions(final String[] args) {
+        final Map<String, String> retValue = new HashMap<>();
+        for (int index = 0; index < args.length; index++) {
+            if (!args[index].startsWith("--")) {
+                throw new IllegalArgumentException(String.format(Locale.US, "Unexpected argument: %s", args[index]));
+            }
+
+            final String name = args[index].substring(2);
+            if (index + 1 < args.length && !args[index + 1].startsWith("--")) {
+                retValue.put(name, args[++index]);
+            } else {
+                retValue.put(name, "");
+            }
+        }
+        return retValue;
+    }
+
+    private static String getOption(final Map<String, String> options, final String name, final String defaultValue) {
+        final String value = options.get(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in of the authentication server implementing the {@code Auth_OTP} contract used by
+ * {@code InBandVerificationLogic}.
+ * <p>
+ * Request is a JSON POST {@code {"name":"Auth_OTP","input":{"userId":"...","otp":"..."}}} with {@code Authorization}
+ * and {@code X-API-KEY} headers. Response is {@code {"status":"Success","message":"..."}} or
+ * {@code {"status":"Failed","message":"..."}}. The stand-in does not know token secrets, so any OTP of 6 to 10 digits
+ * is accepted once per user. Repeated OTP is rejected as replay, unless the request repeats an
+ * {@code Idempotency-Key} already seen, in which case the original response is returned.
+ * <p>
+ * Latency and errors can be injected at runtime to test retries, timeouts and circuit breaking.
+ */
+public class StandInServer {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Pattern PATTERN_NAME = Pattern.compile("\"name\"\\s*:\\s*\"Auth_OTP\"");
+    private static final Pattern PATTERN_USER_ID = Pattern.compile("\"userId\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final Pattern PATTERN_OTP = Pattern.compile("\"otp\"\\s*:\\s*\"([0-9]{6,10})\"");
+    private static final int MAX_BODY_LENGTH = 64 * 1024;
+    private static final int MAX_REMEMBERED = 10000;
+
+    static {
+        // Response headers and body are written separately. Without TCP_NODELAY the body waits for delayed ACK of
+        // the client and every response gets ~40ms of latency nobody asked for.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+    private final Random mRandom = new Random();
+    private final Map<String, String> mLastOtp = Collections.synchronizedMap(new BoundedMap<String, String>());
+    private final Map<String, byte[]> mResponses = Collections.synchronizedMap(new BoundedMap<String, byte[]>());
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mInjectedErrors = new AtomicLong();
+
+    private volatile String mApiKey;
+    private volatile long mMinLatencyMillis;
+    private volatile long mMaxLatencyMillis;
+    private volatile double mErrorRate;
+    private volatile double mDropRate;
+
+    /**
+     * Creates a new {@code StandInServer}. Server is not started yet.
+     *
+     * @param port    Port to listen on, 0 for any free port.
+     * @param threads Number of request handling threads. Injected latency occupies the thread.
+     * @throws IOException If socket could not be bound.
+     */
+    public StandInServer(final int port, final int threads) throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 128);
+        mExecutor = Executors.newFixedThreadPool(threads);
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/", this::handle);
+    }
+
+    //region Configuration
+
+    /**
+     * Requires given API key in {@code X-API-KEY} header. Requests with other key are rejected with 401.
+     *
+     * @param apiKey API key or {@code null} to accept any key.
+     */
+    public void setApiKey(final String apiKey) {
+        mApiKey = apiKey;
+    }
+
+    /**
+     * Sets latency added to every request.
+     *
+     * @param minMillis Minimal latency.
+     * @param maxMillis Maximal latency. Latency is uniformly distributed between minimum and maximum.
+     */
+    public void setLatency(final long minMillis, final long maxMillis) {
+        mMinLatencyMillis = minMillis;
+        mMaxLatencyMillis = Math.max(minMillis, maxMillis);
+    }
+
+    /**
+     * Sets ratio of requests answered with 503 Service Unavailable.
+     *
+     * @param errorRate Ratio in range 0 - 1.
+     */
+    public void setErrorRate(final double errorRate) {
+        mErrorRate = errorRate;
+    }
+
+    /**
+     * Sets ratio of requests for which connection is closed without any response.
+     *
+     * @param dropRate Ratio in range 0 - 1.
+     */
+    public void setDropRate(final double dropRate) {
+        mDropRate = dropRate;
+    }
+
+    //endregion
+
+    //region Life Cycle
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        mServer.start();
+    }
+
+    /**
+     * Stops the server and its threads.
+     */
+    public void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Gets URL to be used as authentication URL.
+     *
+     * @return Server URL.
+     */
+    public String getUrl() {
+        return String.format(Locale.US, "http://127.0.0.1:%d/", mServer.getAddress().getPort());
+    }
+
+    /**
+     * Gets number of received requests.
+     *
+     * @return Number of requests.
+     */
+    public long getRequestCount() {
+        return mRequests.get();
+    }
+
+    /**
+     * Gets number of requests which were answered with injected error or dropped.
+     *
+     * @return Number of injected errors.
+     */
+    public long getInjectedErrorCount() {
+        return mInjectedErrors.get();
+    }
+
+    //endregion
+
+    //region Private Helpers
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        mRequests.incrementAndGet();
+        try {
+            final byte[] body = readBody(exchange.getRequestBody());
+            sleep(nextLatency());
+
+            // Error injection.
+            final double draw;
+            synchronized (mRandom) {
+                draw = mRandom.nextDouble();
+            }
+            if (draw < mDropRate) {
+                mInjectedErrors.incrementAndGet();
+                // Closing without response headers aborts the connection.
+                exchange.close();
+                return;
+            } else if (draw < mDropRate + mErrorRate) {
+                mInjectedErrors.incrementAndGet();
+                send(exchange, 503, null);
+                return;
+            }
+
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, null);
+                return;
+            }
+            final String apiKey = mApiKey;
+            if (apiKey != null && !apiKey.equals(exchange.getRequestHeaders().getFirst("X-API-KEY"))) {
+                send(exchange, 401, null);
+                return;
+            }
+
+            final String idempotencyKey = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+            if (idempotencyKey != null) {
+                final byte[] previous = mResponses.get(idempotencyKey);
+                if (previous != null) {
+                    send(exchange, 200, previous);
+                    return;
+                }
+            }
+
+            final byte[] response = verify(new String(body, UTF_8));
+            if (idempotencyKey != null) {
+                mResponses.put(idempotencyKey, response);
+            }
+            send(exchange, 200, response);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private byte[] verify(final String request) {
+        final Matcher userId = PATTERN_USER_ID.matcher(request);
+        final Matcher otp = PATTERN_OTP.matcher(request);
+        if (!PATTERN_NAME.matcher(request).find() || !userId.find()) {
+            return response("Failed", "Malformed Auth_OTP request.");
+        } else if (!otp.find()) {
+            return response("Failed", "Invalid OTP.");
+        }
+
+        final String previous = mLastOtp.put(userId.group(1), otp.group(1));
+        if (otp.group(1).equals(previous)) {
+            return response("Failed", "OTP already used.");
+        }
+        return response("Success", "OTP verified.");
+    }
+
+    private static byte[] response(final String status, final String message) {
+        return String.format(Locale.US, "{\"status\":\"%s\",\"message\":\"%s\"}", status, message).getBytes(UTF_8);
+    }
+
+    private static void send(final HttpExchange exchange, final int status, final byte[] body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    private static byte[] readBody(final InputStream input) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            if (output.size() + read > MAX_BODY_LENGTH) {
+                throw new IOException("Request body too large.");
+            }
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    private long nextLatency() {
+        final long min = mMinLatencyMillis;
+        final long max = mMaxLatencyMillis;
+        if (max <= min) {
+            return min;
+        }
+        synchronized (mRandom) {
+            return min + (long) (mRandom.nextDouble() * (max - min));
+        }
+    }
+
+    private static void sleep(final long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Insertion ordered map dropping the oldest entries, so long running load test does not grow memory.
+     */
+    private static final class BoundedMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+            return size() > MAX_REMEMBERED;
+        }
+    }
+
+    //endregion
+}
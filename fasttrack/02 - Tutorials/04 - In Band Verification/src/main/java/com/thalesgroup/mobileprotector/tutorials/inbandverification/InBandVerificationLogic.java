@@ -35,6 +35,7 @@ import com.thalesgroup.mobileprotector.commonutils.callbacks.GenericHandler;
 import com.thalesgroup.mobileprotector.commonutils.callbacks.GenericOtpHandler;
 import com.thalesgroup.mobileprotector.commonutils.helpers.OtpValue;
 import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.commonutils.thread.Lane;
 import com.thalesgroup.mobileprotector.gettingstarted.otp.OtpLogic;
 import com.thalesgroup.mobileprotector.gettingstarted.provisioning.ProvisioningLogic;
 
@@ -97,7 +98,8 @@ public class InBandVerificationLogic extends ProvisioningLogic {
 
         final String jsonRequest = String.format(Locale.US, JSON_REQUEST, userId, otpValue.getOtp());
 
-        ExecutionService.getExecutionService().runOnBackgroundThread(
+        // Run on network lane, so slow server does not block OTP calculation or storage access.
+        ExecutionService.getExecutionService().runOnBackgroundThread(Lane.NETWORK, "inband.verify",
                 () -> doPostRequest(
                         InBandVerificationConfig.getAuthenticationUrl(),
                         headers,
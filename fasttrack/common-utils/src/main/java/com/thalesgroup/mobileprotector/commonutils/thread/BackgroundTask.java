@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.thread;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * {@code Runnable} wrapper queued in {@link ExecutionService} lanes, ordered by priority and submission order.
+ * It also reports queue wait and run time of the wrapped {@code Runnable} to {@link TaskMetrics}. Task with an owner
+ * future is dropped without running once the owner is done, e.g. cancelled or timed out while waiting in queue.
+ */
+class BackgroundTask implements Runnable, Comparable<BackgroundTask> {
+    private static final AtomicLong sSequence = new AtomicLong();
+
+    private final Priority mPriority;
+    private final String mTag;
+    private final long mSequence;
+    private final Runnable mRunnable;
+    private final TaskMetrics mMetrics;
+    private final long mEnqueuedNanos;
+    private final Future<?> mOwner;
+
+    BackgroundTask(@NonNull final Priority priority,
+                   @NonNull final String tag,
+                   @NonNull final Runnable runnable,
+                   @NonNull final TaskMetrics metrics) {
+        this(priority, tag, runnable, metrics, null);
+    }
+
+    BackgroundTask(@NonNull final Priority priority,
+                   @NonNull final String tag,
+                   @NonNull final Runnable runnable,
+                   @NonNull final TaskMetrics metrics,
+                   @Nullable final Future<?> owner) {
+        mPriority = priority;
+        mTag = tag;
+        mSequence = sSequence.getAndIncrement();
+        mRunnable = runnable;
+        mMetrics = metrics;
+        mEnqueuedNanos = System.nanoTime();
+        mOwner = owner;
+
+        mMetrics.onEnqueued(tag);
+    }
+
+    @Override
+    public void run() {
+        // Nobody is waiting for the result anymore. Do not waste worker thread.
+        if (mOwner != null && mOwner.isDone()) {
+            mMetrics.onDropped(mTag);
+            return;
+        }
+
+        final long startNanos = System.nanoTime();
+        mMetrics.onStarted(mTag, startNanos - mEnqueuedNanos);
+        try {
+            mRunnable.run();
+        } finally {
+            mMetrics.onFinished(mTag, System.nanoTime() - startNanos);
+        }
+    }
+
+    String getTag() {
+        return mTag;
+    }
+
+    @Override
+    public int compareTo(@NonNull final BackgroundTask other) {
+        final int result = mPriority.compareTo(other.mPriority);
+        return result != 0 ? result : Long.compare(mSequence, other.mSequence);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.thread;
+
+import java.util.concurrent.PriorityBlockingQueue;
+
+import androidx.annotation.NonNull;
+
+/**
+ * {@code PriorityBlockingQueue} with fixed capacity. Offers are refused once the queue is full, which makes the owning
+ * {@code ThreadPoolExecutor} reject the task instead of growing the queue without limit.
+ *
+ * @param <E> Type of queued elements.
+ */
+class BoundedPriorityBlockingQueue<E> extends PriorityBlockingQueue<E> {
+    private static final long serialVersionUID = 1L;
+
+    private final int mCapacity;
+
+    BoundedPriorityBlockingQueue(final int capacity) {
+        super(capacity);
+        mCapacity = capacity;
+    }
+
+    @Override
+    public synchronized boolean offer(@NonNull final E element) {
+        // Consumers only ever make the queue smaller, so it's enough to serialize producers.
+        return size() < mCapacity && super.offer(element);
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Math.max(0, mCapacity - size());
+    }
+}
@@ -30,37 +30,50 @@ package com.thalesgroup.mobileprotector.commonutils.thread;
 import android.os.Handler;
 import android.os.Looper;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
 
 /**
  * Execution service used for thread execution and to execute callbacks on the main thread.
+ * <p>
+ * Background work is split into {@link Lane}s. Each lane has its own bounded queue and concurrency limit, so for example
+ * slow network request does not block OTP calculation queued after it. Inside of the lane {@link Priority#USER_INITIATED}
+ * work is executed before {@link Priority#BACKGROUND} work.
+ * <p>
+ * Every task carries a tag, e.g. {@code "inband.verify"}. Queue wait, run time and queue depth are recorded per tag and
+ * can be read through {@link #getMetrics()}.
+ * <p>
+ * Frequent UI updates can be posted through {@link #runOnNextFrame(String, Runnable)}, which batches them per display
+ * frame and drops superseded ones.
  */
 public final class ExecutionService {
+    private static final Lane DEFAULT_LANE = Lane.CRYPTO;
+
     private static ExecutionService sExecutionService;
 
-    private final ThreadPoolExecutor mExecutor;
+    private final Map<Lane, ThreadPoolExecutor> mExecutors = new EnumMap<>(Lane.class);
+    private final TaskMetrics mMetrics = new TaskMetrics();
     private final Handler mHandler;
+    private final FrameDispatcher mFrameDispatcher;
 
     /**
      * Creates a new {@code ExecutionService} instance.
      */
     private ExecutionService() {
-        mExecutor = new ThreadPoolExecutor(1, 1, 0L,
-                TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<>()) {
-            @Override
-            protected void afterExecute(Runnable runnable, Throwable throwable) {
-                if (throwable != null) {
-                    // Original executor implementation hides uncaught exception
-                    // Which is undesired for us as it would also hide the potential issues
-                    throw new RuntimeException(throwable); // NOPMD
-                }
-            }
-        };
+        for (final Lane lane : Lane.values()) {
+            mExecutors.put(lane, createExecutor(lane));
+        }
 
         mHandler = new Handler(Looper.getMainLooper());
+        mFrameDispatcher = new FrameDispatcher(mHandler);
     }
 
     /**
@@ -79,12 +92,200 @@ public final class ExecutionService {
     }
 
     /**
-     * Executes a {@code Runnable} on a background thread, all runnbles are queued.
+     * Executes a {@code Runnable} on a background thread of the default lane, all runnbles are queued.
+     *
+     * @param runnable {@code Runnable} to run on background thread.
+     */
+    public void runOnBackgroundThread(final Runnable runnable) {
+        runOnBackgroundThread(DEFAULT_LANE, Priority.USER_INITIATED, runnable);
+    }
+
+    /**
+     * Executes a {@code Runnable} on a background thread of given lane with {@link Priority#USER_INITIATED} priority.
+     *
+     * @param lane Lane on which the {@code Runnable} should be executed.
+     * @param runnable {@code Runnable} to run on background thread.
+     */
+    public void runOnBackgroundThread(@NonNull final Lane lane, @NonNull final Runnable runnable) {
+        runOnBackgroundThread(lane, Priority.USER_INITIATED, runnable);
+    }
+
+    /**
+     * Executes a {@code Runnable} on a background thread of given lane. Task is tagged with the lane name.
+     *
+     * @param lane Lane on which the {@code Runnable} should be executed.
+     * @param priority Priority of the {@code Runnable} inside of the lane queue.
+     * @param runnable {@code Runnable} to run on background thread.
+     * @throws java.util.concurrent.RejectedExecutionException If the lane queue is full.
+     */
+    public void runOnBackgroundThread(@NonNull final Lane lane,
+                                      @NonNull final Priority priority,
+                                      @NonNull final Runnable runnable) {
+        runOnBackgroundThread(lane, priority, lane.getName(), runnable);
+    }
+
+    /**
+     * Executes a tagged {@code Runnable} on a background thread of given lane with {@link Priority#USER_INITIATED}
+     * priority.
+     *
+     * @param lane Lane on which the {@code Runnable} should be executed.
+     * @param tag Tag under which the task is recorded in {@link TaskMetrics}, e.g. {@code "inband.verify"}.
+     * @param runnable {@code Runnable} to run on background thread.
+     */
+    public void runOnBackgroundThread(@NonNull final Lane lane,
+                                      @NonNull final String tag,
+                                      @NonNull final Runnable runnable) {
+        runOnBackgroundThread(lane, Priority.USER_INITIATED, tag, runnable);
+    }
+
+    /**
+     * Executes a tagged {@code Runnable} on a background thread of given lane.
      *
+     * @param lane Lane on which the {@code Runnable} should be executed.
+     * @param priority Priority of the {@code Runnable} inside of the lane queue.
+     * @param tag Tag under which the task is recorded in {@link TaskMetrics}, e.g. {@code "inband.verify"}.
      * @param runnable {@code Runnable} to run on background thread.
+     * @throws java.util.concurrent.RejectedExecutionException If the lane queue is full.
+     */
+    public void runOnBackgroundThread(@NonNull final Lane lane,
+                                      @NonNull final Priority priority,
+                                      @NonNull final String tag,
+                                      @NonNull final Runnable runnable) {
+        execute(lane, new BackgroundTask(priority, tag, runnable, mMetrics));
+    }
+
+    /**
+     * Executes a tagged {@code Callable} on a background thread of given lane with {@link Priority#USER_INITIATED}
+     * priority.
+     *
+     * @param lane Lane on which the {@code Callable} should be executed.
+     * @param tag Tag under which the task is recorded in {@link TaskMetrics}.
+     * @param callable {@code Callable} to run on background thread.
+     * @param <T> Type of the result.
+     * @return Future completed with the result of the {@code Callable} or with the exception it has thrown.
+     */
+    @NonNull
+    public <T> TaskFuture<T> submit(@NonNull final Lane lane,
+                                    @NonNull final String tag,
+                                    @NonNull final Callable<T> callable) {
+        return submit(lane, Priority.USER_INITIATED, tag, callable);
+    }
+
+    /**
+     * Executes a tagged {@code Callable} on a background thread of given lane.
+     *
+     * @param lane Lane on which the {@code Callable} should be executed.
+     * @param priority Priority of the {@code Callable} inside of the lane queue.
+     * @param tag Tag under which the task is recorded in {@link TaskMetrics}.
+     * @param callable {@code Callable} to run on background thread.
+     * @param <T> Type of the result.
+     * @return Future completed with the result of the {@code Callable} or with the exception it has thrown. Future is
+     * failed with {@code RejectedExecutionException} if the lane queue is full.
+     */
+    @NonNull
+    public <T> TaskFuture<T> submit(@NonNull final Lane lane,
+                                    @NonNull final Priority priority,
+                                    @NonNull final String tag,
+                                    @NonNull final Callable<T> callable) {
+        final TaskFuture<T> retValue = TaskFuture.create();
+        final BackgroundTask task = new BackgroundTask(priority, tag, () -> {
+            try {
+                retValue.complete(callable.call());
+            } catch (final Exception exception) {
+                retValue.fail(exception);
+            }
+        }, mMetrics, retValue);
+
+        try {
+            execute(lane, task);
+        } catch (final RejectedExecutionException exception) {
+            retValue.fail(exception);
+            return retValue;
+        }
+
+        // Free the queue slot as soon as the future is cancelled or timed out. If the task was already taken by
+        // worker thread, it will be dropped there instead.
+        retValue.whenComplete((result, error) -> {
+            //noinspection ConstantConditions
+            if (error != null && mExecutors.get(lane).remove(task)) {
+                mMetrics.onDropped(tag);
+            }
+        });
+
+        return retValue;
+    }
+
+    /**
+     * Executes a tagged {@code Callable} on a background thread of given lane with a deadline. If the
+     * {@code Callable} does not finish in given time, future is failed with {@code TimeoutException} and the task is
+     * dropped if it's still waiting in queue.
+     *
+     * @param lane Lane on which the {@code Callable} should be executed.
+     * @param priority Priority of the {@code Callable} inside of the lane queue.
+     * @param tag Tag under which the task is recorded in {@link TaskMetrics}.
+     * @param timeoutMillis Deadline in milliseconds from now.
+     * @param callable {@code Callable} to run on background thread.
+     * @param <T> Type of the result.
+     * @return Future completed with the result of the {@code Callable} or with the exception it has thrown.
      */
-    public void runOnBackgroundThread(Runnable runnable) {
-        mExecutor.execute(runnable);
+    @NonNull
+    public <T> TaskFuture<T> submit(@NonNull final Lane lane,
+                                    @NonNull final Priority priority,
+                                    @NonNull final String tag,
+                                    final long timeoutMillis,
+                                    @NonNull final Callable<T> callable) {
+        return submit(lane, priority, tag, callable).withTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Executes a tagged {@code Callable} on a background thread of given lane after given delay. Task does not occupy
+     * the lane queue while waiting for the delay.
+     *
+     * @param lane Lane on which the {@code Callable} should be executed.
+     * @param tag Tag under which the task is recorded in {@link TaskMetrics}.
+     * @param delayMillis Delay in milliseconds.
+     * @param callable {@code Callable} to run on background thread.
+     * @param <T> Type of the result.
+     * @return Future completed with the result of the {@code Callable}. Cancelling the future before the delay
+     * elapses prevents the task from being queued at all.
+     */
+    @NonNull
+    public <T> TaskFuture<T> schedule(@NonNull final Lane lane,
+                                      @NonNull final String tag,
+                                      final long delayMillis,
+                                      @NonNull final Callable<T> callable) {
+        final TaskFuture<T> retValue = TaskFuture.create();
+        mHandler.postDelayed(() -> {
+            if (retValue.isDone()) {
+                return;
+            }
+
+            final TaskFuture<T> future = submit(lane, Priority.USER_INITIATED, tag, callable);
+            retValue.whenComplete((result, error) -> {
+                // Propagate cancellation to the queued task.
+                if (error != null) {
+                    future.cancel(false);
+                }
+            });
+            future.whenComplete((result, error) -> {
+                if (error == null) {
+                    retValue.complete(result);
+                } else {
+                    retValue.fail(error);
+                }
+            });
+        }, delayMillis);
+        return retValue;
+    }
+
+    /**
+     * Gets queue and latency statistics of all executed tasks.
+     *
+     * @return Task metrics.
+     */
+    @NonNull
+    public TaskMetrics getMetrics() {
+        return mMetrics;
     }
 
     /**
@@ -92,7 +293,85 @@ public final class ExecutionService {
      *
      * @param runnable {@code Runnable} to run on main UI thread.
      */
-    public void runOnMainUiThread(Runnable runnable) {
+    public void runOnMainUiThread(final Runnable runnable) {
         mHandler.post(runnable);
     }
+
+    /**
+     * Executes a {@code Runnable} on the main UI thread together with all other {@code Runnable}s posted within the
+     * same display frame.
+     *
+     * @param runnable {@code Runnable} to run on main UI thread.
+     */
+    public void runOnNextFrame(@NonNull final Runnable runnable) {
+        mFrameDispatcher.post(null, runnable);
+    }
+
+    /**
+     * Executes a {@code Runnable} on the main UI thread together with all other {@code Runnable}s posted within the
+     * same display frame. Any pending {@code Runnable} posted with the same key is dropped, since it would only update
+     * the same UI state which is about to be overwritten.
+     *
+     * @param key Key of the UI state updated by the {@code Runnable}, e.g. {@code "oob.loading"}.
+     * @param runnable {@code Runnable} to run on main UI thread.
+     */
+    public void runOnNextFrame(@NonNull final String key, @NonNull final Runnable runnable) {
+        mFrameDispatcher.post(key, runnable);
+    }
+
+    /**
+     * Executes a {@code Runnable} on the main UI thread after given delay.
+     *
+     * @param runnable {@code Runnable} to run on main UI thread.
+     * @param delayMillis Delay in milliseconds.
+     */
+    public void runOnMainUiThread(final Runnable runnable, final long delayMillis) {
+        mHandler.postDelayed(runnable, delayMillis);
+    }
+
+    /**
+     * Removes pending {@code Runnable} posted to the main UI thread.
+     *
+     * @param runnable {@code Runnable} to remove.
+     */
+    public void removeMainUiCallbacks(@NonNull final Runnable runnable) {
+        mHandler.removeCallbacks(runnable);
+    }
+
+    /**
+     * Executes task on executor of given lane, rejected task is recorded in metrics.
+     */
+    private void execute(@NonNull final Lane lane, @NonNull final BackgroundTask task) {
+        try {
+            //noinspection ConstantConditions
+            mExecutors.get(lane).execute(task);
+        } catch (final RejectedExecutionException exception) {
+            mMetrics.onRejected(task.getTag());
+            throw exception;
+        }
+    }
+
+    /**
+     * Creates executor for given lane.
+     *
+     * @param lane Lane for which the executor is created.
+     * @return Executor with fixed number of threads and bounded priority queue.
+     */
+    private static ThreadPoolExecutor createExecutor(@NonNull final Lane lane) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> new Thread(runnable,
+                "ExecutionService-" + lane.getName() + "-" + threadCount.incrementAndGet());
+
+        return new ThreadPoolExecutor(lane.getConcurrency(), lane.getConcurrency(), 0L, TimeUnit.MILLISECONDS,
+                new BoundedPriorityBlockingQueue<>(lane.getQueueCapacity()), threadFactory) {
+            @Override
+            protected void afterExecute(final Runnable runnable, final Throwable throwable) {
+                if (throwable != null) {
+                    // Original executor implementation hides uncaught exception
+                    // Which is undesired for us as it would also hide the potential issues
+                    throw new RuntimeException(throwable); // NOPMD
+                }
+            }
+        };
+    }
 }
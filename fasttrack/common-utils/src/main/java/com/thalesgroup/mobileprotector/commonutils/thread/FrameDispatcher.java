@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.thread;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Batches main thread posts arriving within one display frame and runs them together on the next
+ * {@link Choreographer} frame callback.
+ * <p>
+ * Posts with the same key supersede each other. Only the latest one is executed, at the position of the latest post.
+ * E.g. loading indicator shown and hidden within single frame results only in one hide.
+ */
+class FrameDispatcher implements Choreographer.FrameCallback {
+    private final Handler mHandler;
+    private final Map<Object, Runnable> mPending = new LinkedHashMap<>();
+    private boolean mScheduled;
+
+    FrameDispatcher(@NonNull final Handler handler) {
+        mHandler = handler;
+    }
+
+    /**
+     * Queues {@code Runnable} for the next frame.
+     *
+     * @param key      Key of the UI state updated by the {@code Runnable}, or {@code null} if it should never be
+     *                 superseded.
+     * @param runnable {@code Runnable} to run on main UI thread.
+     */
+    void post(final Object key, @NonNull final Runnable runnable) {
+        final boolean schedule;
+        synchronized (mPending) {
+            // Unique key for posts which can't be superseded.
+            final Object pendingKey = key == null ? new Object() : key;
+
+            // Remove first, so superseding post moves to the end of the batch.
+            mPending.remove(pendingKey);
+            mPending.put(pendingKey, runnable);
+
+            schedule = !mScheduled;
+            mScheduled = true;
+        }
+
+        if (schedule) {
+            // Choreographer is bound to the looper of the thread which gets it.
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                Choreographer.getInstance().postFrameCallback(this);
+            } else {
+                mHandler.post(() -> Choreographer.getInstance().postFrameCallback(this));
+            }
+        }
+    }
+
+    @Override
+    public void doFrame(final long frameTimeNanos) {
+        final List<Runnable> batch;
+        synchronized (mPending) {
+            batch = new ArrayList<>(mPending.values());
+            mPending.clear();
+
+            // Anything posted from now on belongs to the next frame.
+            mScheduled = false;
+        }
+
+        for (final Runnable runnable : batch) {
+            runnable.run();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.thread;
+
+/**
+ * Background lanes used by {@link ExecutionService}. Each lane has its own bounded queue and its own concurrency
+ * limit, so slow work on one lane (e.g. network request) does not block work queued on another one.
+ */
+public enum Lane {
+    /**
+     * Network requests, e.g. in-band OTP verification.
+     */
+    NETWORK("network", 2, 32),
+
+    /**
+     * Mobile Protector SDK and crypto operations, e.g. OTP or challenge calculation.
+     */
+    CRYPTO("crypto", 1, 32),
+
+    /**
+     * Persistent storage access.
+     */
+    STORAGE("storage", 1, 64);
+
+    private final String mName;
+    private final int mConcurrency;
+    private final int mQueueCapacity;
+
+    Lane(final String name, final int concurrency, final int queueCapacity) {
+        mName = name;
+        mConcurrency = concurrency;
+        mQueueCapacity = queueCapacity;
+    }
+
+    /**
+     * Gets the lane name used for thread naming.
+     *
+     * @return Lane name.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Gets the maximum number of tasks executed in parallel on this lane.
+     *
+     * @return Number of worker threads.
+     */
+    public int getConcurrency() {
+        return mConcurrency;
+    }
+
+    /**
+     * Gets the maximum number of tasks waiting in this lane queue.
+     *
+     * @return Queue capacity.
+     */
+    public int getQueueCapacity() {
+        return mQueueCapacity;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.thread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Per tag statistics of tasks executed by {@link ExecutionService}: time spent in queue, run time and queue depth.
+ */
+public final class TaskMetrics {
+
+    private static final class TagMetrics {
+        private final LatencyHistogram mWait = new LatencyHistogram();
+        private final LatencyHistogram mRun = new LatencyHistogram();
+        private final AtomicInteger mQueueDepth = new AtomicInteger();
+        private final AtomicInteger mPeakQueueDepth = new AtomicInteger();
+        private final AtomicLong mDropped = new AtomicLong();
+    }
+
+    // ConcurrentMap, so putIfAbsent binds to API 1 method instead of API 24 default method of Map.
+    private final ConcurrentMap<String, TagMetrics> mMetrics = new ConcurrentHashMap<>();
+
+    TaskMetrics() {
+        // Created by ExecutionService.
+    }
+
+    /**
+     * Creates snapshot of all recorded values, e.g. to display them on debug screen or to verify them in test.
+     *
+     * @return Statistics for all tags sorted by tag name.
+     */
+    @NonNull
+    public List<TaskStats> snapshot() {
+        final List<TaskStats> retValue = new ArrayList<>();
+        for (final Map.Entry<String, TagMetrics> entry : mMetrics.entrySet()) {
+            final TagMetrics metrics = entry.getValue();
+            retValue.add(new TaskStats(entry.getKey(),
+                    metrics.mRun.getCount(),
+                    metrics.mQueueDepth.get(),
+                    metrics.mPeakQueueDepth.get(),
+                    metrics.mDropped.get(),
+                    new long[]{ metrics.mWait.getPercentile(50), metrics.mWait.getPercentile(95), metrics.mWait.getPercentile(99) },
+                    new long[]{ metrics.mRun.getPercentile(50), metrics.mRun.getPercentile(95), metrics.mRun.getPercentile(99) }));
+        }
+
+        Collections.sort(retValue, (first, second) -> first.getTag().compareTo(second.getTag()));
+        return retValue;
+    }
+
+    /**
+     * Gets statistics for single tag.
+     *
+     * @param tag Task tag.
+     * @return Statistics for given tag or {@code null} if no task with given tag was submitted yet.
+     */
+    public TaskStats snapshot(@NonNull final String tag) {
+        for (final TaskStats stats : snapshot()) {
+            if (stats.getTag().equals(tag)) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets run time percentile of given tag without creating whole snapshot.
+     *
+     * @param tag        Task tag.
+     * @param percentile Percentile in range 0 - 100.
+     * @return Run time in microseconds or 0 if no task with given tag was executed yet.
+     */
+    public long getRunPercentile(@NonNull final String tag, final double percentile) {
+        final TagMetrics metrics = mMetrics.get(tag);
+        return metrics == null ? 0 : metrics.mRun.getPercentile(percentile);
+    }
+
+    /**
+     * Gets number of executed tasks with given tag, e.g. to check whether its percentiles are already meaningful.
+     *
+     * @param tag Task tag.
+     * @return Number of executed tasks since last {@link #reset()}.
+     */
+    public long getRunCount(@NonNull final String tag) {
+        final TagMetrics metrics = mMetrics.get(tag);
+        return metrics == null ? 0 : metrics.mRun.getCount();
+    }
+
+    /**
+     * Removes all recorded values. Tasks which are currently queued are still counted in queue depth.
+     */
+    public void reset() {
+        for (final TagMetrics metrics : mMetrics.values()) {
+            metrics.mWait.reset();
+            metrics.mRun.reset();
+            metrics.mPeakQueueDepth.set(metrics.mQueueDepth.get());
+            metrics.mDropped.set(0);
+        }
+    }
+
+    /**
+     * Dumps all statistics in human readable form.
+     *
+     * @return One line per tag.
+     */
+    @NonNull
+    public String dump() {
+        final StringBuilder builder = new StringBuilder();
+        for (final TaskStats stats : snapshot()) {
+            builder.append(stats).append('\n');
+        }
+        return builder.toString();
+    }
+
+    void onEnqueued(@NonNull final String tag) {
+        final TagMetrics metrics = getTagMetrics(tag);
+        final int depth = metrics.mQueueDepth.incrementAndGet();
+
+        int peak = metrics.mPeakQueueDepth.get();
+        while (depth > peak && !metrics.mPeakQueueDepth.compareAndSet(peak, depth)) {
+            peak = metrics.mPeakQueueDepth.get();
+        }
+    }
+
+    void onRejected(@NonNull final String tag) {
+        getTagMetrics(tag).mQueueDepth.decrementAndGet();
+    }
+
+    void onDropped(@NonNull final String tag) {
+        final TagMetrics metrics = getTagMetrics(tag);
+        metrics.mQueueDepth.decrementAndGet();
+        metrics.mDropped.incrementAndGet();
+    }
+
+    void onStarted(@NonNull final String tag, final long waitNanos) {
+        final TagMetrics metrics = getTagMetrics(tag);
+        metrics.mQueueDepth.decrementAndGet();
+        metrics.mWait.record(waitNanos / 1000);
+    }
+
+    void onFinished(@NonNull final String tag, final long runNanos) {
+        getTagMetrics(tag).mRun.record(runNanos / 1000);
+    }
+
+    private TagMetrics getTagMetrics(@NonNull final String tag) {
+        TagMetrics metrics = mMetrics.get(tag);
+        if (metrics == null) {
+            final TagMetrics newMetrics = new TagMetrics();
+            metrics = mMetrics.putIfAbsent(tag, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+        return metrics;
+    }
+}
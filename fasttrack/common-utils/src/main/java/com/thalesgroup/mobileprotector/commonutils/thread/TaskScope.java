@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Thales DIS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * IMPORTANT: This source code is intended to serve training information purposes only.
+ *            Please make sure to review our IdCloud documentation, including security guidelines.
+ */
+
+package com.thalesgroup.mobileprotector.commonutils.thread;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Group of asynchronous work tied to the life cycle of single owner, typically an activity.
+ * <p>
+ * Calling {@link #cancelAll()} cancels all bound futures which are not yet done, so tasks still waiting in lane
+ * queue are dropped before they take a worker thread, and skips all main thread callbacks posted through
+ * {@link #runOnMainUiThread(Runnable)} which were not yet executed. Scope stays usable after cancellation, so the
+ * owner can start new work e.g. after it's resumed again.
+ */
+public final class TaskScope {
+
+    private final Set<TaskFuture<?>> mFutures = new HashSet<>();
+    private int mGeneration;
+
+    /**
+     * Binds future to this scope. Future is cancelled on {@link #cancelAll()} unless it's already done.
+     *
+     * @param future Future to bind.
+     * @param <T>    Type of the result.
+     * @return Same future for chaining.
+     */
+    @NonNull
+    public <T> TaskFuture<T> bind(@NonNull final TaskFuture<T> future) {
+        synchronized (this) {
+            mFutures.add(future);
+        }
+
+        future.whenComplete((result, error) -> {
+            synchronized (TaskScope.this) {
+                mFutures.remove(future);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Executes a tagged {@code Callable} on a background thread of given lane and binds it to this scope.
+     *
+     * @param lane     Lane on which the {@code Callable} should be executed.
+     * @param tag      Tag under which the task is recorded in {@link TaskMetrics}.
+     * @param callable {@code Callable} to run on background thread.
+     * @param <T>      Type of the result.
+     * @return Future completed with the result of the {@code Callable}.
+     */
+    @NonNull
+    public <T> TaskFuture<T> submit(@NonNull final Lane lane,
+                                    @NonNull final String tag,
+                                    @NonNull final Callable<T> callable) {
+        return bind(ExecutionService.getExecutionService().submit(lane, tag, callable));
+    }
+
+    /**
+     * Executes a tagged {@code Callable} on a background thread of given lane with a deadline and binds it to this
+     * scope.
+     *
+     * @param lane          Lane on which the {@code Callable} should be executed.
+     * @param tag           Tag under which the task is recorded in {@link TaskMetrics}.
+     * @param timeoutMillis Deadline in milliseconds from now.
+     * @param callable      {@code Callable} to run on background thread.
+     * @param <T>           Type of the result.
+     * @return Future completed with the result of the {@code Callable}, or failed with {@code TimeoutException}.
+     */
+    @NonNull
+    public <T> TaskFuture<T> submit(@NonNull final Lane lane,
+                                    @NonNull final String tag,
+                                    final long timeoutMillis,
+                                    @NonNull final Callable<T> callable) {
+        return bind(ExecutionService.getExecutionService().submit(lane, tag, callable)
+                .withTimeout(timeoutMillis, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Executes a {@code Runnable} on the main UI thread unless this scope is cancelled before it's executed.
+     *
+     * @param runnable {@code Runnable} to run on main UI thread.
+     */
+    public void runOnMainUiThread(@NonNull final Runnable runnable) {
+        final int generation;
+        synchronized (this) {
+            generation = mGeneration;
+        }
+
+        ExecutionService.getExecutionService().runOnMainUiThread(() -> {
+            synchronized (TaskScope.this) {
+                if (generation != mGeneration) {
+                    return;
+                }
+            }
+            runnable.run();
+        });
+    }
+
+    /**
+     * Cancels all bound futures and pending main thread callbacks.
+     */
+    public void cancelAll() {
+        final List<TaskFuture<?>> futures;
+        synchronized (this) {
+            mGeneration++;
+            futures = new ArrayList<>(mFutures);
+            mFutures.clear();
+        }
+
+        for (final TaskFuture<?> future : futures) {
+            future.cancel(false);
+        }
+    }
+}
@@ -39,6 +39,7 @@ import com.gemalto.commonutils.R;
 import com.gemalto.idp.mobile.fasttrack.protector.oath.OathTokenDevice;
 import com.thalesgroup.mobileprotector.commonutils.helpers.BaseLogic;
 import com.thalesgroup.mobileprotector.commonutils.thread.ExecutionService;
+import com.thalesgroup.mobileprotector.commonutils.thread.TaskScope;
 
 import java.util.Objects;
 
@@ -56,6 +57,7 @@ public abstract class AbstractBaseActivity extends AbstractBaseActivityPermissio
 
     private ProgressDialog mProgressDialog = null;
     private String mLastDialogFragmentTag = null;
+    private final TaskScope mTaskScope = new TaskScope();
 
     //region AbstractBaseActivity
 
@@ -188,6 +190,21 @@ public abstract class AbstractBaseActivity extends AbstractBaseActivityPermissio
         }
     }
 
+    @Override
+    protected void onPause() {
+        // User can't see results of any pending work anymore.
+        mTaskScope.cancelAll();
+
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        mTaskScope.cancelAll();
+
+        super.onDestroy();
+    }
+
     @Override
     protected void initApplication() {
         super.initApplication();
@@ -208,6 +225,16 @@ public abstract class AbstractBaseActivity extends AbstractBaseActivityPermissio
         }
     }
 
+    /**
+     * Gets scope of asynchronous work bound to this activity. All work in the scope is cancelled once the activity is
+     * paused or destroyed, so results are not delivered to a screen which is no longer visible.
+     *
+     * @return Task scope of this activity.
+     */
+    protected TaskScope getTaskScope() {
+        return mTaskScope;
+    }
+
     protected void hideKeyboard(View view) {
         if (view == null) return;
 